@@ -0,0 +1,67 @@
+package Benchmarks;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+
+import Util.ConnectionUtil;
+import Util.SchemaMigrator;
+
+/**
+ * The BenchmarkDatabase class seeds the H2 database used by the benchmarks. Benchmarks run in forked JVMs that point
+ * ConnectionUtil at a separate database file (see {@link #DB_URL_ARG}), so running them never touches ./h2/db.
+ */
+public final class BenchmarkDatabase {
+
+    /**
+     * JVM argument that points ConnectionUtil at the benchmark database.
+     */
+    public static final String DB_URL_ARG = "-Dsocialmedia.db.url=jdbc:h2:./h2/benchmark;";
+
+    /**
+     * JVM argument that switches logging to warnings only, so log output stays out of the measurements.
+     */
+    public static final String QUIET_LOGGING_ARG = "-Dlogback.configurationFile=logback-benchmark.xml";
+
+    /**
+     * The time_posted_epoch of the first seeded message. Message i is posted one second after message i - 1.
+     */
+    public static final long FIRST_EPOCH = 1669947792L;
+
+    private BenchmarkDatabase() {
+    }
+
+    /**
+     * Drops everything, rebuilds the schema and inserts accountCount accounts named user1..userN with password
+     * password1..passwordN, and messageCount messages spread round-robin over those accounts.
+     */
+    public static void seed(int accountCount, int messageCount) throws Exception {
+        try (Connection connection = ConnectionUtil.getConnection()) {
+            try (Statement s = connection.createStatement()) {
+                s.execute("drop all objects;");
+            }
+            SchemaMigrator.migrate(connection);
+            connection.setAutoCommit(false);
+            try (PreparedStatement p = connection.prepareStatement("insert into account (username, password) values (?, ?);")) {
+                for (int i = 1; i <= accountCount; i++) {
+                    p.setString(1, "user" + i);
+                    p.setString(2, "password" + i);
+                    p.addBatch();
+                }
+                p.executeBatch();
+            }
+            try (PreparedStatement p = connection.prepareStatement("insert into message (posted_by, message_text, time_posted_epoch) values (?, ?, ?);")) {
+                for (int i = 1; i <= messageCount; i++) {
+                    p.setInt(1, (i - 1) % accountCount + 1);
+                    p.setString(2, "benchmark message number " + i + " with some ordinary text in it");
+                    p.setLong(3, FIRST_EPOCH + i);
+                    p.addBatch();
+                    if (i % 10_000 == 0) p.executeBatch();
+                }
+                p.executeBatch();
+            }
+            connection.commit();
+            connection.setAutoCommit(true);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package Benchmarks;
+
+import java.io.File;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of benchmarks.jar. Accepts the regular JMH command line (e.g. `DAOBenchmark -p messageCount=100000`),
+ * and unless -rf/-rff are given, writes the results as JSON to jmh-results/&lt;label&gt;-&lt;timestamp&gt;.json,
+ * where the label comes from -Dbenchmark.label (e.g. the commit being measured). Compare two result files to spot
+ * regressions between commits.
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLine);
+        if (!commandLine.getResultFormat().hasValue()) options.resultFormat(ResultFormatType.JSON);
+        if (!commandLine.getResult().hasValue()) {
+            File directory = new File("jmh-results");
+            directory.mkdirs();
+            String label = System.getProperty("benchmark.label", "run");
+            String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+            options.result(new File(directory, label + "-" + timestamp + ".json").getPath());
+        }
+        new Runner(options.build()).run();
+    }
+}
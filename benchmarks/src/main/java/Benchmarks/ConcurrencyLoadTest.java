@@ -0,0 +1,121 @@
+package Benchmarks;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import Controller.SocialMediaController;
+import io.javalin.Javalin;
+import io.javalin.util.LoomUtil;
+
+/**
+ * A closed-loop load test that measures how the API scales with the number of concurrent connections. For each
+ * concurrency level it keeps that many requests in flight for a fixed time, then reports throughput and latency
+ * percentiles. Run it once with the platform thread pool and once with virtual threads and compare the two files:
+ *
+ *   java -cp target/benchmarks.jar Benchmarks.ConcurrencyLoadTest
+ *   java -Dsocialmedia.http.virtualThreads=true -cp target/benchmarks.jar Benchmarks.ConcurrencyLoadTest
+ *
+ * Settings (system properties): load.concurrency (default 16,64,256,1024), load.seconds per level (default 10),
+ * load.path (default messages/{id}, where {id} is replaced by a random seeded message id), load.messages (10000).
+ * Results are written as CSV to jmh-results/load-&lt;threads&gt;-&lt;timestamp&gt;.csv. On a JDK without virtual threads
+ * the second run falls back to the platform pool and is labelled platform.
+ *
+ * Virtual threads only change the threads that serve HTTP. Every database call still runs on the fixed jdbc-executor
+ * of {@link Service.AsyncSocialMediaService}, which has as many threads as the connection pool has connections, so
+ * they do not raise the number of queries in flight.
+ */
+public class ConcurrencyLoadTest {
+
+    public static void main(String[] args) throws Exception {
+        if (System.getProperty("socialmedia.db.url") == null) System.setProperty("socialmedia.db.url", "jdbc:h2:./h2/benchmark;");
+        if (System.getProperty("logback.configurationFile") == null) System.setProperty("logback.configurationFile", "logback-benchmark.xml");
+        String[] levels = System.getProperty("load.concurrency", "16,64,256,1024").split(",");
+        int seconds = Integer.getInteger("load.seconds", 10);
+        String path = System.getProperty("load.path", "messages/{id}");
+        int messageCount = Integer.getInteger("load.messages", 10_000);
+        int port = Integer.getInteger("load.port", 18081);
+        String threads = Boolean.getBoolean("socialmedia.http.virtualThreads") && LoomUtil.INSTANCE.getLoomAvailable() ? "virtual" : "platform";
+
+        BenchmarkDatabase.seed(100, messageCount);
+        Javalin app = new SocialMediaController().startAPI().start(port);
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        String base = "http://localhost:" + port + "/";
+
+        File directory = new File("jmh-results");
+        directory.mkdirs();
+        File output = new File(directory, "load-" + threads + "-" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")) + ".csv");
+        try (PrintWriter csv = new PrintWriter(output)) {
+            csv.println("threads,concurrency,requests,errors,throughput_rps,p50_ms,p99_ms,p999_ms");
+            System.out.printf("%-9s %11s %9s %7s %14s %9s %9s %9s%n", "threads", "concurrency", "requests", "errors", "throughput/s", "p50 ms", "p99 ms", "p99.9 ms");
+            for (String level : levels) {
+                int concurrency = Integer.parseInt(level.trim());
+                run(client, base, path, messageCount, concurrency, 2, new ArrayList<>(), new LongAdder()); // warm-up
+                List<Long> latencies = Collections.synchronizedList(new ArrayList<>());
+                LongAdder errors = new LongAdder();
+                run(client, base, path, messageCount, concurrency, seconds, latencies, errors);
+                List<Long> sorted = new ArrayList<>(latencies);
+                Collections.sort(sorted);
+                double throughput = sorted.size() / (double) seconds;
+                String row = String.format("%s,%d,%d,%d,%.1f,%.3f,%.3f,%.3f", threads, concurrency, sorted.size(), errors.sum(), throughput,
+                    percentile(sorted, 0.50), percentile(sorted, 0.99), percentile(sorted, 0.999));
+                csv.println(row);
+                System.out.printf("%-9s %11d %9d %7d %14.1f %9.3f %9.3f %9.3f%n", threads, concurrency, sorted.size(), errors.sum(), throughput,
+                    percentile(sorted, 0.50), percentile(sorted, 0.99), percentile(sorted, 0.999));
+            }
+        } finally {
+            app.stop();
+        }
+        System.out.println("Results written to " + output.getPath());
+    }
+
+    /**
+     * Keeps `concurrency` requests in flight until `seconds` have passed, recording the latency of every completed
+     * request in nanoseconds.
+     */
+    private static void run(HttpClient client, String base, String path, int messageCount, int concurrency, int seconds,
+            List<Long> latencies, LongAdder errors) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        List<CompletableFuture<Void>> loops = new ArrayList<>(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            CompletableFuture<Void> done = new CompletableFuture<>();
+            loop(client, base, path, messageCount, deadline, latencies, errors, done);
+            loops.add(done);
+        }
+        CompletableFuture.allOf(loops.toArray(new CompletableFuture[0])).get();
+    }
+
+    private static void loop(HttpClient client, String base, String path, int messageCount, long deadline,
+            List<Long> latencies, LongAdder errors, CompletableFuture<Void> done) {
+        if (System.nanoTime() >= deadline) {
+            done.complete(null);
+            return;
+        }
+        String uri = base + path.replace("{id}", Integer.toString(ThreadLocalRandom.current().nextInt(messageCount) + 1));
+        long start = System.nanoTime();
+        client.sendAsync(HttpRequest.newBuilder(URI.create(uri)).build(), HttpResponse.BodyHandlers.discarding())
+            .whenComplete((response, error) -> {
+                if (error != null || response.statusCode() >= 500) errors.increment();
+                else latencies.add(System.nanoTime() - start);
+                loop(client, base, path, messageCount, deadline, latencies, errors, done);
+            });
+    }
+
+    private static double percentile(List<Long> sorted, double quantile) {
+        if (sorted.isEmpty()) return 0;
+        int index = (int) Math.min(sorted.size() - 1, Math.ceil(quantile * sorted.size()) - 1);
+        return sorted.get(Math.max(0, index)) / 1_000_000.0;
+    }
+}
@@ -0,0 +1,128 @@
+package Benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import DAO.ISocialMediaDAO;
+import DAO.InMemorySocialMediaDAO;
+import DAO.MessageQuery;
+import DAO.SocialMediaDAO;
+import Model.*;
+
+/**
+ * Measures every DAO operation against a database pre-seeded with accountCount accounts and messageCount messages.
+ * Run with -p messageCount=1000000 to see how each query scales with table size. The memory storage runs the same
+ * operations on an InMemorySocialMediaDAO preloaded from that database.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {BenchmarkDatabase.DB_URL_ARG, BenchmarkDatabase.QUIET_LOGGING_ARG})
+public class DAOBenchmark {
+
+    @Param("100")
+    public int accountCount;
+
+    @Param("10000")
+    public int messageCount;
+
+    @Param("50")
+    public int pageSize;
+
+    @Param({"h2", "memory"})
+    public String storage;
+
+    private ISocialMediaDAO dao;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        BenchmarkDatabase.seed(accountCount, messageCount);
+        if (storage.equals("memory")) {
+            InMemorySocialMediaDAO memory = new InMemorySocialMediaDAO();
+            memory.preload();
+            dao = memory;
+        } else {
+            dao = new SocialMediaDAO();
+        }
+    }
+
+    private int randomAccount() {
+        return ThreadLocalRandom.current().nextInt(accountCount) + 1;
+    }
+
+    private int randomMessage() {
+        return ThreadLocalRandom.current().nextInt(messageCount) + 1;
+    }
+
+    @Benchmark
+    public Account findAccountByUsername() throws Exception {
+        return dao.findAccount("user" + randomAccount());
+    }
+
+    @Benchmark
+    public Account findAccountById() throws Exception {
+        return dao.findAccount(randomAccount());
+    }
+
+    @Benchmark
+    public Message findMessage() throws Exception {
+        return dao.findMessage(randomMessage());
+    }
+
+    @Benchmark
+    public List<Message> findMessagesByPoster() throws Exception {
+        return dao.findMessagesByPoster(randomAccount());
+    }
+
+    @Benchmark
+    public List<Message> findAllMessages() throws Exception {
+        return dao.findAllMessages();
+    }
+
+    @Benchmark
+    public List<Message> findMessagesPage() throws Exception {
+        return dao.findMessages(new MessageQuery(null, randomMessage(), pageSize, null));
+    }
+
+    @Benchmark
+    public List<Message> findMessagesPageByPoster() throws Exception {
+        return dao.findMessages(new MessageQuery(randomAccount(), randomMessage(), pageSize, null));
+    }
+
+    @Benchmark
+    public void streamMessagesPage(Blackhole blackhole) throws Exception {
+        dao.streamMessages(new MessageQuery(null, randomMessage(), pageSize, null), blackhole::consume);
+    }
+
+    @Benchmark
+    public Message createMessage() throws Exception {
+        return dao.createMessage(new Message(randomAccount(), "a freshly created benchmark message", BenchmarkDatabase.FIRST_EPOCH));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(100)
+    public List<Message> createMessages() throws Exception {
+        List<Message> messages = new ArrayList<>(100);
+        for (int i = 0; i < 100; i++)
+            messages.add(new Message(randomAccount(), "a freshly created benchmark message", BenchmarkDatabase.FIRST_EPOCH));
+        return dao.createMessages(messages);
+    }
+
+    @Benchmark
+    public Message updateMessage() throws Exception {
+        return dao.updateMessage(new Message(randomMessage(), 0, "an updated benchmark message", 0), ISocialMediaDAO.ANY_ACCOUNT);
+    }
+
+    @Benchmark
+    public Message createAndDeleteMessage() throws Exception {
+        Message created = dao.createMessage(new Message(randomAccount(), "a short-lived benchmark message", BenchmarkDatabase.FIRST_EPOCH));
+        return dao.deleteMessage(created.getMessage_id(), ISocialMediaDAO.ANY_ACCOUNT);
+    }
+}
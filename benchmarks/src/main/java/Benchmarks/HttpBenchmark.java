@@ -0,0 +1,140 @@
+package Benchmarks;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import Controller.SocialMediaController;
+import io.javalin.Javalin;
+
+/**
+ * Measures SocialMediaController routes end to end over loopback HTTP, against a database pre-seeded with
+ * accountCount accounts and messageCount messages. Use -t to drive the server from several client threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {BenchmarkDatabase.DB_URL_ARG, BenchmarkDatabase.QUIET_LOGGING_ARG})
+public class HttpBenchmark {
+
+    @Param("100")
+    public int accountCount;
+
+    @Param("10000")
+    public int messageCount;
+
+    @Param("18080")
+    public int port;
+
+    private Javalin app;
+    private HttpClient client;
+    private String base;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        BenchmarkDatabase.seed(accountCount, messageCount);
+        app = new SocialMediaController().startAPI().start(port);
+        client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        base = "http://localhost:" + port + "/";
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        app.stop();
+    }
+
+    private int randomAccount() {
+        return ThreadLocalRandom.current().nextInt(accountCount) + 1;
+    }
+
+    private int randomMessage() {
+        return ThreadLocalRandom.current().nextInt(messageCount) + 1;
+    }
+
+    private HttpResponse<byte[]> send(HttpRequest request) throws Exception {
+        HttpResponse<byte[]> response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        if (response.statusCode() >= 500) throw new IllegalStateException("Unexpected status " + response.statusCode() + " for " + request);
+        return response;
+    }
+
+    @Benchmark
+    public HttpResponse<byte[]> getMessage() throws Exception {
+        return send(HttpRequest.newBuilder(URI.create(base + "messages/" + randomMessage())).build());
+    }
+
+    @Benchmark
+    public HttpResponse<byte[]> getMessagesPage() throws Exception {
+        return send(HttpRequest.newBuilder(URI.create(base + "messages?limit=50&after=" + randomMessage())).build());
+    }
+
+    @Benchmark
+    public HttpResponse<byte[]> getMessagesByAccountPage() throws Exception {
+        return send(HttpRequest.newBuilder(URI.create(base + "accounts/" + randomAccount() + "/messages?limit=50")).build());
+    }
+
+    /**
+     * An account's whole listing, about messageCount / accountCount messages, as JSON.
+     */
+    @Benchmark
+    public HttpResponse<byte[]> getMessagesByAccount() throws Exception {
+        return send(HttpRequest.newBuilder(URI.create(base + "accounts/" + randomAccount() + "/messages")).build());
+    }
+
+    /**
+     * The same listing for a client that accepts gzip. Once every account has been listed, each request is answered
+     * from the compressed listing cache.
+     */
+    @Benchmark
+    public HttpResponse<byte[]> getMessagesByAccountGzip() throws Exception {
+        return send(HttpRequest.newBuilder(URI.create(base + "accounts/" + randomAccount() + "/messages")).header("Accept-Encoding", "gzip").build());
+    }
+
+    @Benchmark
+    public HttpResponse<byte[]> postMessage() throws Exception {
+        String body = "{\"posted_by\":" + randomAccount() + ",\"message_text\":\"a benchmark post\",\"time_posted_epoch\":" + BenchmarkDatabase.FIRST_EPOCH + "}";
+        return send(HttpRequest.newBuilder(URI.create(base + "messages")).POST(HttpRequest.BodyPublishers.ofString(body)).build());
+    }
+
+    /**
+     * Fifty random messages in one request, to compare with fifty calls to getMessage.
+     */
+    @Benchmark
+    public HttpResponse<byte[]> getMessagesByIds() throws Exception {
+        StringBuilder ids = new StringBuilder();
+        for (int i = 0; i < 50; i++) ids.append(i == 0 ? "" : ",").append(randomMessage());
+        return send(HttpRequest.newBuilder(URI.create(base + "messages?ids=" + ids)).build());
+    }
+
+    /**
+     * Fifty new messages in one request, to compare with fifty calls to postMessage.
+     */
+    @Benchmark
+    public HttpResponse<byte[]> postMessageBatch() throws Exception {
+        StringBuilder body = new StringBuilder("[");
+        for (int i = 0; i < 50; i++)
+            body.append(i == 0 ? "" : ",").append("{\"posted_by\":").append(randomAccount())
+                .append(",\"message_text\":\"a benchmark post\",\"time_posted_epoch\":").append(BenchmarkDatabase.FIRST_EPOCH).append('}');
+        body.append(']');
+        return send(HttpRequest.newBuilder(URI.create(base + "messages/batch")).POST(HttpRequest.BodyPublishers.ofString(body.toString())).build());
+    }
+
+    @Benchmark
+    public HttpResponse<byte[]> patchMessage() throws Exception {
+        String body = "{\"message_text\":\"a patched benchmark post\"}";
+        return send(HttpRequest.newBuilder(URI.create(base + "messages/" + randomMessage())).method("PATCH", HttpRequest.BodyPublishers.ofString(body)).build());
+    }
+
+    @Benchmark
+    public HttpResponse<byte[]> login() throws Exception {
+        int account = randomAccount();
+        String body = "{\"username\":\"user" + account + "\",\"password\":\"password" + account + "\"}";
+        return send(HttpRequest.newBuilder(URI.create(base + "login")).POST(HttpRequest.BodyPublishers.ofString(body)).build());
+    }
+}
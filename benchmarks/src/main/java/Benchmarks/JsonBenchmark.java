@@ -0,0 +1,87 @@
+package Benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Model.*;
+import Util.Json;
+
+/**
+ * Measures JSON encoding and decoding of the Model classes with the shared readers and writers in {@link Json}.
+ * The newObjectMapper benchmarks reproduce the old per-request `new ObjectMapper()` for comparison.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonBenchmark {
+
+    @Param("100")
+    public int listSize;
+
+    private Message message;
+    private Account account;
+    private List<Message> messages;
+    private byte[] messageJson;
+    private byte[] accountJson;
+    private byte[] messagesJson;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        message = new Message(42, 7, "benchmark message with some ordinary text in it", BenchmarkDatabase.FIRST_EPOCH);
+        account = new Account(7, "user7", "password7");
+        messages = new ArrayList<>(listSize);
+        for (int i = 1; i <= listSize; i++)
+            messages.add(new Message(i, i % 10 + 1, "benchmark message number " + i + " with some ordinary text in it", BenchmarkDatabase.FIRST_EPOCH + i));
+        messageJson = Json.MESSAGE_WRITER.writeValueAsBytes(message);
+        accountJson = Json.ACCOUNT_WRITER.writeValueAsBytes(account);
+        messagesJson = Json.MESSAGE_LIST_WRITER.writeValueAsBytes(messages);
+    }
+
+    @Benchmark
+    public byte[] encodeMessage() throws Exception {
+        return Json.MESSAGE_WRITER.writeValueAsBytes(message);
+    }
+
+    @Benchmark
+    public Message decodeMessage() throws Exception {
+        return Json.MESSAGE_READER.readValue(messageJson);
+    }
+
+    @Benchmark
+    public byte[] encodeAccount() throws Exception {
+        return Json.ACCOUNT_WRITER.writeValueAsBytes(account);
+    }
+
+    @Benchmark
+    public Account decodeAccount() throws Exception {
+        return Json.ACCOUNT_READER.readValue(accountJson);
+    }
+
+    @Benchmark
+    public byte[] encodeMessageList() throws Exception {
+        return Json.MESSAGE_LIST_WRITER.writeValueAsBytes(messages);
+    }
+
+    @Benchmark
+    public List<Message> decodeMessageList() throws Exception {
+        return Json.MESSAGE_LIST_READER.readValue(messagesJson);
+    }
+
+    @Benchmark
+    public String encodeMessageNewObjectMapper() throws Exception {
+        return new ObjectMapper().writeValueAsString(message);
+    }
+
+    @Benchmark
+    public Message decodeMessageNewObjectMapper() throws Exception {
+        return new ObjectMapper().readValue(messageJson, Message.class);
+    }
+}
@@ -0,0 +1,65 @@
+package Benchmarks;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import Service.CredentialVerifier;
+import Util.PasswordHasher;
+
+/**
+ * Measures password hashing at the PBKDF2 cost given by `iterations` (the default of
+ * socialmedia.auth.pbkdf2.iterations), in logins per second per thread. verifyUncached is the cost of a login the
+ * credential cache has not seen and bounds how many logins per second one credential executor thread can serve;
+ * verifyCached is a repeated login within the cache's time to live. Use -t to see how throughput scales with threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {BenchmarkDatabase.QUIET_LOGGING_ARG})
+public class LoginBenchmark {
+
+    @Param("210000")
+    public int iterations;
+
+    private PasswordHasher hasher;
+    private CredentialVerifier verifier;
+    private String stored;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        hasher = new PasswordHasher(iterations);
+        verifier = new CredentialVerifier(hasher, 10_000, Duration.ofMinutes(10));
+        stored = hasher.hash("password1");
+        if (!verifier.verify("password1", stored)) throw new IllegalStateException("Password does not verify");
+    }
+
+    /**
+     * The cost of registering an account.
+     */
+    @Benchmark
+    public String hash() {
+        return hasher.hash("password1");
+    }
+
+    @Benchmark
+    public boolean verifyUncached() {
+        return hasher.verify("password1", stored);
+    }
+
+    @Benchmark
+    public boolean verifyCached() {
+        return verifier.verify("password1", stored);
+    }
+
+    /**
+     * A wrong password is never cached, so every failed attempt pays for a full derivation.
+     */
+    @Benchmark
+    public boolean verifyWrongPassword() {
+        return verifier.verify("password2", stored);
+    }
+}
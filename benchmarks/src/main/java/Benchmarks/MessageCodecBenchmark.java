@@ -0,0 +1,68 @@
+package Benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import Model.*;
+import Util.Json;
+import Util.MessageCodec;
+
+/**
+ * Compares the {@link MessageCodec} encoding with the JSON of {@link Json} for one message and a list of messages,
+ * on the same data as {@link JsonBenchmark}. The encoded sizes are printed when each trial starts.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageCodecBenchmark {
+
+    @Param({"json", "protobuf"})
+    public String format;
+
+    @Param("100")
+    public int listSize;
+
+    private boolean protobuf;
+    private Message message;
+    private List<Message> messages;
+    private byte[] encodedMessage;
+    private byte[] encodedMessages;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        protobuf = format.equals("protobuf");
+        message = new Message(42, 7, "benchmark message with some ordinary text in it", BenchmarkDatabase.FIRST_EPOCH);
+        messages = new ArrayList<>(listSize);
+        for (int i = 1; i <= listSize; i++)
+            messages.add(new Message(i, i % 10 + 1, "benchmark message number " + i + " with some ordinary text in it", BenchmarkDatabase.FIRST_EPOCH + i));
+        encodedMessage = encodeMessage();
+        encodedMessages = encodeMessageList();
+        System.out.println(format + ": message " + encodedMessage.length + " bytes, list of " + listSize + " " + encodedMessages.length + " bytes");
+    }
+
+    @Benchmark
+    public byte[] encodeMessage() throws Exception {
+        return protobuf ? MessageCodec.encode(message) : Json.MESSAGE_WRITER.writeValueAsBytes(message);
+    }
+
+    @Benchmark
+    public Message decodeMessage() throws Exception {
+        return protobuf ? MessageCodec.decode(encodedMessage) : Json.MESSAGE_READER.readValue(encodedMessage);
+    }
+
+    @Benchmark
+    public byte[] encodeMessageList() throws Exception {
+        return protobuf ? MessageCodec.encodeList(messages) : Json.MESSAGE_LIST_WRITER.writeValueAsBytes(messages);
+    }
+
+    @Benchmark
+    public List<Message> decodeMessageList() throws Exception {
+        return protobuf ? MessageCodec.decodeList(encodedMessages) : Json.MESSAGE_LIST_READER.readValue(encodedMessages);
+    }
+}
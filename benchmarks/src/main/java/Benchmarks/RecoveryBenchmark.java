@@ -0,0 +1,57 @@
+package Benchmarks;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import DAO.DurableSocialMediaDAO;
+import Model.*;
+
+/**
+ * Measures how long the DurableSocialMediaDAO takes to start on a directory holding messageCount messages, read
+ * either from log segments alone (from=log) or from a snapshot (from=snapshot). Each measurement is one startup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {BenchmarkDatabase.QUIET_LOGGING_ARG})
+public class RecoveryBenchmark {
+
+    @Param({"100000", "1000000"})
+    public int messageCount;
+
+    @Param({"log", "snapshot"})
+    public String from;
+
+    private Path directory;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        directory = WriteAheadLogBenchmark.emptyDirectory("recovery-benchmark");
+        try (DurableSocialMediaDAO dao = new DurableSocialMediaDAO(directory, 64 << 20, false, 0)) {
+            for (int i = 1; i <= WriteAheadLogBenchmark.ACCOUNTS; i++) dao.createAccount(new Account("user" + i, "password"));
+            List<Message> batch = new ArrayList<>(1000);
+            for (int i = 0; i < messageCount; i++) {
+                batch.add(new Message(i % WriteAheadLogBenchmark.ACCOUNTS + 1, "benchmark message number " + i, BenchmarkDatabase.FIRST_EPOCH + i));
+                if (batch.size() == 1000) {
+                    dao.createMessages(batch);
+                    batch = new ArrayList<>(1000);
+                }
+            }
+            if (!batch.isEmpty()) dao.createMessages(batch);
+            if (from.equals("snapshot")) dao.snapshot();
+        }
+    }
+
+    @Benchmark
+    public long recover() throws Exception {
+        try (DurableSocialMediaDAO dao = new DurableSocialMediaDAO(directory, 64 << 20, false, 0)) {
+            return dao.getRecoveredRecords();
+        }
+    }
+}
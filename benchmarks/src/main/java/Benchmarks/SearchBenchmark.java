@@ -0,0 +1,88 @@
+package Benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import Model.Message;
+import Service.SearchIndex;
+
+/**
+ * Measures {@link SearchIndex} queries as the number of indexed messages grows. Every table size contains exactly
+ * `matchCount` messages with the term "needle", so the search benchmarks should take about the same time for every
+ * `messageCount`; scanTable shows the cost of the `LIKE '%needle%'` alternative, which grows with the table.
+ *
+ * Message text is drawn from a vocabulary with a skewed (Zipf-like) word distribution, so "common" terms such as
+ * word0 appear in a large share of the messages.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g", BenchmarkDatabase.QUIET_LOGGING_ARG})
+public class SearchBenchmark {
+
+    private static final int VOCABULARY = 5_000;
+
+    @Param({"10000", "100000", "1000000"})
+    public int messageCount;
+
+    @Param("100")
+    public int matchCount;
+
+    private SearchIndex index;
+    private List<String> texts;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        index = new SearchIndex();
+        texts = new ArrayList<>(messageCount);
+        int every = messageCount / matchCount;
+        for (int id = 1; id <= messageCount; id++) {
+            StringBuilder text = new StringBuilder();
+            int words = 5 + random.nextInt(15);
+            for (int w = 0; w < words; w++) {
+                // squaring a uniform value skews the choice towards low word numbers
+                double u = random.nextDouble();
+                text.append("word").append((int) (u * u * VOCABULARY)).append(' ');
+            }
+            if (id % every == 0) text.append("needle");
+            texts.add(text.toString());
+            index.add(new Message(id, id % 100 + 1, text.toString(), BenchmarkDatabase.FIRST_EPOCH + id));
+        }
+    }
+
+    @Benchmark
+    public List<Integer> searchRareTerm() {
+        return index.search("needle", 0, 20);
+    }
+
+    /**
+     * A rare term together with a very common one: the common term's posting list is only probed for the
+     * candidates of the rare one.
+     */
+    @Benchmark
+    public List<Integer> searchRareAndCommonTerm() {
+        return index.search("needle word0", 0, 20);
+    }
+
+    @Benchmark
+    public List<Integer> searchSecondPage() {
+        return index.search("needle", 20, 20);
+    }
+
+    /**
+     * The equivalent of `where message_text like '%needle%'`: a substring test of every message.
+     */
+    @Benchmark
+    public int scanTable() {
+        int matches = 0;
+        for (String text : texts) if (text.contains("needle")) matches++;
+        return matches;
+    }
+}
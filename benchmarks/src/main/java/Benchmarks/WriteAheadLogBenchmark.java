@@ -0,0 +1,89 @@
+package Benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.*;
+
+import DAO.DurableSocialMediaDAO;
+import DAO.ISocialMediaDAO;
+import Model.*;
+
+/**
+ * Measures write throughput of the DurableSocialMediaDAO, in changes per second. With syncOnWrite every change waits
+ * for its fsync, which concurrent writers share: run with -t 1, -t 8 and -t 32 to see throughput grow with the
+ * number of writers while the fsync rate stays flat. Without it the cost is the in-memory change plus a copy into
+ * the mapped log segment.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {BenchmarkDatabase.QUIET_LOGGING_ARG})
+public class WriteAheadLogBenchmark {
+
+    static final int ACCOUNTS = 100;
+
+    @Param({"true", "false"})
+    public boolean syncOnWrite;
+
+    private DurableSocialMediaDAO dao;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dao = new DurableSocialMediaDAO(emptyDirectory("wal-benchmark"), 64 << 20, syncOnWrite, 0);
+        for (int i = 1; i <= ACCOUNTS; i++) dao.createAccount(new Account("user" + i, "password"));
+        dao.createMessage(new Message(1, "a message to update", BenchmarkDatabase.FIRST_EPOCH));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        System.out.printf("%n%d records, %d fsyncs%n", dao.getLog().getRecordCount(), dao.getLog().getSyncCount());
+        dao.close();
+    }
+
+    private static int randomAccount() {
+        return ThreadLocalRandom.current().nextInt(ACCOUNTS) + 1;
+    }
+
+    @Benchmark
+    public Message createMessage() throws Exception {
+        return dao.createMessage(new Message(randomAccount(), "a freshly created benchmark message", BenchmarkDatabase.FIRST_EPOCH));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(100)
+    public List<Message> createMessages() throws Exception {
+        List<Message> messages = new ArrayList<>(100);
+        for (int i = 0; i < 100; i++)
+            messages.add(new Message(randomAccount(), "a freshly created benchmark message", BenchmarkDatabase.FIRST_EPOCH));
+        return dao.createMessages(messages);
+    }
+
+    @Benchmark
+    public Message updateMessage() throws Exception {
+        return dao.updateMessage(new Message(1, 0, "an updated benchmark message", 0), ISocialMediaDAO.ANY_ACCOUNT);
+    }
+
+    /**
+     * @return ./h2/name, emptied
+     */
+    static Path emptyDirectory(String name) throws IOException {
+        Path directory = Paths.get("h2", name);
+        if (Files.exists(directory)) {
+            try (Stream<Path> files = Files.walk(directory)) {
+                for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) Files.delete(file);
+            }
+        }
+        return Files.createDirectories(directory);
+    }
+}
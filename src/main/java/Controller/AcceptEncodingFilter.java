@@ -0,0 +1,88 @@
+package Controller;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Locale;
+
+import jakarta.servlet.Filter;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+
+/**
+ * The AcceptEncodingFilter reads the q-values of a request's Accept-Encoding header. Javalin's compression only looks
+ * for "gzip" in the header, so "gzip;q=0", which refuses gzip, would still get a gzipped response, and "*" would not.
+ * gzip is the only coding the API compresses with, so the filter replaces the header with gzip if the request
+ * accepts it and identity otherwise, before Javalin or any handler reads it.
+ *
+ * A coding is accepted if it is listed with a q-value above 0, or, if it is not listed, if * is. A q-value that cannot
+ * be read counts as 0, since sending a response uncompressed is always allowed.
+ */
+class AcceptEncodingFilter implements Filter {
+
+    private static final String ACCEPT_ENCODING = "Accept-Encoding";
+    private static final String GZIP = "gzip";
+    private static final String IDENTITY = "identity";
+
+    /**
+     * @param acceptEncoding the request's Accept-Encoding header, or null
+     * @param coding a content coding, such as gzip
+     * @return true if the header accepts the coding
+     */
+    static boolean accepts(String acceptEncoding, String coding) {
+        if (acceptEncoding == null) return false;
+        double listed = -1;
+        double any = -1;
+        for (String entry : acceptEncoding.split(",")) {
+            String name = name(entry);
+            if (name.equals(coding)) listed = quality(entry);
+            else if (name.equals("*")) any = quality(entry);
+        }
+        return (listed >= 0 ? listed : any) > 0;
+    }
+
+    private static String name(String entry) {
+        int parameters = entry.indexOf(';');
+        return (parameters < 0 ? entry : entry.substring(0, parameters)).trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static double quality(String entry) {
+        String[] parameters = entry.split(";");
+        for (int i = 1; i < parameters.length; i++) {
+            String parameter = parameters[i].trim();
+            if (parameter.length() < 2 || Character.toLowerCase(parameter.charAt(0)) != 'q' || parameter.charAt(1) != '=') continue;
+            try {
+                return Double.parseDouble(parameter.substring(2).trim());
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+        }
+        return 1;
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
+        HttpServletRequest http = (HttpServletRequest) request;
+        String acceptEncoding = http.getHeader(ACCEPT_ENCODING);
+        if (acceptEncoding == null) {
+            chain.doFilter(request, response);
+            return;
+        }
+        String accepted = accepts(acceptEncoding, GZIP) ? GZIP : IDENTITY;
+        chain.doFilter(new HttpServletRequestWrapper(http) {
+            @Override
+            public String getHeader(String name) {
+                return ACCEPT_ENCODING.equalsIgnoreCase(name) ? accepted : super.getHeader(name);
+            }
+
+            @Override
+            public Enumeration<String> getHeaders(String name) {
+                return ACCEPT_ENCODING.equalsIgnoreCase(name) ? Collections.enumeration(Collections.singletonList(accepted)) : super.getHeaders(name);
+            }
+        }, response);
+    }
+}
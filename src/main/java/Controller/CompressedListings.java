@@ -0,0 +1,221 @@
+package Controller;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPOutputStream;
+
+import io.javalin.http.Context;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import Util.Config;
+import Util.Metrics;
+
+/**
+ * The CompressedListings class keeps recently served message listings gzipped, so a listing requested again is
+ * written straight from memory: no query, no serialization and no compression.
+ *
+ * A listing is stored under its ETag, which changes with the listing's version (see {@link Service.MessageVersions}),
+ * together with the request's path and query string. A change to the messages therefore never invalidates an entry;
+ * it gives the listing a new key, and the old entry is evicted in time. Entries are weighed by their compressed size,
+ * up to socialmedia.http.compressedCache.maxBytes in all (default 32 MiB, 0 disables the cache). The first response
+ * for a key is streamed to the client through the compressor as before and copied as it goes; the copy is only kept
+ * if the whole body was written and it stayed under socialmedia.http.compressedCache.maxEntryBytes (default 1 MiB),
+ * so a very large listing still streams without being held in memory.
+ *
+ * Like any other response, a listing is only gzipped once it reaches socialmedia.http.compression.minBytes: the body
+ * is held back until then, and a listing that ends first is sent as it is and not cached. A gzipped listing is a
+ * different representation from the identity one, so it is sent under its own ETag (see {@link #gzipTag(String)}).
+ *
+ * These bodies are written to the servlet's own output stream, past Javalin's compression, which would otherwise
+ * compress them a second time.
+ */
+class CompressedListings {
+
+    private static final String GZIP = "gzip";
+
+    private final Cache<String, byte[]> bodies;
+    private final int minimumBytes;
+    private final int maximumEntryBytes;
+    private final int level;
+    private final LongAdder hits = Metrics.counter("socialmedia_http_compressed_cache_hits_total", "Listings served from the compressed listing cache.", "");
+    private final LongAdder misses = Metrics.counter("socialmedia_http_compressed_cache_misses_total", "Listings compressed because the compressed listing cache did not hold them.", "");
+
+    /**
+     * @param minimumBytes the size below which a listing is sent uncompressed
+     * @param level the gzip level the listings are compressed with
+     */
+    CompressedListings(int minimumBytes, int level) {
+        this(Config.getLong("socialmedia.http.compressedCache.maxBytes", 32 << 20),
+            Config.getInt("socialmedia.http.compressedCache.maxEntryBytes", 1 << 20), minimumBytes, level);
+    }
+
+    CompressedListings(long maximumBytes, int maximumEntryBytes, int minimumBytes, int level) {
+        this.bodies = Caffeine.newBuilder()
+            .maximumWeight(maximumBytes)
+            .weigher((String key, byte[] body) -> key.length() + body.length)
+            .build();
+        this.minimumBytes = minimumBytes;
+        this.maximumEntryBytes = maximumEntryBytes;
+        this.level = level;
+        Metrics.gauge("socialmedia_http_compressed_cache_bytes", "Bytes of gzipped listings held by the compressed listing cache.", "",
+            () -> this.bodies.policy().eviction().map(eviction -> eviction.weightedSize().orElse(0)).orElse(0L));
+    }
+
+    /**
+     * @return true if the request's Accept-Encoding accepts gzip, by its q-values (see {@link AcceptEncodingFilter})
+     */
+    static boolean acceptsGzip(Context context) {
+        return AcceptEncodingFilter.accepts(context.header("Accept-Encoding"), GZIP);
+    }
+
+    /**
+     * @return the ETag of the gzipped body of the listing tagged etag, e.g. "l1a-gz" for "l1a"
+     */
+    static String gzipTag(String etag) {
+        return etag.substring(0, etag.length() - 1) + "-gz\"";
+    }
+
+    static String key(Context context, String etag) {
+        String query = context.queryString();
+        return etag + " " + context.path() + (query == null ? "" : "?" + query);
+    }
+
+    /**
+     * Writes the cached listing, if there is one, as the response body.
+     * @param etag the ETag of the listing, which the cached body is sent under as {@link #gzipTag(String)}
+     * @return true if the listing was served from the cache
+     */
+    boolean serve(Context context, String key, String etag, String contentType) throws IOException {
+        byte[] body = this.bodies.getIfPresent(key);
+        if (body == null) {
+            this.misses.increment();
+            return false;
+        }
+        this.hits.increment();
+        context.contentType(contentType).header("Content-Encoding", GZIP).header("ETag", gzipTag(etag)).status(200);
+        context.res().setContentLength(body.length);
+        try (OutputStream out = context.res().getOutputStream()) {
+            out.write(body);
+        }
+        return true;
+    }
+
+    /**
+     * Starts a response body that is gzipped, and cached under the key once it is closed, if it reaches the minimum
+     * size; a smaller body is sent uncompressed when it is closed.
+     * @param etag the ETag of the listing
+     */
+    OutputStream open(Context context, String key, String etag) {
+        return new Threshold(context, key, etag);
+    }
+
+    /**
+     * Holds the body back until it reaches minimumBytes, when the response headers are still open to change, and
+     * only then decides whether to compress it.
+     */
+    private class Threshold extends OutputStream {
+        private final Context context;
+        private final String key;
+        private final String etag;
+        private ByteArrayOutputStream pending = new ByteArrayOutputStream(Math.max(minimumBytes, 32));
+        private OutputStream out;
+
+        Threshold(Context context, String key, String etag) {
+            this.context = context;
+            this.key = key;
+            this.etag = etag;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (this.out != null) {
+                this.out.write(b);
+                return;
+            }
+            this.pending.write(b);
+            if (this.pending.size() >= minimumBytes) compress();
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (this.out != null) {
+                this.out.write(b, off, len);
+                return;
+            }
+            this.pending.write(b, off, len);
+            if (this.pending.size() >= minimumBytes) compress();
+        }
+
+        /**
+         * Flushes the compressed body; a body still held back stays held back, since it may yet end small.
+         */
+        @Override
+        public void flush() throws IOException {
+            if (this.out != null) this.out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (this.out == null) {
+                this.context.res().setContentLength(this.pending.size());
+                this.out = this.context.res().getOutputStream();
+                this.pending.writeTo(this.out);
+                this.pending = null;
+            }
+            this.out.close();
+        }
+
+        private void compress() throws IOException {
+            this.context.header("Content-Encoding", GZIP).header("ETag", gzipTag(this.etag));
+            this.out = new GZIPOutputStream(new Capture(this.context.res().getOutputStream(), this.key), 8192) {
+                {
+                    this.def.setLevel(CompressedListings.this.level);
+                }
+            };
+            this.pending.writeTo(this.out);
+            this.pending = null;
+        }
+    }
+
+    /**
+     * Passes the compressed body through to the client and keeps a copy of it, as long as the copy is small enough.
+     */
+    private class Capture extends FilterOutputStream {
+        private final String key;
+        private ByteArrayOutputStream copy = new ByteArrayOutputStream(4096);
+
+        Capture(OutputStream out, String key) {
+            super(out);
+            this.key = key;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            this.out.write(b);
+            if (this.copy != null) {
+                this.copy.write(b);
+                if (this.copy.size() > maximumEntryBytes) this.copy = null;
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            this.out.write(b, off, len);
+            if (this.copy != null) {
+                if (this.copy.size() + len > maximumEntryBytes) this.copy = null;
+                else this.copy.write(b, off, len);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            super.close();
+            if (this.copy != null) bodies.put(this.key, this.copy.toByteArray());
+        }
+    }
+}
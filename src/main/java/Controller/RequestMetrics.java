@@ -0,0 +1,84 @@
+package Controller;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import io.javalin.http.Context;
+import io.javalin.http.HandlerType;
+
+import Util.LatencyHistogram;
+import Util.Metrics;
+
+/**
+ * The RequestMetrics class records, for every route and HTTP method, a latency histogram and a count of responses
+ * by status code. It is fed by Javalin's request logger, which runs once the response (including an asynchronous
+ * one) has been written. Routes are identified by their path pattern, e.g. /messages/{id}, so the number of series
+ * stays bounded; requests that matched no route are recorded under route="unmatched".
+ *
+ * Looking up a route is two hash map reads keyed by the method enum and the pattern string Javalin already holds,
+ * and recording is lock-free, so nothing is allocated per request once a route has been seen.
+ */
+class RequestMetrics {
+
+    private static final String UNMATCHED = "unmatched";
+
+    private final Map<HandlerType, Map<String, Route>> routes = new EnumMap<>(HandlerType.class);
+
+    /**
+     * The histogram and per-status counters of one method and route.
+     */
+    private static class Route {
+        final String method;
+        final String route;
+        final LatencyHistogram latency;
+        final AtomicReferenceArray<LongAdder> statuses = new AtomicReferenceArray<>(600);
+
+        Route(String method, String route) {
+            this.method = method;
+            this.route = route;
+            this.latency = Metrics.histogram("http_request_duration_seconds", "Time taken to handle HTTP requests.",
+                Metrics.labels("method", method, "route", route));
+        }
+
+        LongAdder status(int status) {
+            if (status < 0 || status >= this.statuses.length()) status = 0;
+            LongAdder counter = this.statuses.get(status);
+            if (counter == null) {
+                counter = Metrics.counter("http_requests_total", "HTTP requests by route and status code.",
+                    Metrics.labels("method", this.method, "route", this.route, "status", Integer.toString(status)));
+                this.statuses.set(status, counter);
+            }
+            return counter;
+        }
+    }
+
+    RequestMetrics() {
+        for (HandlerType method : HandlerType.values()) this.routes.put(method, new ConcurrentHashMap<>());
+    }
+
+    /**
+     * @param executionTimeMs the time Javalin took to handle the request, in milliseconds
+     */
+    void record(Context context, float executionTimeMs) {
+        HandlerType method = context.method();
+        String path = routeOf(context);
+        Map<String, Route> byPath = this.routes.get(method);
+        Route route = byPath.get(path);
+        if (route == null) route = byPath.computeIfAbsent(path, key -> new Route(method.name(), key.startsWith("/") || key.equals(UNMATCHED) ? key : "/" + key));
+        route.latency.record((long) (executionTimeMs * TimeUnit.MILLISECONDS.toNanos(1)));
+        route.status(context.statusCode()).increment();
+    }
+
+    private static String routeOf(Context context) {
+        try {
+            String path = context.endpointHandlerPath();
+            return path == null || path.isEmpty() ? UNMATCHED : path;
+        } catch (RuntimeException e) {
+            return UNMATCHED;
+        }
+    }
+}
@@ -1,19 +1,45 @@
 package Controller;
 
 import io.javalin.Javalin;
+import io.javalin.compression.CompressionStrategy;
+import io.javalin.compression.Gzip;
 import io.javalin.http.Context;
+import io.javalin.util.ConcurrencyUtil;
+import io.javalin.util.LoomUtil;
+import jakarta.servlet.DispatcherType;
 
 import Model.*;
 import Service.*;
 import Exception.*;
+import DAO.ISocialMediaDAO;
+import DAO.MessageConsumer;
+import DAO.MessageQuery;
+import Util.Config;
+import Util.Json;
+import Util.MessageCodec;
+import Util.Metrics;
+import Util.PageCursor;
+import Util.SessionTokens;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.eclipse.jetty.servlet.FilterHolder;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 
-import java.util.List;
 
 /**
  * TODO: You will need to write your own endpoints and handlers for your controller. The endpoints you will need can be
@@ -24,135 +50,622 @@ public class SocialMediaController {
     
     private static final Logger logger = LoggerFactory.getLogger(SocialMediaController.class);
 
+    /**
+     * The page size used when a paginated listing does not specify a limit.
+     */
+    private static final int DEFAULT_PAGE_SIZE = 50;
+
+    /**
+     * The response header POST /login returns the session token in.
+     */
+    public static final String TOKEN_HEADER = "X-Auth-Token";
+
+    private static final String BEARER = "Bearer ";
+
     private ISocialMediaService socialMediaService = new SocialMediaService();
+
+    private AsyncSocialMediaService asyncService = new AsyncSocialMediaService(socialMediaService);
+
+    private RequestMetrics requestMetrics = new RequestMetrics();
+
+    private SessionTokens sessionTokens = new SessionTokens();
+
+    /**
+     * Whether creating, updating and deleting messages requires a session token. When false, a request without an
+     * Authorization header is served as before; a request with one is still checked.
+     */
+    private boolean authRequired = Config.getBoolean("socialmedia.auth.required", false);
+
+    /**
+     * Gzipped message listings by ETag, or null if compression or the cache is turned off.
+     */
+    private CompressedListings compressedListings;
     
     /**
      * In order for the test cases to work, you will need to write the endpoints in the startAPI() method, as the test
      * suite must receive a Javalin object from this method.
+     *
+     * With socialmedia.http.virtualThreads=true, and on a JDK that has virtual threads (21+), Jetty runs every request
+     * on its own virtual thread instead of a bounded platform thread pool. The handlers and the DAO keep their
+     * blocking code; a virtual thread blocked on JDBC simply parks. Otherwise the regular Jetty pool is used.
+     *
+     * Handlers parse the request on the HTTP thread and hand the database work to the {@link AsyncSocialMediaService}
+     * through ctx.future(), so a slow query does not hold a Jetty thread. When the JDBC executor is saturated the
+     * request is answered with 503 at once; so are registrations and logins when the credential executor is.
+     *
+     * POST /login returns a signed session token in the X-Auth-Token header. Sent back as `Authorization: Bearer
+     * <token>`, it identifies the caller of message writes without a database lookup: the caller may then only post
+     * as itself and only change or delete its own messages (403 otherwise). A missing token is accepted unless
+     * socialmedia.auth.required is set; an invalid or expired one is answered with 401.
+     *
+     * GET /messages, /messages/{id} and /accounts/{id}/messages carry an ETag and answer a matching If-None-Match
+     * with 304 Not Modified, usually without querying the database (see {@link MessageVersions}).
+     *
+     * POST /messages/batch, GET /messages?ids=1,2,3 and DELETE /messages/batch act on many messages with one statement
+     * each and return one result per item, so a client does not pay for a request per message.
+     *
+     * The single-message routes and the message listings answer in the compact {@link MessageCodec} encoding instead
+     * of JSON when the Accept header asks for application/x-protobuf, and POST /messages and PATCH /messages/{id}
+     * accept it as a request body with that Content-Type.
+     *
+     * Responses of socialmedia.http.compression.minBytes (default 1500) or more are gzipped, at
+     * socialmedia.http.compression.level (default 6), for clients whose Accept-Encoding accepts gzip by its q-values;
+     * socialmedia.http.compression=none turns this off. Message listings are also kept gzipped by ETag (see
+     * {@link CompressedListings}), so repeated requests for an unchanged listing skip the database and the compressor;
+     * a gzipped listing carries an ETag of its own, ending in -gz.
+     *
+     * When the app stops, the calls already accepted are allowed to finish and the DAO is closed.
+     *
+     * Every request is counted and timed per route; GET /metrics returns those figures together with the DAO, pool,
+     * cache and executor statistics in the Prometheus text format.
      * @return a Javalin app object which defines the behavior of the Javalin controller.
      */
     public Javalin startAPI() {
+        boolean virtualThreads = Config.getBoolean("socialmedia.http.virtualThreads", false);
+        if (virtualThreads && !LoomUtil.INSTANCE.getLoomAvailable())
+            logger.warn("Virtual threads were requested but are not available on Java {}; using the platform thread pool", System.getProperty("java.version"));
+        ConcurrencyUtil.INSTANCE.setUseLoom(virtualThreads);
+        registerExecutorMetrics();
+        boolean compression = !Config.getString("socialmedia.http.compression", "gzip").equals("none");
+        int level = Config.getInt("socialmedia.http.compression.level", 6);
+        if (compression && Config.getLong("socialmedia.http.compressedCache.maxBytes", 32 << 20) > 0)
+            this.compressedListings = new CompressedListings(Config.getInt("socialmedia.http.compression.minBytes", 1500), level);
         Javalin app = Javalin
-            .create()
+            .create(config -> {
+                config.jsonMapper(Json.JSON_MAPPER);
+                if (compression) {
+                    CompressionStrategy strategy = new CompressionStrategy(null, new Gzip(level));
+                    strategy.setMinSizeForCompression(Config.getInt("socialmedia.http.compression.minBytes", 1500));
+                    config.compression.custom(strategy);
+                    config.jetty.contextHandlerConfig(handler ->
+                        handler.addFilter(new FilterHolder(new AcceptEncodingFilter()), "/*", EnumSet.of(DispatcherType.REQUEST)));
+                } else {
+                    config.compression.none();
+                }
+                config.requestLogger.http(this.requestMetrics::record);
+            })
+            .events(event -> event.serverStopped(this::shutdown))
+            .get("metrics", this::getMetrics)
             .post("register", this::register)
             .post("login", this::login)
             .post("messages", this::createMessage)
+            .post("messages/batch", this::createMessages)
+            .delete("messages/batch", this::deleteMessages)
             .get("messages", this::getAllMessages)
+            .get("messages/search", this::searchMessages)
             .get("messages/{id}", this::getMessage)
             .get("accounts/{id}/messages", this::getMessagesByAccount)
             .patch("messages/{id}", this::updateMessage)
             .delete("messages/{id}", this::deleteMessage)
+            .post("accounts/{id}/follow", this::follow)
+            .delete("accounts/{id}/follow", this::unfollow)
+            .get("accounts/{id}/feed", this::getFeed)
             .exception(JsonProcessingException.class, (e, ctx) -> {
-                logger.error("An error occurred processing the request.", e);
+                logger.debug("An error occurred processing the request.", e);
+                ctx.status(400);
+            }).exception(AccountRegistrationException.class, (e, ctx) -> {
+                logger.debug("Account registration failed!", e);
+                ctx.status(400);
+            }).exception(MessageException.class, (e, ctx) -> {
+                logger.debug("An error occurred processing the message request.", e);
                 ctx.status(400);
+            }).exception(FollowException.class, (e, ctx) -> {
+                logger.debug("An error occurred processing the follow request.", e);
+                ctx.status(400);
+            }).exception(AuthenticationException.class, (e, ctx) -> {
+                logger.debug("Request was not authenticated.", e);
+                ctx.status(401);
+            }).exception(AuthorizationException.class, (e, ctx) -> {
+                logger.debug("Request was not authorized.", e);
+                ctx.status(403);
+            }).exception(RejectedExecutionException.class, (e, ctx) -> {
+                ctx.status(503);
             }).exception(Exception.class, (e, ctx) -> {
+                logger.error("An unexpected error occurred processing the request.", e);
                 ctx.status(500);
             });
         return app;
     }
 
+    /**
+     * Runs once the server has stopped: lets the calls already accepted finish, then closes the DAO, so that its
+     * writer threads and open files do not outlive the app.
+     */
+    private void shutdown() {
+        try {
+            this.asyncService.shutdown();
+        } catch (Exception e) {
+            logger.error("Shutting down the service failed", e);
+        }
+    }
+
+    private void registerExecutorMetrics() {
+        Metrics.gauge("socialmedia_db_executor_queue_depth", "Service calls waiting for a JDBC executor thread.", "", this.asyncService::getQueueDepth);
+        Metrics.gauge("socialmedia_db_executor_active_threads", "JDBC executor threads running a service call.", "", this.asyncService::getActiveCount);
+        Metrics.counter("socialmedia_db_executor_rejected_total", "Service calls refused because the JDBC executor was saturated.", "", this.asyncService::getRejectedCount);
+        Metrics.gauge("socialmedia_auth_executor_queue_depth", "Registrations and logins waiting for a credential executor thread.", "", this.asyncService::getCredentialQueueDepth);
+        Metrics.counter("socialmedia_auth_executor_rejected_total", "Registrations and logins refused because the credential executor was saturated.", "", this.asyncService::getCredentialRejectedCount);
+        Metrics.gauge("socialmedia_stream_executor_queue_depth", "Streamed listing chunks waiting for a stream executor thread.", "", this.asyncService::getStreamQueueDepth);
+        Metrics.gauge("socialmedia_stream_executor_active_threads", "Stream executor threads writing a listing chunk.", "", this.asyncService::getStreamActiveCount);
+        Metrics.counter("socialmedia_stream_executor_rejected_total", "Streamed listing chunks refused because the stream executor was saturated.", "", this.asyncService::getStreamRejectedCount);
+    }
+
+    private void getMetrics(Context context) {
+        context.contentType(Metrics.CONTENT_TYPE).result(Metrics.scrape());
+    }
+
     /**
      * This is an example handler for an example endpoint.
      * @param context The Javalin Context object manages information about both the HTTP request and response.
      */
     private void register(Context context) throws Exception {
-        logger.info("Received new account registration request.");
-        try {
-            ObjectMapper om = new ObjectMapper();
-            Account account = om.readValue(context.body(), Account.class);
-            Account registered = this.socialMediaService.registerAccount(account);
-            context
-                .result(om.writeValueAsString(registered))
-                .status(200);
-        } catch (AccountRegistrationException e) {
-            logger.error("Account registration failed!", e);
-            context.status(400);
-        }
+        logger.debug("Received new account registration request.");
+        Account account = Json.ACCOUNT_READER.readValue(context.bodyAsBytes());
+        context.future(() -> this.asyncService.registerAccount(account)
+            .thenAccept(registered -> context.result(toJson(Json.ACCOUNT_WRITER, registered)).status(200)));
     }
 
     private void login(Context context) throws Exception {
-        logger.info("Received new login request.");
-        ObjectMapper om = new ObjectMapper();
-        Account account = om.readValue(context.body(), Account.class);
-        Account loggedIn = this.socialMediaService.login(account);
-        if (loggedIn == null) context.status(401);
-        else {
-            context
-                .result(om.writeValueAsString(loggedIn))
-                .status(200);
+        logger.debug("Received new login request.");
+        Account account = Json.ACCOUNT_READER.readValue(context.bodyAsBytes());
+        context.future(() -> this.asyncService.login(account).thenAccept(loggedIn -> {
+            if (loggedIn == null) context.status(401);
+            else context.header(TOKEN_HEADER, this.sessionTokens.issue(loggedIn.getAccount_id()))
+                .result(toJson(Json.ACCOUNT_WRITER, loggedIn)).status(200);
+        }));
+    }
+
+    /**
+     * Reads the account from the `Authorization: Bearer <token>` header, without touching the database.
+     * @return the authenticated account_id, or ISocialMediaDAO.ANY_ACCOUNT if no token was sent and none is required
+     * @throws AuthenticationException if the token is missing but required, or is invalid or expired
+     */
+    private int authenticate(Context context) throws AuthenticationException {
+        String header = context.header("Authorization");
+        if (header == null) {
+            if (this.authRequired) throw new AuthenticationException("Missing session token");
+            return ISocialMediaDAO.ANY_ACCOUNT;
         }
+        if (!header.regionMatches(true, 0, BEARER, 0, BEARER.length())) throw new AuthenticationException("Unsupported authorization scheme");
+        int account_id = this.sessionTokens.verify(header.substring(BEARER.length()).trim());
+        if (account_id == 0) throw new AuthenticationException("Invalid or expired session token");
+        return account_id;
     }
 
+    /**
+     * A message may only be posted as the authenticated account.
+     */
     private void createMessage(Context context) throws Exception {
-        logger.info("Received new request to create a message.");
-        try {
-            ObjectMapper om = new ObjectMapper();
-            Message message = om.readValue(context.body(), Message.class);
-            Message created = this.socialMediaService.createMessage(message);
-            context
-                .result(om.writeValueAsString(created))
-                .status(200);
-        } catch (MessageException e) {
-            logger.error("An error occurred creating the message.", e);
-            context.status(400);
-        }
+        logger.debug("Received new request to create a message.");
+        int caller = authenticate(context);
+        Message message = readMessage(context);
+        if (caller != ISocialMediaDAO.ANY_ACCOUNT && message.getPosted_by() != caller)
+            throw new AuthorizationException("posted_by does not match the session token");
+        context.future(() -> this.asyncService.createMessage(message)
+            .thenAccept(created -> messageResult(context, created)));
     }
 
+    /**
+     * Answers 304 when If-None-Match holds the listing's current version. The version is in memory, so such a request
+     * does not reach the database.
+     */
     private void getAllMessages(Context context) throws Exception {
-        logger.info("Received request to get all messages.");
-        ObjectMapper om = new ObjectMapper();
-        List<Message> messages = this.socialMediaService.getAllMessages();
-        context
-            .result(om.writeValueAsString(messages))
-            .status(200);
+        logger.debug("Received request to get all messages.");
+        List<Integer> ids = parseIds(context.queryParam("ids"));
+        MessageQuery query = ids == null ? parseMessageQuery(context, null) : null;
+        String etag = listTag(this.socialMediaService.getListVersion(null), ids == null && wantsProtobuf(context));
+        if (ids == null ? listingNotModified(context, etag) : notModified(context, etag)) return;
+        if (ids != null) context.future(() -> this.asyncService.getMessages(ids)
+            .thenAccept(results -> context.result(toJson(Json.MESSAGE_RESULT_LIST_WRITER, results)).status(200)));
+        else streamMessages(context, etag, null, query);
     }
 
-    private void getMessage(Context context) throws Exception {
-        logger.info("Received request to get message with id `{}`", context.pathParam("id"));
-        ObjectMapper om = new ObjectMapper();
-        Message message = this.socialMediaService.getMessage(Integer.parseInt(context.pathParam("id")));
-        if (message != null) {
-            context
-                .result(om.writeValueAsString(message))
-                .status(200);
+    /**
+     * Creates the JSON array of messages in the body with one JDBC batch. The response holds one result per message,
+     * in order, each with the status the message would have had on its own; the response itself is a 200 as long as
+     * the batch could be processed.
+     */
+    private void createMessages(Context context) throws Exception {
+        logger.debug("Received new request to create a batch of messages.");
+        int caller = authenticate(context);
+        List<Message> messages = Json.MESSAGE_LIST_READER.readValue(context.bodyAsBytes());
+        context.future(() -> this.asyncService.createMessages(messages, caller)
+            .thenAccept(results -> context.result(toJson(Json.MESSAGE_RESULT_LIST_WRITER, results)).status(200)));
+    }
+
+    /**
+     * Deletes the messages whose ids are given as a JSON array in the body, with one statement. The response holds
+     * one result per id, in order.
+     */
+    private void deleteMessages(Context context) throws Exception {
+        logger.debug("Received request to delete a batch of messages.");
+        int caller = authenticate(context);
+        List<Integer> ids = Json.ID_LIST_READER.readValue(context.bodyAsBytes());
+        context.future(() -> this.asyncService.deleteMessages(ids, caller)
+            .thenAccept(results -> context.result(toJson(Json.MESSAGE_RESULT_LIST_WRITER, results)).status(200)));
+    }
+
+    /**
+     * @param ids a comma-separated list of message ids, e.g. 1,2,3
+     * @return the ids, or null if the parameter is absent
+     * @throws MessageException if an id is not a number
+     */
+    private static List<Integer> parseIds(String ids) throws MessageException {
+        if (ids == null) return null;
+        List<Integer> parsed = new ArrayList<>();
+        try {
+            for (String id : ids.split(",")) if (!id.isBlank()) parsed.add(Integer.parseInt(id.trim()));
+        } catch (NumberFormatException e) {
+            throw new MessageException("Invalid message ids: " + e.getMessage());
         }
+        return parsed;
+    }
+
+    /**
+     * Answers 304 when If-None-Match holds the message's current version, without reading or serializing the
+     * message. The version is read before the message, so the ETag is never newer than the body it is sent with.
+     */
+    private void getMessage(Context context) throws Exception {
+        logger.debug("Received request to get message with id `{}`", context.pathParam("id"));
+        int message_id = Integer.parseInt(context.pathParam("id"));
+        context.future(() -> this.asyncService.getMessageVersion(message_id).thenCompose(version -> {
+            if (version == 0) return CompletableFuture.completedFuture(null);
+            if (notModified(context, messageTag(message_id, version, wantsProtobuf(context)))) return CompletableFuture.completedFuture(null);
+            return this.asyncService.getMessage(message_id).thenAccept(message -> {
+                if (message != null) messageResult(context, message);
+            });
+        }));
     }
 
     private void getMessagesByAccount(Context context) throws Exception {
-        logger.info("Received request to get messages from account with id `{}`", context.pathParam("id"));
-        ObjectMapper om = new ObjectMapper();
-        List<Message> messages = this.socialMediaService.getAllMessagesFromPoster(Integer.parseInt(context.pathParam("id")));
-        context
-            .result(om.writeValueAsString(messages))
-            .status(200);
+        logger.debug("Received request to get messages from account with id `{}`", context.pathParam("id"));
+        int posted_by = Integer.parseInt(context.pathParam("id"));
+        MessageQuery query = parseMessageQuery(context, posted_by);
+        String etag = listTag(this.socialMediaService.getListVersion(posted_by), wantsProtobuf(context));
+        if (listingNotModified(context, etag)) return;
+        streamMessages(context, etag, posted_by, query);
+    }
+
+    /**
+     * The protobuf and JSON bodies of the same version are different representations and get different tags.
+     */
+    private static String messageTag(int message_id, int version, boolean protobuf) {
+        return "\"m" + message_id + "." + version + (protobuf ? "p" : "") + "\"";
+    }
+
+    private static String listTag(long version, boolean protobuf) {
+        return "\"l" + Long.toHexString(version) + (protobuf ? "p" : "") + "\"";
+    }
+
+    /**
+     * Sets the ETag of the response and, if the request's If-None-Match already holds it, answers 304 Not Modified.
+     * Clients are asked to revalidate on every use, so they never show a stale message, and to keep the JSON and
+     * protobuf bodies apart.
+     * @return true if the response is a 304 and the handler should not produce a body
+     */
+    private static boolean notModified(Context context, String etag) {
+        context.header("ETag", etag).header("Cache-Control", "no-cache").header("Vary", "Accept, Accept-Encoding");
+        String ifNoneMatch = context.header("If-None-Match");
+        if (ifNoneMatch == null) return false;
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.startsWith("W/")) candidate = candidate.substring(2);
+            if (candidate.equals("*") || candidate.equals(etag)) {
+                context.status(304);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Like {@link #notModified(Context, String)} for a listing that {@link #streamMessages} may send gzipped, under
+     * the ETag {@link CompressedListings#gzipTag(String)}. Both tags of the current version are current; a 304 echoes
+     * the one the client holds.
+     */
+    private boolean listingNotModified(Context context, String etag) {
+        if (notModified(context, etag)) return true;
+        if (this.compressedListings == null || !CompressedListings.acceptsGzip(context)) return false;
+        if (notModified(context, CompressedListings.gzipTag(etag))) return true;
+        context.header("ETag", etag);
+        return false;
     }
 
+    /**
+     * Only the account that posted a message may change it; the check is part of the UPDATE statement.
+     */
     private void updateMessage(Context context) throws Exception {
-        logger.info("Received request to patch message with id `{}`", context.pathParam("id"));
+        logger.debug("Received request to patch message with id `{}`", context.pathParam("id"));
+        int caller = authenticate(context);
+        Message message = readMessage(context);
+        message.setMessage_id(Integer.parseInt(context.pathParam("id")));
+        context.future(() -> this.asyncService.updateMessage(message, caller)
+            .thenAccept(patchedMessage -> messageResult(context, patchedMessage)));
+    }
+
+    /**
+     * Only the account that posted a message may delete it; the check is part of the DELETE statement.
+     */
+    private void deleteMessage(Context context) throws Exception {
+        logger.debug("Received request to get message with id `{}`", context.pathParam("id"));
+        int caller = authenticate(context);
+        int message_id = Integer.parseInt(context.pathParam("id"));
+        context.future(() -> this.asyncService.deleteMessage(message_id, caller).thenAccept(message -> {
+            if (message != null) messageResult(context, message);
+        }));
+    }
+
+    /**
+     * Returns a page of the messages matching the `q` query parameter, best match first. The `limit` query parameter
+     * sets the page size and `cursor` continues from a previous page. This route is registered before messages/{id}
+     * so that "search" is not taken for a message id.
+     */
+    private void searchMessages(Context context) throws Exception {
+        logger.debug("Received request to search messages.");
+        String query = context.queryParam("q");
+        int offset = 0;
+        int limit;
         try {
-            ObjectMapper om = new ObjectMapper();
-            Message message = om.readValue(context.body(), Message.class);
-            message.setMessage_id(Integer.parseInt(context.pathParam("id")));
-            Message patchedMessage = this.socialMediaService.updateMessage(message);
-            if (patchedMessage != null) {
-                context
-                    .result(om.writeValueAsString(patchedMessage))
-                    .status(200);
+            String cursor = context.queryParam("cursor");
+            if (cursor != null) offset = PageCursor.decode(cursor).getAfter();
+            String pageSize = context.queryParam("limit");
+            limit = pageSize == null ? DEFAULT_PAGE_SIZE : Integer.parseInt(pageSize);
+        } catch (IllegalArgumentException e) {
+            throw new MessageException("Invalid pagination parameters: " + e.getMessage());
+        }
+        int from = offset;
+        context.future(() -> this.asyncService.searchMessages(query, from, limit)
+            .thenAccept(page -> context.result(toJson(Json.MESSAGE_PAGE_WRITER, page)).status(200)));
+    }
+
+    /**
+     * The account in the path is followed by the follower_id given in the body. Following an account twice is not
+     * an error.
+     */
+    private void follow(Context context) throws Exception {
+        logger.debug("Received request to follow account with id `{}`", context.pathParam("id"));
+        Follow follow = Json.FOLLOW_READER.readValue(context.bodyAsBytes());
+        follow.setFollowee_id(Integer.parseInt(context.pathParam("id")));
+        context.future(() -> this.asyncService.follow(follow)
+            .thenAccept(created -> context.result(toJson(Json.FOLLOW_WRITER, follow)).status(200)));
+    }
+
+    private void unfollow(Context context) throws Exception {
+        logger.debug("Received request to unfollow account with id `{}`", context.pathParam("id"));
+        Follow follow = Json.FOLLOW_READER.readValue(context.bodyAsBytes());
+        follow.setFollowee_id(Integer.parseInt(context.pathParam("id")));
+        context.future(() -> this.asyncService.unfollow(follow).thenAccept(deleted -> {
+            if (deleted) context.result(toJson(Json.FOLLOW_WRITER, follow)).status(200);
+        }));
+    }
+
+    /**
+     * Returns a page of the feed, newest first. The `limit` query parameter sets the page size and `cursor` continues
+     * from a previous page.
+     */
+    private void getFeed(Context context) throws Exception {
+        logger.debug("Received request to get the feed of account with id `{}`", context.pathParam("id"));
+        int account_id = Integer.parseInt(context.pathParam("id"));
+        int before = Integer.MAX_VALUE;
+        int limit;
+        try {
+            String cursor = context.queryParam("cursor");
+            if (cursor != null) before = PageCursor.decode(cursor).getAfter();
+            String pageSize = context.queryParam("limit");
+            limit = pageSize == null ? DEFAULT_PAGE_SIZE : Integer.parseInt(pageSize);
+        } catch (IllegalArgumentException e) {
+            throw new MessageException("Invalid pagination parameters: " + e.getMessage());
+        }
+        int from = before;
+        context.future(() -> this.asyncService.getFeed(account_id, from, limit)
+            .thenAccept(page -> context.result(toJson(Json.MESSAGE_PAGE_WRITER, page)).status(200)));
+    }
+
+    /**
+     * @return true if the Accept header asks for the {@link MessageCodec} encoding
+     */
+    private static boolean wantsProtobuf(Context context) {
+        String accept = context.header("Accept");
+        return accept != null && accept.contains(MessageCodec.CONTENT_TYPE);
+    }
+
+    /**
+     * Reads a message body in JSON, or in the {@link MessageCodec} encoding if the Content-Type says so.
+     * @throws MessageException if a protobuf body is malformed
+     */
+    private static Message readMessage(Context context) throws Exception {
+        String contentType = context.contentType();
+        if (contentType == null || !contentType.startsWith(MessageCodec.CONTENT_TYPE))
+            return Json.MESSAGE_READER.readValue(context.bodyAsBytes());
+        try {
+            return MessageCodec.decode(context.bodyAsBytes());
+        } catch (IllegalArgumentException e) {
+            throw new MessageException("Invalid protobuf message: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Answers 200 with the message, in the encoding the Accept header asks for.
+     */
+    private static void messageResult(Context context, Message message) {
+        if (wantsProtobuf(context)) context.contentType(MessageCodec.CONTENT_TYPE).result(MessageCodec.encode(message));
+        else context.result(toJson(Json.MESSAGE_WRITER, message));
+        context.status(200);
+    }
+
+    /**
+     * Serializes a handler result inside a future callback, where checked exceptions cannot be thrown.
+     */
+    private static byte[] toJson(ObjectWriter writer, Object value) {
+        try {
+            return writer.writeValueAsBytes(value);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes a message listing from the database to the response body. The DAO reads the rows in chunks and hands
+     * them over once the chunk's connection is released, so a slow client holds no connection, and each row is
+     * serialized by a JsonGenerator as soon as it is handed over, so neither the whole listing nor the full JSON string
+     * is ever held in memory. Without pagination the body is a JSON array; with pagination it has the shape of a {@link MessagePage}.
+     * If the Accept header asks for protobuf, the body is a MessageList or MessagePage in the {@link MessageCodec}
+     * encoding instead. The rows are read on the JDBC executor and written on the stream executor of
+     * {@link AsyncSocialMediaService}, so a slow client never holds a JDBC thread.
+     *
+     * A client that accepts gzip is served from the {@link CompressedListings} if the listing is there; otherwise
+     * the body is gzipped as it is written, once it is large enough, and cached under the ETag.
+     * @param etag the ETag of the listing
+     * @param posted_by the account whose messages are listed, or null for all messages
+     * @param query the pagination query, or null to list every matching message
+     */
+    private void streamMessages(Context context, String etag, Integer posted_by, MessageQuery query) throws IOException {
+        boolean protobuf = wantsProtobuf(context);
+        String contentType = protobuf ? MessageCodec.CONTENT_TYPE : "application/json";
+        String key = null;
+        if (this.compressedListings != null && CompressedListings.acceptsGzip(context)) {
+            key = CompressedListings.key(context, etag);
+            if (this.compressedListings.serve(context, key, etag, contentType)) return;
+        }
+        String cacheKey = key;
+        context.future(() -> {
+            StreamWriter writer;
+            try {
+                context.contentType(contentType).status(200);
+                OutputStream out = cacheKey == null ? context.outputStream() : this.compressedListings.open(context, cacheKey, etag);
+                if (protobuf) writer = new ProtobufStreamWriter(new BufferedOutputStream(out, 8192));
+                else writer = new MessageStreamWriter(Json.MAPPER.getFactory().createGenerator(out), query != null);
+            } catch (IOException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+            return writeMessages(posted_by, query, writer);
+        });
+    }
+
+    /**
+     * @return a future completed once the whole body has been written
+     */
+    private CompletableFuture<Void> writeMessages(Integer posted_by, MessageQuery query, StreamWriter writer) {
+        if (query == null)
+            return this.asyncService.streamMessages(MessageQuery.all(posted_by), writer).thenRun(() -> writer.finish(null));
+        return this.asyncService.streamMessagesPage(query, writer).thenAccept(writer::finish);
+    }
+
+    /**
+     * Writes the rows of a streamed listing to the response body and, once they are all written, the end of it.
+     */
+    private interface StreamWriter extends MessageConsumer {
+        /**
+         * @param next the cursor of the next page, or null
+         */
+        void finish(String next);
+    }
+
+    /**
+     * Writes the rows of a streamed listing to a JsonGenerator, opening the array (or page object) before the first
+     * row and closing it in {@link #finish(String)}.
+     */
+    private static class MessageStreamWriter implements StreamWriter {
+        private final JsonGenerator generator;
+        private final boolean paged;
+
+        MessageStreamWriter(JsonGenerator generator, boolean paged) throws IOException {
+            this.generator = generator;
+            this.paged = paged;
+            if (paged) {
+                generator.writeStartObject();
+                generator.writeArrayFieldStart("messages");
+            } else {
+                generator.writeStartArray();
+            }
+        }
+
+        public void accept(Message message) throws Exception {
+            this.generator.writeObject(message);
+        }
+
+        public void finish(String next) {
+            try (JsonGenerator generator = this.generator) {
+                generator.writeEndArray();
+                if (this.paged) {
+                    generator.writeStringField("next", next);
+                    generator.writeEndObject();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
             }
-        } catch (MessageException e) {
-            logger.error("An error occurred patching the message.", e);
-            context.status(400);
         }
     }
 
-    private void deleteMessage(Context context) throws Exception {
-        logger.info("Received request to get message with id `{}`", context.pathParam("id"));
-        ObjectMapper om = new ObjectMapper();
-        Message message = this.socialMediaService.deleteMessage(Integer.parseInt(context.pathParam("id")));
-        if (message != null) {
-            context
-                .result(om.writeValueAsString(message))
-                .status(200);
+    /**
+     * Writes the rows of a streamed listing as the entries of a MessageList, or of a MessagePage with its next cursor
+     * after them. The encoding has no brackets, so there is nothing to open or close around the rows.
+     */
+    private static class ProtobufStreamWriter implements StreamWriter {
+        private final OutputStream out;
+        private ByteBuffer buffer = ByteBuffer.allocate(512);
+
+        ProtobufStreamWriter(OutputStream out) {
+            this.out = out;
+        }
+
+        public void accept(Message message) throws Exception {
+            this.buffer = MessageCodec.writeEntry(this.out, message, this.buffer);
+        }
+
+        public void finish(String next) {
+            try (OutputStream out = this.out) {
+                MessageCodec.writeNext(out, next);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Builds a keyset pagination query from the `cursor`, `after`, `limit` and `since` query parameters. A `cursor`
+     * from a previous page takes precedence over `after` and `since`.
+     * @param context the request
+     * @param posted_by the account whose messages are listed, or null for all messages
+     * @return the query, or null if the request did not ask for pagination
+     * @throws MessageException if a parameter is malformed
+     */
+    private MessageQuery parseMessageQuery(Context context, Integer posted_by) throws MessageException {
+        String cursor = context.queryParam("cursor");
+        String after = context.queryParam("after");
+        String limit = context.queryParam("limit");
+        String since = context.queryParam("since");
+        if (cursor == null && after == null && limit == null && since == null) return null;
+        try {
+            int pageSize = limit == null ? DEFAULT_PAGE_SIZE : Integer.parseInt(limit);
+            if (pageSize < 1 || pageSize > SocialMediaService.MAX_PAGE_SIZE) throw new MessageException("Page limit must be between 1 and " + SocialMediaService.MAX_PAGE_SIZE);
+            if (cursor != null) {
+                PageCursor position = PageCursor.decode(cursor);
+                return new MessageQuery(posted_by, position.getAfter(), pageSize, position.getSince());
+            }
+            return new MessageQuery(posted_by, after == null ? 0 : Integer.parseInt(after), pageSize, since == null ? null : Long.parseLong(since));
+        } catch (IllegalArgumentException e) {
+            throw new MessageException("Invalid pagination parameters: " + e.getMessage());
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,296 @@
+package DAO;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import Model.*;
+import Exception.MessageException;
+import Util.Config;
+
+/**
+ * The BatchingSocialMediaDAO decorates another ISocialMediaDAO with group commit for new messages. Instead of one
+ * autocommit INSERT per post, createMessage places the message on a bounded queue and a single writer thread
+ * flushes the queue with {@link ISocialMediaDAO#createMessages(List)}, one JDBC batch in one transaction, whenever
+ * it has collected maxBatchSize messages or the oldest queued message has waited maxDelayMillis. Each caller is
+ * released once its own row has been committed and carries its generated message_id.
+ *
+ * A caller waits at most socialmedia.writes.groupCommit.resultTimeoutMs (default 30000) for its commit. When the
+ * writer thread stops, whether on {@link #close()}, an interrupt or an Error, every message it has not flushed is
+ * failed with a RejectedExecutionException, so no caller is left waiting.
+ *
+ * Every other operation is passed straight to the delegate.
+ */
+public class BatchingSocialMediaDAO implements ISocialMediaDAO {
+
+    private static final Logger logger = LoggerFactory.getLogger(BatchingSocialMediaDAO.class);
+
+    /**
+     * A message waiting to be flushed, together with the future its caller waits on.
+     */
+    private static class PendingMessage {
+        final Message message;
+        final CompletableFuture<Message> result = new CompletableFuture<>();
+
+        PendingMessage(Message message) {
+            this.message = message;
+        }
+    }
+
+    private final ISocialMediaDAO delegate;
+    private final int maxBatchSize;
+    private final long maxDelayNanos;
+    private final long enqueueTimeoutMillis;
+    private final long resultTimeoutMillis;
+    private final BlockingQueue<PendingMessage> queue;
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder messagesFlushed = new LongAdder();
+    private final AtomicLong lastFlushSize = new AtomicLong();
+    private final AtomicLong maxFlushSize = new AtomicLong();
+    private final LongAdder rejected = new LongAdder();
+
+    public BatchingSocialMediaDAO(ISocialMediaDAO delegate) {
+        this(delegate,
+            Config.getInt("socialmedia.writes.groupCommit.maxBatch", 256),
+            Config.getLong("socialmedia.writes.groupCommit.maxDelayMs", 5),
+            Config.getInt("socialmedia.writes.groupCommit.queueCapacity", 10_000),
+            Config.getLong("socialmedia.writes.groupCommit.enqueueTimeoutMs", 1_000),
+            Config.getLong("socialmedia.writes.groupCommit.resultTimeoutMs", 30_000));
+    }
+
+    public BatchingSocialMediaDAO(ISocialMediaDAO delegate, int maxBatchSize, long maxDelayMillis, int queueCapacity, long enqueueTimeoutMillis,
+            long resultTimeoutMillis) {
+        this.delegate = delegate;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        this.enqueueTimeoutMillis = enqueueTimeoutMillis;
+        this.resultTimeoutMillis = resultTimeoutMillis;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.writer = new Thread(this::runWriter, "message-group-commit");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Queues the message for the next group commit.
+     * @return a future completed with the persisted message, or exceptionally with a MessageException if posted_by
+     * does not refer to an existing account
+     * @throws RejectedExecutionException if the queue stays full for longer than the enqueue timeout, or the writer
+     * has stopped
+     */
+    public CompletableFuture<Message> submit(Message message) throws InterruptedException {
+        PendingMessage pending = new PendingMessage(message);
+        if (!this.running || !this.queue.offer(pending, this.enqueueTimeoutMillis, TimeUnit.MILLISECONDS)) {
+            this.rejected.increment();
+            throw new RejectedExecutionException(this.running ? "Message write queue is full" : "Message writer has stopped");
+        }
+        // The writer clears running before it fails what is left in the queue, so if it is still set here the writer
+        // will see this message. Otherwise take the message back; if it is already gone, the writer has it.
+        if (!this.running && this.queue.remove(pending)) {
+            this.rejected.increment();
+            throw new RejectedExecutionException("Message writer has stopped");
+        }
+        return pending.result;
+    }
+
+    /**
+     * @throws Exception if the message was not committed within the result timeout; it may still be committed later
+     */
+    public Message createMessage(Message message) throws Exception {
+        try {
+            return submit(message).get(this.resultTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            throw (Exception) e.getCause();
+        } catch (TimeoutException e) {
+            throw new Exception("Timed out waiting for the group commit of a message", e);
+        }
+    }
+
+    private void runWriter() {
+        List<PendingMessage> batch = new ArrayList<>(this.maxBatchSize);
+        try {
+            while (this.running || !this.queue.isEmpty()) {
+                PendingMessage first = this.queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                long deadline = System.nanoTime() + this.maxDelayNanos;
+                while (batch.size() < this.maxBatchSize) {
+                    if (this.queue.drainTo(batch, this.maxBatchSize - batch.size()) > 0) continue;
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) break;
+                    PendingMessage next = this.queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) break;
+                    batch.add(next);
+                }
+                flush(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            this.running = false;
+            this.queue.drainTo(batch);
+            if (!batch.isEmpty()) logger.error("Message writer stopped with {} messages not written", batch.size());
+            RejectedExecutionException stopped = new RejectedExecutionException("Message writer has stopped");
+            for (PendingMessage pending : batch) pending.result.completeExceptionally(stopped);
+        }
+    }
+
+    private void flush(List<PendingMessage> batch) {
+        List<Message> messages = new ArrayList<>(batch.size());
+        for (PendingMessage pending : batch) messages.add(pending.message);
+        try {
+            this.delegate.createMessages(messages);
+            for (PendingMessage pending : batch) {
+                if (pending.message.getMessage_id() > 0) pending.result.complete(pending.message);
+                else pending.result.completeExceptionally(new MessageException("Invalid posted_by user account ID"));
+            }
+        } catch (Exception e) {
+            logger.error("Group commit of {} messages failed", batch.size(), e);
+            for (PendingMessage pending : batch) pending.result.completeExceptionally(e);
+        }
+        this.flushes.increment();
+        this.messagesFlushed.add(batch.size());
+        this.lastFlushSize.set(batch.size());
+        this.maxFlushSize.accumulateAndGet(batch.size(), Math::max);
+    }
+
+    /**
+     * Stops accepting messages, flushes whatever is still queued, waits for the writer thread to finish and then
+     * closes the delegate.
+     */
+    @Override
+    public void close() throws Exception {
+        this.running = false;
+        this.writer.join();
+        this.delegate.close();
+    }
+
+    /**
+     * @return the number of messages currently waiting to be flushed
+     */
+    public int getQueueDepth() {
+        return this.queue.size();
+    }
+
+    public long getFlushCount() {
+        return this.flushes.sum();
+    }
+
+    public long getMessagesFlushed() {
+        return this.messagesFlushed.sum();
+    }
+
+    public long getLastFlushSize() {
+        return this.lastFlushSize.get();
+    }
+
+    public long getMaxFlushSize() {
+        return this.maxFlushSize.get();
+    }
+
+    /**
+     * @return the number of messages refused because the queue was full
+     */
+    public long getRejectedCount() {
+        return this.rejected.sum();
+    }
+
+    public Account findAccount(String username) throws Exception {
+        return this.delegate.findAccount(username);
+    }
+
+    public Account findAccount(int id) throws Exception {
+        return this.delegate.findAccount(id);
+    }
+
+    public Account createAccount(Account account) throws Exception {
+        return this.delegate.createAccount(account);
+    }
+
+    public List<Message> createMessages(List<Message> messages) throws Exception {
+        return this.delegate.createMessages(messages);
+    }
+
+    public Message findMessage(int id) throws Exception {
+        return this.delegate.findMessage(id);
+    }
+
+    public List<Message> findMessagesByPoster(int posted_by) throws Exception {
+        return this.delegate.findMessagesByPoster(posted_by);
+    }
+
+    public List<Message> findAllMessages() throws Exception {
+        return this.delegate.findAllMessages();
+    }
+
+    public List<Message> findMessages(MessageQuery query) throws Exception {
+        return this.delegate.findMessages(query);
+    }
+
+    public void streamMessages(MessageQuery query, MessageConsumer consumer) throws Exception {
+        this.delegate.streamMessages(query, consumer);
+    }
+
+    public Message updateMessage(Message message, int owner_id) throws Exception {
+        return this.delegate.updateMessage(message, owner_id);
+    }
+
+    public Message deleteMessage(int id, int owner_id) throws Exception {
+        return this.delegate.deleteMessage(id, owner_id);
+    }
+
+    public int findMessageVersion(int id) throws Exception {
+        return this.delegate.findMessageVersion(id);
+    }
+
+    public List<Message> findMessagesByIds(List<Integer> ids) throws Exception {
+        return this.delegate.findMessagesByIds(ids);
+    }
+
+    public List<Message> deleteMessages(List<Integer> ids, int owner_id) throws Exception {
+        return this.delegate.deleteMessages(ids, owner_id);
+    }
+
+    public List<Integer> findRecentMessageIds(List<Integer> posted_by, int before, int limit) throws Exception {
+        return this.delegate.findRecentMessageIds(posted_by, before, limit);
+    }
+
+    public boolean createFollow(int follower_id, int followee_id) throws Exception {
+        return this.delegate.createFollow(follower_id, followee_id);
+    }
+
+    public boolean deleteFollow(int follower_id, int followee_id) throws Exception {
+        return this.delegate.deleteFollow(follower_id, followee_id);
+    }
+
+    public List<Integer> findFollowers(int followee_id) throws Exception {
+        return this.delegate.findFollowers(followee_id);
+    }
+
+    public List<Integer> findFollowees(int follower_id) throws Exception {
+        return this.delegate.findFollowees(follower_id);
+    }
+
+    public boolean updatePassword(Account account, String password) throws Exception {
+        return this.delegate.updatePassword(account, password);
+    }
+
+    public List<Account> findAccountsWithPlainTextPasswords() throws Exception {
+        return this.delegate.findAccountsWithPlainTextPasswords();
+    }
+}
@@ -0,0 +1,247 @@
+package DAO;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import Model.*;
+import Util.Config;
+
+/**
+ * The CachingSocialMediaDAO decorates another ISocialMediaDAO with bounded, read-through caches of messages keyed
+ * by message_id and of accounts keyed by username, the key login and registration look accounts up by. Entries are
+ * evicted by size and by age, and every write that goes through this DAO invalidates the entry it touches, so a hot
+ * message or a frequently used account is served without a database round-trip until it changes. Accounts are not
+ * cached by id: posting checks its account inside the INSERT, so nothing on a request path looks one up by id.
+ *
+ * Loads go through Caffeine's atomic per-key computation, and invalidation waits for an in-flight load of the same
+ * key to finish, so a load that raced with an update can never put the old row back into the cache. Cached
+ * messages are copied on the way in and out because Message is mutable.
+ */
+public class CachingSocialMediaDAO implements ISocialMediaDAO {
+
+    private static final Logger logger = LoggerFactory.getLogger(CachingSocialMediaDAO.class);
+
+    private final ISocialMediaDAO delegate;
+
+    private final Cache<Integer, Message> messages;
+
+    private final Cache<String, Account> accountsByUsername;
+
+    public CachingSocialMediaDAO(ISocialMediaDAO delegate) {
+        this(delegate,
+            Config.getLong("socialmedia.cache.messages.maxSize", 10_000),
+            Duration.ofSeconds(Config.getLong("socialmedia.cache.messages.ttlSeconds", 60)),
+            Config.getLong("socialmedia.cache.accounts.maxSize", 10_000),
+            Duration.ofSeconds(Config.getLong("socialmedia.cache.accounts.ttlSeconds", 300)));
+    }
+
+    public CachingSocialMediaDAO(ISocialMediaDAO delegate, long maximumMessages, Duration messageTimeToLive,
+            long maximumAccounts, Duration accountTimeToLive) {
+        this.delegate = delegate;
+        this.messages = Caffeine.newBuilder()
+            .maximumSize(maximumMessages)
+            .expireAfterWrite(messageTimeToLive)
+            .recordStats()
+            .build();
+        this.accountsByUsername = Caffeine.newBuilder()
+            .maximumSize(maximumAccounts)
+            .expireAfterWrite(accountTimeToLive)
+            .recordStats()
+            .build();
+    }
+
+    /**
+     * @return hit, miss and eviction counts of the message cache
+     */
+    public CacheStats getMessageCacheStats() {
+        return this.messages.stats();
+    }
+
+    /**
+     * @return hit, miss and eviction counts of the account cache
+     */
+    public CacheStats getAccountCacheStats() {
+        return this.accountsByUsername.stats();
+    }
+
+    public Account findAccount(String username) throws Exception {
+        return copy(load(this.accountsByUsername, username, this.delegate::findAccount));
+    }
+
+    public Account findAccount(int id) throws Exception {
+        return this.delegate.findAccount(id);
+    }
+
+    public Account createAccount(Account account) throws Exception {
+        try {
+            Account created = this.delegate.createAccount(account);
+            if (created != null) this.accountsByUsername.put(created.getUsername(), copy(created));
+            return created;
+        } catch (Exception e) {
+            this.accountsByUsername.invalidate(account.getUsername());
+            throw e;
+        }
+    }
+
+    public Message createMessage(Message message) throws Exception {
+        Message created = this.delegate.createMessage(message);
+        if (created != null) this.messages.put(created.getMessage_id(), copy(created));
+        return created;
+    }
+
+    public List<Message> createMessages(List<Message> messages) throws Exception {
+        List<Message> created = this.delegate.createMessages(messages);
+        for (Message message : created)
+            if (message.getMessage_id() > 0) this.messages.put(message.getMessage_id(), copy(message));
+        return created;
+    }
+
+    public Message findMessage(int id) throws Exception {
+        return copy(load(this.messages, id, this.delegate::findMessage));
+    }
+
+    public List<Message> findMessagesByPoster(int posted_by) throws Exception {
+        return this.delegate.findMessagesByPoster(posted_by);
+    }
+
+    public List<Message> findAllMessages() throws Exception {
+        return this.delegate.findAllMessages();
+    }
+
+    public List<Message> findMessages(MessageQuery query) throws Exception {
+        return this.delegate.findMessages(query);
+    }
+
+    public void streamMessages(MessageQuery query, MessageConsumer consumer) throws Exception {
+        this.delegate.streamMessages(query, consumer);
+    }
+
+    public Message updateMessage(Message message, int owner_id) throws Exception {
+        try {
+            return this.delegate.updateMessage(message, owner_id);
+        } finally {
+            logger.debug("Invalidating cached message with id `{}`", message.getMessage_id());
+            this.messages.invalidate(message.getMessage_id());
+        }
+    }
+
+    public Message deleteMessage(int id, int owner_id) throws Exception {
+        try {
+            return this.delegate.deleteMessage(id, owner_id);
+        } finally {
+            logger.debug("Invalidating cached message with id `{}`", id);
+            this.messages.invalidate(id);
+        }
+    }
+
+    public int findMessageVersion(int id) throws Exception {
+        return this.delegate.findMessageVersion(id);
+    }
+
+    /**
+     * Serves the ids that are cached from the cache and reads the rest with one query to the delegate. The rows read
+     * are not added to the cache: a bulk read cannot take part in the per-key locking that keeps a concurrent update
+     * from being overwritten with the old row.
+     */
+    public List<Message> findMessagesByIds(List<Integer> ids) throws Exception {
+        Map<Integer, Message> cached = this.messages.getAllPresent(ids);
+        List<Message> found = new ArrayList<>(ids.size());
+        for (Message message : cached.values()) found.add(copy(message));
+        if (cached.size() == ids.size()) return found;
+        List<Integer> missing = new ArrayList<>(ids.size() - cached.size());
+        for (Integer id : ids) if (!cached.containsKey(id)) missing.add(id);
+        found.addAll(this.delegate.findMessagesByIds(missing));
+        return found;
+    }
+
+    public List<Message> deleteMessages(List<Integer> ids, int owner_id) throws Exception {
+        try {
+            return this.delegate.deleteMessages(ids, owner_id);
+        } finally {
+            this.messages.invalidateAll(ids);
+        }
+    }
+
+    public List<Integer> findRecentMessageIds(List<Integer> posted_by, int before, int limit) throws Exception {
+        return this.delegate.findRecentMessageIds(posted_by, before, limit);
+    }
+
+    public boolean createFollow(int follower_id, int followee_id) throws Exception {
+        return this.delegate.createFollow(follower_id, followee_id);
+    }
+
+    public boolean deleteFollow(int follower_id, int followee_id) throws Exception {
+        return this.delegate.deleteFollow(follower_id, followee_id);
+    }
+
+    public List<Integer> findFollowers(int followee_id) throws Exception {
+        return this.delegate.findFollowers(followee_id);
+    }
+
+    public List<Integer> findFollowees(int follower_id) throws Exception {
+        return this.delegate.findFollowees(follower_id);
+    }
+
+    public boolean updatePassword(Account account, String password) throws Exception {
+        try {
+            return this.delegate.updatePassword(account, password);
+        } finally {
+            this.accountsByUsername.invalidate(account.getUsername());
+        }
+    }
+
+    public List<Account> findAccountsWithPlainTextPasswords() throws Exception {
+        return this.delegate.findAccountsWithPlainTextPasswords();
+    }
+
+    /**
+     * A database lookup that may fail with a checked exception.
+     */
+    @FunctionalInterface
+    private interface Loader<K, V> {
+        V load(K key) throws Exception;
+    }
+
+    /**
+     * Returns the cached value for key, loading and caching it on a miss. A null result from the loader is not
+     * cached.
+     */
+    private static <K, V> V load(Cache<K, V> cache, K key, Loader<K, V> loader) throws Exception {
+        try {
+            return cache.get(key, k -> {
+                try {
+                    return loader.load(k);
+                } catch (Exception e) {
+                    throw new CompletionException(e);
+                }
+            });
+        } catch (CompletionException e) {
+            throw (Exception) e.getCause();
+        }
+    }
+
+    private static Account copy(Account account) {
+        if (account == null) return null;
+        return new Account(account.getAccount_id(), account.getUsername(), account.getPassword());
+    }
+
+    private static Message copy(Message message) {
+        if (message == null) return null;
+        return new Message(message.getMessage_id(), message.getPosted_by(), message.getMessage_text(), message.getTime_posted_epoch());
+    }
+
+    @Override
+    public void close() throws Exception {
+        this.delegate.close();
+    }
+}
@@ -0,0 +1,108 @@
+package DAO;
+
+import java.util.function.Supplier;
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import Util.Config;
+import Util.Metrics;
+
+/**
+ * The DAOFactory assembles the ISocialMediaDAO used by the service layer from the storage engine and the optional
+ * decorators enabled in {@link Config}:
+ *
+ * socialmedia.storage selects the storage engine: h2 (the default) for the {@link SocialMediaDAO}, memory for the
+ * {@link InMemorySocialMediaDAO}, or durable for the {@link DurableSocialMediaDAO}. socialmedia.storage.preload
+ * (default true) fills an in-process store from the H2 database: always for memory, and for durable only on a first
+ * start, when there is no log to recover from.
+ * socialmedia.metrics.enabled (default true) times every call to the storage engine with an
+ * {@link InstrumentedSocialMediaDAO}.
+ * socialmedia.writes.groupCommit.enabled (default false) routes new messages through a {@link BatchingSocialMediaDAO}.
+ * socialmedia.cache.enabled (default true, or false with in-process storage, where a cache only adds a second copy)
+ * puts a {@link CachingSocialMediaDAO} in front of everything else.
+ *
+ * The statistics of the write-ahead log, the group commit queue and the caches are exported on GET /metrics.
+ * Closing the returned DAO closes every layer, down to the storage engine.
+ */
+public final class DAOFactory {
+
+    private DAOFactory() {
+    }
+
+    public static ISocialMediaDAO create() {
+        String storage = Config.getString("socialmedia.storage", "h2").toLowerCase();
+        boolean inProcess = storage.equals("memory") || storage.equals("durable");
+        ISocialMediaDAO dao = storage.equals("memory") ? createInMemory() : storage.equals("durable") ? createDurable() : new SocialMediaDAO();
+        if (Config.getBoolean("socialmedia.metrics.enabled", true)) dao = new InstrumentedSocialMediaDAO(dao);
+        if (Config.getBoolean("socialmedia.writes.groupCommit.enabled", false)) {
+            BatchingSocialMediaDAO batching = new BatchingSocialMediaDAO(dao);
+            registerMetrics(batching);
+            dao = batching;
+        }
+        if (Config.getBoolean("socialmedia.cache.enabled", !inProcess)) {
+            CachingSocialMediaDAO caching = new CachingSocialMediaDAO(dao);
+            registerMetrics("messages", caching::getMessageCacheStats);
+            registerMetrics("accounts", caching::getAccountCacheStats);
+            dao = caching;
+        }
+        return dao;
+    }
+
+    private static InMemorySocialMediaDAO createInMemory() {
+        InMemorySocialMediaDAO dao = new InMemorySocialMediaDAO();
+        if (Config.getBoolean("socialmedia.storage.preload", true)) {
+            try {
+                dao.preload();
+            } catch (Exception e) {
+                throw new IllegalStateException("Could not preload the in-memory store", e);
+            }
+        }
+        return dao;
+    }
+
+    private static DurableSocialMediaDAO createDurable() {
+        try {
+            DurableSocialMediaDAO dao = new DurableSocialMediaDAO();
+            try {
+                if (dao.getRecoveredRecords() == 0 && Config.getBoolean("socialmedia.storage.preload", true)) dao.preload();
+            } catch (Exception e) {
+                // release the log directory, which would otherwise stay locked
+                dao.close();
+                throw e;
+            }
+            registerMetrics(dao);
+            return dao;
+        } catch (Exception e) {
+            throw new IllegalStateException("Could not open the write-ahead log", e);
+        }
+    }
+
+    private static void registerMetrics(DurableSocialMediaDAO durable) {
+        WriteAheadLog log = durable.getLog();
+        Metrics.counter("socialmedia_wal_records_total", "Records appended to the write-ahead log.", "", log::getRecordCount);
+        Metrics.counter("socialmedia_wal_bytes_total", "Bytes appended to the write-ahead log.", "", log::getAppendedBytes);
+        Metrics.counter("socialmedia_wal_syncs_total", "Fsyncs of the write-ahead log, each shared by the writers waiting on it.", "", log::getSyncCount);
+        Metrics.counter("socialmedia_wal_snapshots_total", "Snapshots written.", "", log::getSnapshotCount);
+        Metrics.gauge("socialmedia_wal_last_snapshot_seconds", "Time taken to write the latest snapshot.", "", durable::getLastSnapshotSeconds);
+        Metrics.gauge("socialmedia_wal_recovery_seconds", "Time taken to replay the snapshot and log on startup.", "", durable::getRecoverySeconds);
+        Metrics.gauge("socialmedia_wal_recovered_records", "Records replayed on startup.", "", durable::getRecoveredRecords);
+    }
+
+    private static void registerMetrics(BatchingSocialMediaDAO batching) {
+        Metrics.gauge("socialmedia_group_commit_queue_depth", "Messages waiting for the next group commit.", "", batching::getQueueDepth);
+        Metrics.gauge("socialmedia_group_commit_last_batch_size", "Messages written by the latest group commit.", "", batching::getLastFlushSize);
+        Metrics.gauge("socialmedia_group_commit_max_batch_size", "Largest number of messages written by one group commit.", "", batching::getMaxFlushSize);
+        Metrics.counter("socialmedia_group_commit_flushes_total", "Group commits performed.", "", batching::getFlushCount);
+        Metrics.counter("socialmedia_group_commit_messages_total", "Messages written by group commits.", "", batching::getMessagesFlushed);
+        Metrics.counter("socialmedia_group_commit_rejected_total", "Messages refused because the queue was full.", "", batching::getRejectedCount);
+    }
+
+    private static void registerMetrics(String cache, Supplier<CacheStats> stats) {
+        String requests = "socialmedia_cache_requests_total";
+        String help = "Cache lookups by result.";
+        Metrics.counter(requests, help, Metrics.labels("cache", cache, "result", "hit"), () -> stats.get().hitCount());
+        Metrics.counter(requests, help, Metrics.labels("cache", cache, "result", "miss"), () -> stats.get().missCount());
+        Metrics.counter("socialmedia_cache_evictions_total", "Entries evicted by size or age.", Metrics.labels("cache", cache),
+            () -> stats.get().evictionCount());
+    }
+}
@@ -0,0 +1,356 @@
+package DAO;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import Model.*;
+import Util.Config;
+
+/**
+ * The DurableSocialMediaDAO is an {@link InMemorySocialMediaDAO} made durable by a {@link WriteAheadLog} in
+ * socialmedia.wal.dir (default ./data). Each change is applied to the store and appended to the log under one lock,
+ * so the log holds the changes in the order the store made them. With socialmedia.wal.syncOnWrite (default true) the
+ * caller is then released once its records are on disk; writers arriving together share one fsync. Reads go
+ * straight to the store, so a reader may see a change shortly before it is on disk, but no writer is told it
+ * succeeded before then.
+ *
+ * Every socialmedia.wal.snapshotIntervalSeconds (default 300), if anything was written since the last snapshot, the
+ * store is written out as a snapshot and the log segments it covers are deleted, which bounds both the size of the log
+ * and the time to replay it on startup. Only the copy of the store's arrays is taken under the lock; the snapshot is
+ * written from that copy while writes go on.
+ *
+ * The log locks its directory while it is open, so a second DAO on the same directory fails to open. The DAO is
+ * closed with the rest of the DAO chain when the app stops, which writes out the last segment and releases the lock.
+ */
+public class DurableSocialMediaDAO implements ISocialMediaDAO {
+
+    private static final Logger logger = LoggerFactory.getLogger(DurableSocialMediaDAO.class);
+
+    /**
+     * A change to the store that appends its records to the log.
+     */
+    @FunctionalInterface
+    private interface Change<T> {
+        T apply() throws Exception;
+    }
+
+    private final InMemorySocialMediaDAO memory = new InMemorySocialMediaDAO();
+    private final WriteAheadLog log;
+    private final ReentrantLock writes = new ReentrantLock();
+    private final Object snapshotLock = new Object();
+    private final ScheduledExecutorService snapshots;
+
+    private final long recoveredRecords;
+    private final long recoveryNanos;
+    private volatile long lastSnapshotNanos;
+
+    /**
+     * The log position of the latest snapshot, or -1 if the log has records no snapshot covers.
+     */
+    private volatile long snapshotPosition;
+
+    /**
+     * Set once an append or fsync has failed, after which the store may hold changes the log does not.
+     */
+    private volatile IOException failure;
+
+    public DurableSocialMediaDAO() throws Exception {
+        this(Paths.get(Config.getString("socialmedia.wal.dir", "./data")),
+            Config.getInt("socialmedia.wal.segmentBytes", 64 << 20),
+            Config.getBoolean("socialmedia.wal.syncOnWrite", true),
+            Config.getLong("socialmedia.wal.snapshotIntervalSeconds", 300));
+    }
+
+    /**
+     * Opens the log in the directory and replays it into the store.
+     * @param snapshotIntervalSeconds how often to write a snapshot, or 0 to only write them on {@link #snapshot()}
+     */
+    public DurableSocialMediaDAO(Path directory, int segmentBytes, boolean syncOnWrite, long snapshotIntervalSeconds) throws Exception {
+        this.log = new WriteAheadLog(directory, segmentBytes, syncOnWrite);
+        long start = System.nanoTime();
+        this.recoveredRecords = this.log.recover(new WriteAheadLog.Visitor() {
+            public void account(Account account) {
+                memory.restoreAccount(account);
+            }
+
+            public void message(Message message, int version) {
+                memory.restoreMessage(message, version);
+            }
+
+            public void messageDeleted(int message_id) {
+                memory.restoreMessageDeleted(message_id);
+            }
+
+            public void follow(int follower_id, int followee_id, boolean following) {
+                memory.restoreFollow(follower_id, followee_id, following);
+            }
+
+            public void lastIds(int account_id, int message_id) {
+                memory.restoreLastIds(account_id, message_id);
+            }
+        });
+        this.recoveryNanos = System.nanoTime() - start;
+        this.snapshotPosition = this.log.getReplayedLogRecords() > 0 ? -1 : 0;
+        logger.info("Recovered {} records from {} in {} ms", this.recoveredRecords, directory, TimeUnit.NANOSECONDS.toMillis(this.recoveryNanos));
+        this.snapshots = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "wal-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (snapshotIntervalSeconds > 0) {
+            long delay = this.snapshotPosition < 0 ? 0 : snapshotIntervalSeconds;
+            this.snapshots.scheduleWithFixedDelay(this::snapshotIfChanged, delay, snapshotIntervalSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Replaces the store with the contents of the H2 database and writes them out as a snapshot, for a first start.
+     */
+    public void preload() throws Exception {
+        this.writes.lock();
+        try {
+            this.memory.preload();
+        } finally {
+            this.writes.unlock();
+        }
+        snapshot();
+    }
+
+    /**
+     * Writes a snapshot of the store and deletes the log segments it covers.
+     */
+    public void snapshot() throws IOException {
+        synchronized (this.snapshotLock) {
+            InMemorySocialMediaDAO.Contents contents;
+            long sequence;
+            long position;
+            this.writes.lock();
+            try {
+                contents = this.memory.contents();
+                sequence = this.log.startSegment();
+                position = this.log.getAppendedBytes();
+            } finally {
+                this.writes.unlock();
+            }
+            long start = System.nanoTime();
+            this.log.writeSnapshot(sequence, out -> {
+                out.lastIds(contents.accounts.length - 1, contents.messages.length - 1);
+                for (Account account : contents.accounts)
+                    if (account != null) out.account(account);
+                for (int id = 1; id < contents.messages.length; id++)
+                    if (contents.messages[id] != null) out.message(contents.messages[id], contents.versions[id]);
+                for (int follower_id = 1; follower_id < contents.followees.length; follower_id++)
+                    if (contents.followees[follower_id] != null)
+                        for (int followee_id : contents.followees[follower_id]) out.follow(follower_id, followee_id, true);
+            });
+            this.lastSnapshotNanos = System.nanoTime() - start;
+            this.snapshotPosition = position;
+            logger.info("Wrote snapshot {} in {} ms", sequence, TimeUnit.NANOSECONDS.toMillis(this.lastSnapshotNanos));
+        }
+    }
+
+    private void snapshotIfChanged() {
+        try {
+            if (this.log.getAppendedBytes() != this.snapshotPosition) snapshot();
+        } catch (Exception e) {
+            logger.error("Writing a snapshot failed; the log segments are kept until the next one succeeds", e);
+        }
+    }
+
+    /**
+     * Applies the change under the write lock, then waits until the records it appended are on disk.
+     */
+    private <T> T write(Change<T> change) throws Exception {
+        if (this.failure != null) throw new Exception("The write-ahead log failed earlier; no more writes are accepted", this.failure);
+        T result;
+        long position;
+        this.writes.lock();
+        try {
+            result = change.apply();
+            position = this.log.getAppendedBytes();
+        } catch (IOException e) {
+            fail(e);
+            throw e;
+        } finally {
+            this.writes.unlock();
+        }
+        try {
+            this.log.sync(position);
+        } catch (IOException e) {
+            fail(e);
+            throw e;
+        }
+        return result;
+    }
+
+    private void fail(IOException e) {
+        logger.error("The write-ahead log failed; refusing further writes", e);
+        this.failure = e;
+    }
+
+    public Account findAccount(String username) throws Exception {
+        return this.memory.findAccount(username);
+    }
+
+    public Account findAccount(int id) throws Exception {
+        return this.memory.findAccount(id);
+    }
+
+    public Account createAccount(Account account) throws Exception {
+        return write(() -> {
+            Account created = this.memory.createAccount(account);
+            this.log.appendAccount(created);
+            return created;
+        });
+    }
+
+    public boolean updatePassword(Account account, String password) throws Exception {
+        return write(() -> {
+            if (!this.memory.updatePassword(account, password)) return false;
+            this.log.appendAccount(this.memory.findAccount(account.getAccount_id()));
+            return true;
+        });
+    }
+
+    public List<Account> findAccountsWithPlainTextPasswords() throws Exception {
+        return this.memory.findAccountsWithPlainTextPasswords();
+    }
+
+    public Message createMessage(Message message) throws Exception {
+        return write(() -> {
+            this.log.appendMessage(this.memory.createMessage(message), 1);
+            return message;
+        });
+    }
+
+    public List<Message> createMessages(List<Message> messages) throws Exception {
+        return write(() -> {
+            for (Message message : this.memory.createMessages(messages))
+                if (message.getMessage_id() != 0) this.log.appendMessage(message, 1);
+            return messages;
+        });
+    }
+
+    public Message findMessage(int id) throws Exception {
+        return this.memory.findMessage(id);
+    }
+
+    public List<Message> findMessagesByPoster(int posted_by) throws Exception {
+        return this.memory.findMessagesByPoster(posted_by);
+    }
+
+    public List<Message> findAllMessages() throws Exception {
+        return this.memory.findAllMessages();
+    }
+
+    public List<Message> findMessages(MessageQuery query) throws Exception {
+        return this.memory.findMessages(query);
+    }
+
+    public void streamMessages(MessageQuery query, MessageConsumer consumer) throws Exception {
+        this.memory.streamMessages(query, consumer);
+    }
+
+    public Message updateMessage(Message message, int owner_id) throws Exception {
+        return write(() -> {
+            Message updated = this.memory.updateMessage(message, owner_id);
+            if (updated != null) this.log.appendMessage(updated, this.memory.findMessageVersion(updated.getMessage_id()));
+            return updated;
+        });
+    }
+
+    public Message deleteMessage(int id, int owner_id) throws Exception {
+        return write(() -> {
+            Message deleted = this.memory.deleteMessage(id, owner_id);
+            if (deleted != null) this.log.appendMessageDeleted(id);
+            return deleted;
+        });
+    }
+
+    public int findMessageVersion(int id) throws Exception {
+        return this.memory.findMessageVersion(id);
+    }
+
+    public List<Message> findMessagesByIds(List<Integer> ids) throws Exception {
+        return this.memory.findMessagesByIds(ids);
+    }
+
+    public List<Message> deleteMessages(List<Integer> ids, int owner_id) throws Exception {
+        return write(() -> {
+            List<Message> deleted = this.memory.deleteMessages(ids, owner_id);
+            for (Message message : deleted) this.log.appendMessageDeleted(message.getMessage_id());
+            return deleted;
+        });
+    }
+
+    public List<Integer> findRecentMessageIds(List<Integer> posted_by, int before, int limit) throws Exception {
+        return this.memory.findRecentMessageIds(posted_by, before, limit);
+    }
+
+    public boolean createFollow(int follower_id, int followee_id) throws Exception {
+        return write(() -> {
+            boolean created = this.memory.createFollow(follower_id, followee_id);
+            if (created) this.log.appendFollow(follower_id, followee_id, true);
+            return created;
+        });
+    }
+
+    public boolean deleteFollow(int follower_id, int followee_id) throws Exception {
+        return write(() -> {
+            boolean deleted = this.memory.deleteFollow(follower_id, followee_id);
+            if (deleted) this.log.appendFollow(follower_id, followee_id, false);
+            return deleted;
+        });
+    }
+
+    public List<Integer> findFollowers(int followee_id) throws Exception {
+        return this.memory.findFollowers(followee_id);
+    }
+
+    public List<Integer> findFollowees(int follower_id) throws Exception {
+        return this.memory.findFollowees(follower_id);
+    }
+
+    /**
+     * Stops taking snapshots and closes the log once everything appended is on disk.
+     */
+    @Override
+    public void close() throws Exception {
+        this.snapshots.shutdownNow();
+        this.snapshots.awaitTermination(1, TimeUnit.MINUTES);
+        this.writes.lock();
+        try {
+            this.log.close();
+        } finally {
+            this.writes.unlock();
+        }
+    }
+
+    /**
+     * @return the number of records read back from the snapshot and log on startup; 0 for a new directory
+     */
+    public long getRecoveredRecords() {
+        return this.recoveredRecords;
+    }
+
+    public double getRecoverySeconds() {
+        return this.recoveryNanos / 1e9;
+    }
+
+    public double getLastSnapshotSeconds() {
+        return this.lastSnapshotNanos / 1e9;
+    }
+
+    public WriteAheadLog getLog() {
+        return this.log;
+    }
+}
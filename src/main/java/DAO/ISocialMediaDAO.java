@@ -4,14 +4,39 @@ import Model.*;
 
 import java.util.List;
 
-public interface ISocialMediaDAO {
+public interface ISocialMediaDAO extends AutoCloseable {
+    /**
+     * The owner argument that lets updateMessage and deleteMessage act on a message posted by any account.
+     */
+    int ANY_ACCOUNT = 0;
+
     Account findAccount(String username) throws Exception;
     Account findAccount(int id) throws Exception;
     Account createAccount(Account account) throws Exception;
+    boolean updatePassword(Account account, String password) throws Exception;
+    List<Account> findAccountsWithPlainTextPasswords() throws Exception;
     Message createMessage(Message message) throws Exception;
+    List<Message> createMessages(List<Message> messages) throws Exception;
     Message findMessage(int id) throws Exception;
     List<Message> findMessagesByPoster(int posted_by) throws Exception;
     List<Message> findAllMessages() throws Exception;
-    void updateMessage(Message message) throws Exception;
-    void deleteMessage(int id) throws Exception;
+    List<Message> findMessages(MessageQuery query) throws Exception;
+    void streamMessages(MessageQuery query, MessageConsumer consumer) throws Exception;
+    Message updateMessage(Message message, int owner_id) throws Exception;
+    Message deleteMessage(int id, int owner_id) throws Exception;
+    int findMessageVersion(int id) throws Exception;
+    List<Message> findMessagesByIds(List<Integer> ids) throws Exception;
+    List<Message> deleteMessages(List<Integer> ids, int owner_id) throws Exception;
+    List<Integer> findRecentMessageIds(List<Integer> posted_by, int before, int limit) throws Exception;
+    boolean createFollow(int follower_id, int followee_id) throws Exception;
+    boolean deleteFollow(int follower_id, int followee_id) throws Exception;
+    List<Integer> findFollowers(int followee_id) throws Exception;
+    List<Integer> findFollowees(int follower_id) throws Exception;
+
+    /**
+     * Releases the threads and files held by the storage engine and its decorators. Decorators close their delegate.
+     */
+    @Override
+    default void close() throws Exception {
+    }
 }
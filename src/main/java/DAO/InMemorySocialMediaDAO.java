@@ -0,0 +1,680 @@
+package DAO;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import Model.*;
+import Exception.FollowException;
+import Exception.MessageException;
+import Util.ConnectionUtil;
+import Util.PasswordHasher;
+
+/**
+ * The InMemorySocialMediaDAO keeps accounts, messages and the follow graph on the heap instead of in H2, for
+ * cache-tier nodes and for measuring the service and controller without JDBC in the way.
+ *
+ * Ids are handed out in increasing order from 1, as H2's auto_increment columns do, so accounts and messages are
+ * kept in arrays indexed by their id rather than in maps with boxed keys. Each account also has the sorted ids of
+ * the messages it posted and of the accounts it follows and is followed by, and accounts are indexed by username.
+ * Listings walk these id arrays in order, so a page costs the same whatever the number of messages stored.
+ *
+ * Readers share a read lock; each change takes the write lock briefly. Stored objects are never handed out: every
+ * method returns copies, as the JDBC DAO returns freshly read rows. Nor are they changed once stored: a change
+ * stores a new object, so a copy of the arrays is a consistent picture of the store. Nothing is persisted here, but
+ * {@link #preload()} copies the current contents of the H2 database in, so a node can start from it, and
+ * {@link DurableSocialMediaDAO} adds a write-ahead log.
+ */
+public class InMemorySocialMediaDAO implements ISocialMediaDAO {
+
+    private static final Logger logger = LoggerFactory.getLogger(InMemorySocialMediaDAO.class);
+
+    /**
+     * Number of messages copied per read lock by streamMessages, so a slow consumer never holds the lock.
+     */
+    private static final int STREAM_CHUNK = 256;
+
+    /**
+     * A growable, sorted set of ids.
+     */
+    private static class Ids {
+        int[] values = new int[4];
+        int size;
+
+        int find(int id) {
+            return Arrays.binarySearch(this.values, 0, this.size, id);
+        }
+
+        boolean add(int id) {
+            int position = find(id);
+            if (position >= 0) return false;
+            position = -position - 1;
+            if (this.size == this.values.length) this.values = Arrays.copyOf(this.values, this.size * 2);
+            System.arraycopy(this.values, position, this.values, position + 1, this.size - position);
+            this.values[position] = id;
+            this.size++;
+            return true;
+        }
+
+        boolean remove(int id) {
+            int position = find(id);
+            if (position < 0) return false;
+            System.arraycopy(this.values, position + 1, this.values, position, this.size - position - 1);
+            this.size--;
+            return true;
+        }
+
+        List<Integer> toList() {
+            List<Integer> list = new ArrayList<>(this.size);
+            for (int i = 0; i < this.size; i++) list.add(this.values[i]);
+            return list;
+        }
+    }
+
+    private final Lock read;
+    private final Lock write;
+
+    /**
+     * Accounts by account_id; slot 0 is never used.
+     */
+    private Account[] accounts = new Account[64];
+    private int lastAccountId;
+    private final Map<String, Account> accountsByUsername = new HashMap<>();
+
+    /**
+     * Messages by message_id, and the version of each; slot 0 is never used.
+     */
+    private Message[] messages = new Message[1024];
+    private int[] versions = new int[1024];
+    private int lastMessageId;
+
+    /**
+     * By account_id: the ids of the messages the account posted, of the accounts following it and of the accounts
+     * it follows. A slot is null until first needed.
+     */
+    private Ids[] messagesByPoster = new Ids[64];
+    private Ids[] followers = new Ids[64];
+    private Ids[] followees = new Ids[64];
+
+    public InMemorySocialMediaDAO() {
+        ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        this.read = lock.readLock();
+        this.write = lock.writeLock();
+    }
+
+    /**
+     * Replaces the contents of this DAO with every account, message and follow stored in the H2 database.
+     */
+    public void preload() throws Exception {
+        logger.info("Preloading the in-memory store from the database");
+        Connection connection = ConnectionUtil.getConnection();
+        this.write.lock();
+        try {
+            clear();
+            try (PreparedStatement p = connection.prepareStatement("select * from account order by account_id;");
+                ResultSet r = p.executeQuery()) {
+                while (r.next()) putAccount(new Account(r.getInt("account_id"), r.getString("username"), r.getString("password")));
+            }
+            try (PreparedStatement p = connection.prepareStatement("select * from message order by message_id;");
+                ResultSet r = p.executeQuery()) {
+                while (r.next())
+                    putMessage(new Message(r.getInt("message_id"), r.getInt("posted_by"), r.getString("message_text"), r.getLong("time_posted_epoch")), r.getInt("version"));
+            }
+            try (PreparedStatement p = connection.prepareStatement("select * from follow;");
+                ResultSet r = p.executeQuery()) {
+                while (r.next()) putFollow(r.getInt("follower_id"), r.getInt("followee_id"));
+            }
+            logger.info("Preloaded {} accounts and {} messages", this.accountsByUsername.size(), this.lastMessageId);
+        } catch (SQLException e) {
+            logger.error("An SQL Exception occurred preloading the in-memory store", e);
+            throw new Exception(e);
+        } finally {
+            this.write.unlock();
+            connection.close();
+        }
+    }
+
+    public Account findAccount(String username) throws Exception {
+        this.read.lock();
+        try {
+            return copy(this.accountsByUsername.get(username));
+        } finally {
+            this.read.unlock();
+        }
+    }
+
+    public Account findAccount(int id) throws Exception {
+        this.read.lock();
+        try {
+            return copy(account(id));
+        } finally {
+            this.read.unlock();
+        }
+    }
+
+    /**
+     * @throws Exception if the username is taken, as the unique constraint on account.username would
+     */
+    public Account createAccount(Account account) throws Exception {
+        this.write.lock();
+        try {
+            if (this.accountsByUsername.containsKey(account.getUsername()))
+                throw new Exception("An account with username `" + account.getUsername() + "` already exists");
+            account.setAccount_id(this.lastAccountId + 1);
+            putAccount(copy(account));
+            if (logger.isDebugEnabled()) logger.debug("Account successfully created. ID: {}", account.getAccount_id());
+            return account;
+        } finally {
+            this.write.unlock();
+        }
+    }
+
+    /**
+     * Replaces the stored password of the account, but only if it is still account.getPassword().
+     * @return true if the password was replaced
+     */
+    public boolean updatePassword(Account account, String password) throws Exception {
+        this.write.lock();
+        try {
+            Account stored = account(account.getAccount_id());
+            if (stored == null || !stored.getPassword().equals(account.getPassword())) return false;
+            putAccount(new Account(stored.getAccount_id(), stored.getUsername(), password));
+            return true;
+        } finally {
+            this.write.unlock();
+        }
+    }
+
+    public List<Account> findAccountsWithPlainTextPasswords() throws Exception {
+        this.read.lock();
+        try {
+            List<Account> results = new ArrayList<>();
+            for (int id = 1; id <= this.lastAccountId; id++) {
+                Account account = this.accounts[id];
+                if (account != null && account.getPassword() != null && !PasswordHasher.isHashed(account.getPassword()))
+                    results.add(copy(account));
+            }
+            return results;
+        } finally {
+            this.read.unlock();
+        }
+    }
+
+    /**
+     * @throws MessageException if posted_by does not refer to an existing account
+     */
+    public Message createMessage(Message message) throws Exception {
+        this.write.lock();
+        try {
+            if (account(message.getPosted_by()) == null) throw new MessageException("Invalid posted_by user account ID");
+            insert(message);
+            return message;
+        } finally {
+            this.write.unlock();
+        }
+    }
+
+    /**
+     * Creates all messages under one write lock. A message whose posted_by does not refer to an existing account
+     * keeps a message_id of 0; every other message gets a new id.
+     * @return the same list of messages
+     */
+    public List<Message> createMessages(List<Message> messages) throws Exception {
+        this.write.lock();
+        try {
+            for (Message message : messages)
+                if (account(message.getPosted_by()) != null) insert(message);
+            return messages;
+        } finally {
+            this.write.unlock();
+        }
+    }
+
+    public Message findMessage(int id) throws Exception {
+        this.read.lock();
+        try {
+            return copy(message(id));
+        } finally {
+            this.read.unlock();
+        }
+    }
+
+    public List<Message> findMessagesByPoster(int posted_by) throws Exception {
+        return findMessages(MessageQuery.all(posted_by));
+    }
+
+    public List<Message> findAllMessages() throws Exception {
+        return findMessages(MessageQuery.all(null));
+    }
+
+    public List<Message> findMessages(MessageQuery query) throws Exception {
+        this.read.lock();
+        try {
+            List<Message> results = new ArrayList<>(Math.min(query.getLimit(), 1024));
+            collect(query.getPostedBy(), query.getAfter(), query.getSince(), query.getLimit(), results);
+            return results;
+        } finally {
+            this.read.unlock();
+        }
+    }
+
+    /**
+     * Copies the matching messages out in chunks of {@value #STREAM_CHUNK}, handing each chunk to the consumer after
+     * releasing the read lock, so that writes are never held up by the consumer.
+     */
+    public void streamMessages(MessageQuery query, MessageConsumer consumer) throws Exception {
+        List<Message> chunk = new ArrayList<>(STREAM_CHUNK);
+        int after = query.getAfter();
+        int remaining = query.getLimit();
+        while (remaining > 0) {
+            chunk.clear();
+            this.read.lock();
+            try {
+                collect(query.getPostedBy(), after, query.getSince(), Math.min(remaining, STREAM_CHUNK), chunk);
+            } finally {
+                this.read.unlock();
+            }
+            for (Message message : chunk) consumer.accept(message);
+            if (chunk.size() < Math.min(remaining, STREAM_CHUNK)) return;
+            remaining -= chunk.size();
+            after = chunk.get(chunk.size() - 1).getMessage_id();
+        }
+    }
+
+    /**
+     * Adds copies of up to limit messages with an id above after to results, in message_id order.
+     * @param posted_by the account whose messages are collected, or null for all messages
+     * @param since the earliest time_posted_epoch collected, or null for any
+     */
+    private void collect(Integer posted_by, int after, Long since, int limit, List<Message> results) {
+        if (posted_by == null) {
+            for (int id = Math.max(after, 0) + 1; id <= this.lastMessageId && results.size() < limit; id++)
+                collect(this.messages[id], since, results);
+            return;
+        }
+        Ids ids = ids(this.messagesByPoster, posted_by);
+        if (ids == null) return;
+        int position = ids.find(after);
+        for (int i = position >= 0 ? position + 1 : -position - 1; i < ids.size && results.size() < limit; i++)
+            collect(this.messages[ids.values[i]], since, results);
+    }
+
+    private static void collect(Message message, Long since, List<Message> results) {
+        if (message != null && (since == null || message.getTime_posted_epoch() >= since)) results.add(copy(message));
+    }
+
+    /**
+     * Updates the message text and increments the message's version.
+     * @param owner_id the account that must have posted the message, or ANY_ACCOUNT
+     * @return the updated message, or null if no message with the given id was posted by owner_id
+     */
+    public Message updateMessage(Message message, int owner_id) throws Exception {
+        this.write.lock();
+        try {
+            Message stored = owned(message(message.getMessage_id()), owner_id);
+            if (stored == null) return null;
+            Message updated = new Message(stored.getMessage_id(), stored.getPosted_by(), message.getMessage_text(), stored.getTime_posted_epoch());
+            this.messages[updated.getMessage_id()] = updated;
+            this.versions[updated.getMessage_id()]++;
+            return copy(updated);
+        } finally {
+            this.write.unlock();
+        }
+    }
+
+    /**
+     * @param owner_id the account that must have posted the message, or ANY_ACCOUNT
+     * @return the deleted message, or null if no message with the given id was posted by owner_id
+     */
+    public Message deleteMessage(int id, int owner_id) throws Exception {
+        this.write.lock();
+        try {
+            return remove(owned(message(id), owner_id));
+        } finally {
+            this.write.unlock();
+        }
+    }
+
+    /**
+     * @return the version of the message, which starts at 1 and is incremented by every update, or 0 if no message
+     * has the given id
+     */
+    public int findMessageVersion(int id) throws Exception {
+        this.read.lock();
+        try {
+            return message(id) == null ? 0 : this.versions[id];
+        } finally {
+            this.read.unlock();
+        }
+    }
+
+    /**
+     * @return the messages that exist, in no particular order
+     */
+    public List<Message> findMessagesByIds(List<Integer> ids) throws Exception {
+        this.read.lock();
+        try {
+            List<Message> results = new ArrayList<>(ids.size());
+            for (int id : ids) collect(message(id), null, results);
+            return results;
+        } finally {
+            this.read.unlock();
+        }
+    }
+
+    /**
+     * @param owner_id the account that must have posted a message for it to be deleted, or ANY_ACCOUNT
+     * @return the deleted messages, in no particular order
+     */
+    public List<Message> deleteMessages(List<Integer> ids, int owner_id) throws Exception {
+        this.write.lock();
+        try {
+            List<Message> results = new ArrayList<>(ids.size());
+            for (int id : ids) {
+                Message deleted = remove(owned(message(id), owner_id));
+                if (deleted != null) results.add(deleted);
+            }
+            return results;
+        } finally {
+            this.write.unlock();
+        }
+    }
+
+    /**
+     * Merges the id arrays of the given accounts from the top down, taking the largest remaining id each time.
+     * @param before only ids below this one are returned
+     * @return at most limit message ids, newest first
+     */
+    public List<Integer> findRecentMessageIds(List<Integer> posted_by, int before, int limit) throws Exception {
+        this.read.lock();
+        try {
+            Ids[] lists = new Ids[posted_by.size()];
+            int[] positions = new int[posted_by.size()];
+            int count = 0;
+            int[] posters = posted_by.stream().mapToInt(Integer::intValue).sorted().distinct().toArray();
+            for (int account_id : posters) {
+                Ids ids = ids(this.messagesByPoster, account_id);
+                if (ids == null) continue;
+                int position = ids.find(before);
+                lists[count] = ids;
+                positions[count++] = (position >= 0 ? position : -position - 1) - 1;
+            }
+            List<Integer> results = new ArrayList<>(Math.min(limit, 1024));
+            while (results.size() < limit) {
+                int best = -1;
+                for (int i = 0; i < count; i++)
+                    if (positions[i] >= 0 && (best < 0 || lists[i].values[positions[i]] > lists[best].values[positions[best]])) best = i;
+                if (best < 0) break;
+                results.add(lists[best].values[positions[best]--]);
+            }
+            return results;
+        } finally {
+            this.read.unlock();
+        }
+    }
+
+    /**
+     * @return true if the edge was added, false if follower_id already followed followee_id
+     * @throws FollowException if either account does not exist
+     */
+    public boolean createFollow(int follower_id, int followee_id) throws Exception {
+        this.write.lock();
+        try {
+            if (account(follower_id) == null || account(followee_id) == null)
+                throw new FollowException("Invalid follower or followee account ID");
+            return putFollow(follower_id, followee_id);
+        } finally {
+            this.write.unlock();
+        }
+    }
+
+    /**
+     * @return true if the edge existed and was removed
+     */
+    public boolean deleteFollow(int follower_id, int followee_id) throws Exception {
+        this.write.lock();
+        try {
+            return removeFollow(follower_id, followee_id);
+        } finally {
+            this.write.unlock();
+        }
+    }
+
+    public List<Integer> findFollowers(int followee_id) throws Exception {
+        return findFollowIds(this.followers, followee_id);
+    }
+
+    public List<Integer> findFollowees(int follower_id) throws Exception {
+        return findFollowIds(this.followees, follower_id);
+    }
+
+    private List<Integer> findFollowIds(Ids[] graph, int account_id) {
+        this.read.lock();
+        try {
+            Ids ids = ids(graph, account_id);
+            return ids == null ? new ArrayList<>() : ids.toList();
+        } finally {
+            this.read.unlock();
+        }
+    }
+
+    /**
+     * Everything in the store at one point in time, as taken by {@link #contents()}. The arrays run up to the highest
+     * id given out, whether or not that record still exists.
+     */
+    static final class Contents {
+        final Account[] accounts;
+        final Message[] messages;
+        final int[] versions;
+        /**
+         * By follower account_id, the followee ids; null where the account follows no one.
+         */
+        final int[][] followees;
+
+        Contents(Account[] accounts, Message[] messages, int[] versions, int[][] followees) {
+            this.accounts = accounts;
+            this.messages = messages;
+            this.versions = versions;
+            this.followees = followees;
+        }
+    }
+
+    /**
+     * Copies the store's arrays, which costs one array copy per kind of record and no copy of the records
+     * themselves, since stored records are never changed. Empty slots are null.
+     */
+    Contents contents() {
+        this.read.lock();
+        try {
+            int[][] followees = new int[this.lastAccountId + 1][];
+            for (int id = 1; id <= this.lastAccountId; id++)
+                if (this.followees[id] != null && this.followees[id].size > 0)
+                    followees[id] = Arrays.copyOf(this.followees[id].values, this.followees[id].size);
+            return new Contents(Arrays.copyOf(this.accounts, this.lastAccountId + 1), Arrays.copyOf(this.messages, this.lastMessageId + 1),
+                Arrays.copyOf(this.versions, this.lastMessageId + 1), followees);
+        } finally {
+            this.read.unlock();
+        }
+    }
+
+    /**
+     * Stores the account with its account_id, replacing any account with the same id. Used to restore a store
+     * from a log, like the other restore methods.
+     */
+    void restoreAccount(Account account) {
+        this.write.lock();
+        try {
+            putAccount(copy(account));
+        } finally {
+            this.write.unlock();
+        }
+    }
+
+    /**
+     * Stores the message with its message_id and version, replacing any message with the same id.
+     */
+    void restoreMessage(Message message, int version) {
+        this.write.lock();
+        try {
+            putMessage(copy(message), version);
+        } finally {
+            this.write.unlock();
+        }
+    }
+
+    void restoreMessageDeleted(int id) {
+        this.write.lock();
+        try {
+            remove(message(id));
+        } finally {
+            this.write.unlock();
+        }
+    }
+
+    void restoreFollow(int follower_id, int followee_id, boolean following) {
+        this.write.lock();
+        try {
+            if (following) putFollow(follower_id, followee_id);
+            else removeFollow(follower_id, followee_id);
+        } finally {
+            this.write.unlock();
+        }
+    }
+
+    /**
+     * Raises the highest account_id and message_id given out to at least the ones given, so new accounts and
+     * messages do not reuse the ids of ones that were deleted before the store was written out.
+     */
+    void restoreLastIds(int account_id, int message_id) {
+        this.write.lock();
+        try {
+            if (account_id > this.lastAccountId) {
+                growAccounts(account_id);
+                this.lastAccountId = account_id;
+            }
+            if (message_id > this.lastMessageId) {
+                growMessages(message_id);
+                this.lastMessageId = message_id;
+            }
+        } finally {
+            this.write.unlock();
+        }
+    }
+
+    // The methods below must be called with the write lock held, or the read lock for those that only read.
+
+    private void clear() {
+        Arrays.fill(this.accounts, null);
+        Arrays.fill(this.messages, null);
+        Arrays.fill(this.messagesByPoster, null);
+        Arrays.fill(this.followers, null);
+        Arrays.fill(this.followees, null);
+        this.accountsByUsername.clear();
+        this.lastAccountId = 0;
+        this.lastMessageId = 0;
+    }
+
+    private Account account(int id) {
+        return id > 0 && id <= this.lastAccountId ? this.accounts[id] : null;
+    }
+
+    private Message message(int id) {
+        return id > 0 && id <= this.lastMessageId ? this.messages[id] : null;
+    }
+
+    private static Message owned(Message message, int owner_id) {
+        return message != null && (owner_id == ANY_ACCOUNT || message.getPosted_by() == owner_id) ? message : null;
+    }
+
+    private static Ids ids(Ids[] index, int account_id) {
+        return account_id > 0 && account_id < index.length ? index[account_id] : null;
+    }
+
+    private void putAccount(Account account) {
+        int id = account.getAccount_id();
+        growAccounts(id);
+        this.accounts[id] = account;
+        this.accountsByUsername.put(account.getUsername(), account);
+        this.lastAccountId = Math.max(this.lastAccountId, id);
+    }
+
+    private void growAccounts(int id) {
+        if (id < this.accounts.length) return;
+        int capacity = Math.max(this.accounts.length * 2, id + 1);
+        this.accounts = Arrays.copyOf(this.accounts, capacity);
+        this.messagesByPoster = Arrays.copyOf(this.messagesByPoster, capacity);
+        this.followers = Arrays.copyOf(this.followers, capacity);
+        this.followees = Arrays.copyOf(this.followees, capacity);
+    }
+
+    private void growMessages(int id) {
+        if (id < this.messages.length) return;
+        int capacity = Math.max(this.messages.length * 2, id + 1);
+        this.messages = Arrays.copyOf(this.messages, capacity);
+        this.versions = Arrays.copyOf(this.versions, capacity);
+    }
+
+    /**
+     * Gives the message the next message_id and stores a copy of it.
+     */
+    private void insert(Message message) {
+        message.setMessage_id(this.lastMessageId + 1);
+        putMessage(copy(message), 1);
+    }
+
+    private void putMessage(Message message, int version) {
+        int id = message.getMessage_id();
+        growMessages(id);
+        this.messages[id] = message;
+        this.versions[id] = version;
+        this.lastMessageId = Math.max(this.lastMessageId, id);
+        int posted_by = message.getPosted_by();
+        if (this.messagesByPoster[posted_by] == null) this.messagesByPoster[posted_by] = new Ids();
+        this.messagesByPoster[posted_by].add(id);
+    }
+
+    /**
+     * @return a copy of the removed message, or null if message is null
+     */
+    private Message remove(Message message) {
+        if (message == null) return null;
+        this.messages[message.getMessage_id()] = null;
+        this.messagesByPoster[message.getPosted_by()].remove(message.getMessage_id());
+        return copy(message);
+    }
+
+    private boolean putFollow(int follower_id, int followee_id) {
+        if (this.followees[follower_id] == null) this.followees[follower_id] = new Ids();
+        if (!this.followees[follower_id].add(followee_id)) return false;
+        if (this.followers[followee_id] == null) this.followers[followee_id] = new Ids();
+        this.followers[followee_id].add(follower_id);
+        return true;
+    }
+
+    private boolean removeFollow(int follower_id, int followee_id) {
+        Ids followees = ids(this.followees, follower_id);
+        if (followees == null || !followees.remove(followee_id)) return false;
+        this.followers[followee_id].remove(follower_id);
+        return true;
+    }
+
+    private static Account copy(Account account) {
+        return account == null ? null : new Account(account.getAccount_id(), account.getUsername(), account.getPassword());
+    }
+
+    private static Message copy(Message message) {
+        return message == null ? null : new Message(message.getMessage_id(), message.getPosted_by(), message.getMessage_text(), message.getTime_posted_epoch());
+    }
+}
@@ -0,0 +1,169 @@
+package DAO;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.LongAdder;
+
+import Model.*;
+import Util.LatencyHistogram;
+import Util.Metrics;
+
+/**
+ * The InstrumentedSocialMediaDAO decorates another ISocialMediaDAO with a latency histogram and an error counter
+ * per method, exported on GET /metrics as socialmedia_dao_duration_seconds{method="..."} and
+ * socialmedia_dao_errors_total{method="..."}. The histograms are resolved once, in the constructor, so timing a
+ * call costs two System.nanoTime() reads and a lock-free record.
+ */
+public class InstrumentedSocialMediaDAO implements ISocialMediaDAO {
+
+    private final ISocialMediaDAO delegate;
+
+    private final Timer findAccountByUsername = new Timer("findAccountByUsername");
+    private final Timer findAccountById = new Timer("findAccountById");
+    private final Timer createAccount = new Timer("createAccount");
+    private final Timer createMessage = new Timer("createMessage");
+    private final Timer createMessages = new Timer("createMessages");
+    private final Timer findMessage = new Timer("findMessage");
+    private final Timer findMessagesByPoster = new Timer("findMessagesByPoster");
+    private final Timer findAllMessages = new Timer("findAllMessages");
+    private final Timer findMessages = new Timer("findMessages");
+    private final Timer streamMessages = new Timer("streamMessages");
+    private final Timer updateMessage = new Timer("updateMessage");
+    private final Timer deleteMessage = new Timer("deleteMessage");
+    private final Timer findMessageVersion = new Timer("findMessageVersion");
+    private final Timer findMessagesByIds = new Timer("findMessagesByIds");
+    private final Timer deleteMessages = new Timer("deleteMessages");
+    private final Timer findRecentMessageIds = new Timer("findRecentMessageIds");
+    private final Timer createFollow = new Timer("createFollow");
+    private final Timer deleteFollow = new Timer("deleteFollow");
+    private final Timer findFollowers = new Timer("findFollowers");
+    private final Timer findFollowees = new Timer("findFollowees");
+    private final Timer updatePassword = new Timer("updatePassword");
+    private final Timer findAccountsWithPlainTextPasswords = new Timer("findAccountsWithPlainTextPasswords");
+
+    /**
+     * The histogram and error counter of one DAO method.
+     */
+    private static class Timer {
+        final LatencyHistogram latency;
+        final LongAdder errors;
+
+        Timer(String method) {
+            String labels = Metrics.labels("method", method);
+            this.latency = Metrics.histogram("socialmedia_dao_duration_seconds", "Time spent in each DAO method.", labels);
+            this.errors = Metrics.counter("socialmedia_dao_errors_total", "DAO calls that threw an exception.", labels);
+        }
+
+        <T> T time(Callable<T> call) throws Exception {
+            long start = System.nanoTime();
+            try {
+                return call.call();
+            } catch (Exception e) {
+                this.errors.increment();
+                throw e;
+            } finally {
+                this.latency.record(System.nanoTime() - start);
+            }
+        }
+    }
+
+    public InstrumentedSocialMediaDAO(ISocialMediaDAO delegate) {
+        this.delegate = delegate;
+    }
+
+    public Account findAccount(String username) throws Exception {
+        return this.findAccountByUsername.time(() -> this.delegate.findAccount(username));
+    }
+
+    public Account findAccount(int id) throws Exception {
+        return this.findAccountById.time(() -> this.delegate.findAccount(id));
+    }
+
+    public Account createAccount(Account account) throws Exception {
+        return this.createAccount.time(() -> this.delegate.createAccount(account));
+    }
+
+    public Message createMessage(Message message) throws Exception {
+        return this.createMessage.time(() -> this.delegate.createMessage(message));
+    }
+
+    public List<Message> createMessages(List<Message> messages) throws Exception {
+        return this.createMessages.time(() -> this.delegate.createMessages(messages));
+    }
+
+    public Message findMessage(int id) throws Exception {
+        return this.findMessage.time(() -> this.delegate.findMessage(id));
+    }
+
+    public List<Message> findMessagesByPoster(int posted_by) throws Exception {
+        return this.findMessagesByPoster.time(() -> this.delegate.findMessagesByPoster(posted_by));
+    }
+
+    public List<Message> findAllMessages() throws Exception {
+        return this.findAllMessages.time(this.delegate::findAllMessages);
+    }
+
+    public List<Message> findMessages(MessageQuery query) throws Exception {
+        return this.findMessages.time(() -> this.delegate.findMessages(query));
+    }
+
+    public void streamMessages(MessageQuery query, MessageConsumer consumer) throws Exception {
+        this.streamMessages.time(() -> {
+            this.delegate.streamMessages(query, consumer);
+            return null;
+        });
+    }
+
+    public Message updateMessage(Message message, int owner_id) throws Exception {
+        return this.updateMessage.time(() -> this.delegate.updateMessage(message, owner_id));
+    }
+
+    public Message deleteMessage(int id, int owner_id) throws Exception {
+        return this.deleteMessage.time(() -> this.delegate.deleteMessage(id, owner_id));
+    }
+
+    public int findMessageVersion(int id) throws Exception {
+        return this.findMessageVersion.time(() -> this.delegate.findMessageVersion(id));
+    }
+
+    public List<Message> findMessagesByIds(List<Integer> ids) throws Exception {
+        return this.findMessagesByIds.time(() -> this.delegate.findMessagesByIds(ids));
+    }
+
+    public List<Message> deleteMessages(List<Integer> ids, int owner_id) throws Exception {
+        return this.deleteMessages.time(() -> this.delegate.deleteMessages(ids, owner_id));
+    }
+
+    public List<Integer> findRecentMessageIds(List<Integer> posted_by, int before, int limit) throws Exception {
+        return this.findRecentMessageIds.time(() -> this.delegate.findRecentMessageIds(posted_by, before, limit));
+    }
+
+    public boolean createFollow(int follower_id, int followee_id) throws Exception {
+        return this.createFollow.time(() -> this.delegate.createFollow(follower_id, followee_id));
+    }
+
+    public boolean deleteFollow(int follower_id, int followee_id) throws Exception {
+        return this.deleteFollow.time(() -> this.delegate.deleteFollow(follower_id, followee_id));
+    }
+
+    public List<Integer> findFollowers(int followee_id) throws Exception {
+        return this.findFollowers.time(() -> this.delegate.findFollowers(followee_id));
+    }
+
+    public List<Integer> findFollowees(int follower_id) throws Exception {
+        return this.findFollowees.time(() -> this.delegate.findFollowees(follower_id));
+    }
+
+    public boolean updatePassword(Account account, String password) throws Exception {
+        return this.updatePassword.time(() -> this.delegate.updatePassword(account, password));
+    }
+
+    public List<Account> findAccountsWithPlainTextPasswords() throws Exception {
+        return this.findAccountsWithPlainTextPasswords.time(this.delegate::findAccountsWithPlainTextPasswords);
+    }
+
+    @Override
+    public void close() throws Exception {
+        this.delegate.close();
+    }
+}
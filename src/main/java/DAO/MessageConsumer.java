@@ -0,0 +1,12 @@
+package DAO;
+
+import Model.Message;
+
+/**
+ * A MessageConsumer receives messages one at a time as they are read from storage, so that callers can process
+ * result sets of any size without holding them in memory.
+ */
+@FunctionalInterface
+public interface MessageConsumer {
+    void accept(Message message) throws Exception;
+}
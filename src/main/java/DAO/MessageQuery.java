@@ -0,0 +1,74 @@
+package DAO;
+
+/**
+ * A MessageQuery describes one page of a keyset-paginated message listing. Messages are always returned in
+ * ascending message_id order, starting after the message_id given by {@link #getAfter()}, so every page is an index
+ * range scan on the primary key no matter how deep into the table it is.
+ */
+public class MessageQuery {
+    /**
+     * Restricts the listing to messages posted by this account id, or null for all messages.
+     */
+    private final Integer postedBy;
+    /**
+     * Only messages with a message_id strictly greater than this value are returned.
+     */
+    private final int after;
+    /**
+     * The maximum number of messages returned.
+     */
+    private final int limit;
+    /**
+     * Only messages with a time_posted_epoch greater than or equal to this value are returned, or null for no bound.
+     */
+    private final Long since;
+
+    public MessageQuery(Integer postedBy, int after, int limit, Long since) {
+        this.postedBy = postedBy;
+        this.after = after;
+        this.limit = limit;
+        this.since = since;
+    }
+
+    public Integer getPostedBy() {
+        return postedBy;
+    }
+
+    public int getAfter() {
+        return after;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public Long getSince() {
+        return since;
+    }
+
+    /**
+     * @param postedBy the account whose messages are listed, or null for all messages
+     * @return a query for every matching message, without a page limit
+     */
+    public static MessageQuery all(Integer postedBy) {
+        return new MessageQuery(postedBy, 0, Integer.MAX_VALUE, null);
+    }
+
+    /**
+     * @param limit the new maximum number of messages
+     * @return a copy of this query with a different limit
+     */
+    public MessageQuery withLimit(int limit) {
+        return new MessageQuery(postedBy, after, limit, since);
+    }
+
+    @Override
+    public String toString() {
+        return "MessageQuery{" +
+                "postedBy=" + postedBy +
+                ", after=" + after +
+                ", limit=" + limit +
+                ", since=" + since +
+                '}';
+    }
+}
@@ -4,6 +4,7 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
 import java.sql.Statement;
 
 import java.util.List;
@@ -13,14 +14,22 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import Model.*;
+import Exception.FollowException;
+import Exception.MessageException;
 import Util.ConnectionUtil;
+import Util.PasswordHasher;
 
 public class SocialMediaDAO implements ISocialMediaDAO {
 
     private static final Logger logger = LoggerFactory.getLogger(SocialMediaDAO.class);
+
+    /**
+     * Number of rows read per connection by streamMessages.
+     */
+    private static final int STREAM_CHUNK = 1000;
     
     public Account findAccount(String username) throws Exception {
-        logger.info("Finding an account with username `{}`", username);
+        logger.debug("Finding an account with username `{}`", username);
         Connection connection = ConnectionUtil.getConnection();
         try (PreparedStatement p = connection.prepareStatement("select * from account where username = ?;")) {
             p.setString(1, username);
@@ -37,7 +46,7 @@ public class SocialMediaDAO implements ISocialMediaDAO {
     }
 
     public Account findAccount(int id) throws Exception {
-        logger.info("Finding an account with id `{}`", id);
+        if (logger.isDebugEnabled()) logger.debug("Finding an account with id `{}`", id);
         Connection connection = ConnectionUtil.getConnection();
         try (PreparedStatement p = connection.prepareStatement("select * from account where account_id = ?;")) {
             p.setInt(1, id);
@@ -54,7 +63,7 @@ public class SocialMediaDAO implements ISocialMediaDAO {
     }
 
     public Account createAccount(Account account) throws Exception {
-        logger.info("Creating an account with username {}", account.getUsername());
+        logger.debug("Creating an account with username {}", account.getUsername());
         Connection connection = ConnectionUtil.getConnection();
         try (PreparedStatement p = connection.prepareStatement("insert into account (username, password) values (?, ?);", Statement.RETURN_GENERATED_KEYS)) {
             p.setString(1, account.getUsername());
@@ -64,7 +73,7 @@ public class SocialMediaDAO implements ISocialMediaDAO {
                 if (r.next()) {
                     int accountID = r.getInt(1);
                     account.setAccount_id(accountID);
-                    logger.info("Account successfully created. ID: {}", accountID);
+                    if (logger.isDebugEnabled()) logger.debug("Account successfully created. ID: {}", accountID);
                 }
             }
             return account;
@@ -76,22 +85,72 @@ public class SocialMediaDAO implements ISocialMediaDAO {
         }
     }
 
+    /**
+     * Replaces the stored password of the account, but only if it is still account.getPassword(), so two requests
+     * rehashing the same password cannot overwrite a password that was changed in between.
+     * @return true if the password was replaced
+     */
+    public boolean updatePassword(Account account, String password) throws Exception {
+        if (logger.isDebugEnabled()) logger.debug("Updating the password of account `{}`", account.getAccount_id());
+        Connection connection = ConnectionUtil.getConnection();
+        try (PreparedStatement p = connection.prepareStatement("update account set password = ? where account_id = ? and password = ?;")) {
+            p.setString(1, password);
+            p.setInt(2, account.getAccount_id());
+            p.setString(3, account.getPassword());
+            return p.executeUpdate() > 0;
+        } catch (SQLException e) {
+            logger.error("An SQL Exception occurred updating an account password", e);
+            throw new Exception(e);
+        } finally {
+            connection.close();
+        }
+    }
+
+    /**
+     * @return the accounts whose password is not stored in the {@link PasswordHasher} format
+     */
+    public List<Account> findAccountsWithPlainTextPasswords() throws Exception {
+        logger.debug("Finding accounts with plain-text passwords");
+        Connection connection = ConnectionUtil.getConnection();
+        List<Account> accounts = new ArrayList<>();
+        try (PreparedStatement p = connection.prepareStatement("select * from account where password is not null and password not like ?;")) {
+            p.setString(1, PasswordHasher.PREFIX + "%");
+            try (ResultSet r = p.executeQuery()) {
+                while (r.next()) accounts.add(new Account(r.getInt("account_id"), r.getString("username"), r.getString("password")));
+            }
+            return accounts;
+        } catch (SQLException e) {
+            logger.error("An SQL Exception occurred retrieving accounts from database!", e);
+            throw new Exception(e);
+        } finally {
+            connection.close();
+        }
+    }
+
+    /**
+     * Persists the message with a single INSERT ... SELECT that only produces a row if the posting account exists,
+     * so the account check costs no extra query.
+     * @throws MessageException if posted_by does not refer to an existing account
+     */
     public Message createMessage(Message message) throws Exception {
-        logger.info("Persisting a new message posted by user with account id `{}`", message.getPosted_by());
+        if (logger.isDebugEnabled()) logger.debug("Persisting a new message posted by user with account id `{}`", message.getPosted_by());
         Connection connection = ConnectionUtil.getConnection();
-        try (PreparedStatement p = connection.prepareStatement("insert into message (posted_by, message_text, time_posted_epoch) values (?, ?, ?);", Statement.RETURN_GENERATED_KEYS)) {
-            p.setInt(1, message.getPosted_by());
-            p.setString(2, message.getMessage_text());
-            p.setLong(3, message.getTime_posted_epoch());
-            p.executeUpdate();
+        try (PreparedStatement p = connection.prepareStatement("insert into message (posted_by, message_text, time_posted_epoch) select account_id, ?, ? from account where account_id = ?;", Statement.RETURN_GENERATED_KEYS)) {
+            p.setString(1, message.getMessage_text());
+            p.setLong(2, message.getTime_posted_epoch());
+            p.setInt(3, message.getPosted_by());
+            if (p.executeUpdate() == 0) throw new MessageException("Invalid posted_by user account ID");
             try (ResultSet r = p.getGeneratedKeys()) {
                 if (r.next()) {
                     int messageID = r.getInt(1);
                     message.setMessage_id(messageID);
-                    logger.info("Message persisted successfully with id `{}`", messageID);
+                    if (logger.isDebugEnabled()) logger.debug("Message persisted successfully with id `{}`", messageID);
                 }
             }
             return message;
+        } catch (SQLIntegrityConstraintViolationException e) {
+            logger.debug("Posting account was removed while the message was being persisted", e);
+            throw new MessageException("Invalid posted_by user account ID");
         } catch (SQLException e) {
             logger.error("An SQL Exception occurred persisting message to database", e);
             throw new Exception(e);
@@ -100,15 +159,48 @@ public class SocialMediaDAO implements ISocialMediaDAO {
         }
     }
 
+    /**
+     * Persists all messages with one JDBC batch in a single transaction. A message whose posted_by does not refer to
+     * an existing account inserts no row and keeps a message_id of 0; every other message gets its generated id.
+     * @return the same list of messages
+     */
+    public List<Message> createMessages(List<Message> messages) throws Exception {
+        if (logger.isDebugEnabled()) logger.debug("Persisting a batch of {} messages", messages.size());
+        Connection connection = ConnectionUtil.getConnection();
+        try (PreparedStatement p = connection.prepareStatement("insert into message (posted_by, message_text, time_posted_epoch) select account_id, ?, ? from account where account_id = ?;", Statement.RETURN_GENERATED_KEYS)) {
+            connection.setAutoCommit(false);
+            for (Message message : messages) {
+                p.setString(1, message.getMessage_text());
+                p.setLong(2, message.getTime_posted_epoch());
+                p.setInt(3, message.getPosted_by());
+                p.addBatch();
+            }
+            int[] counts = p.executeBatch();
+            try (ResultSet r = p.getGeneratedKeys()) {
+                for (int i = 0; i < counts.length; i++)
+                    if (counts[i] > 0 && r.next()) messages.get(i).setMessage_id(r.getInt(1));
+            }
+            connection.commit();
+            return messages;
+        } catch (SQLException e) {
+            logger.error("An SQL Exception occurred persisting a batch of messages to database", e);
+            connection.rollback();
+            throw new Exception(e);
+        } finally {
+            connection.setAutoCommit(true);
+            connection.close();
+        }
+    }
+
     public Message findMessage(int id) throws Exception {
-        logger.info("Finding message with id `{}`", id);
+        if (logger.isDebugEnabled()) logger.debug("Finding message with id `{}`", id);
         Connection connection = ConnectionUtil.getConnection();
         try (PreparedStatement p = connection.prepareStatement("select * from message where message_id = ?;")) {
             p.setInt(1, id);
             try (ResultSet r = p.executeQuery()) {
                 if (r.next()) return new Message(r.getInt("message_id"), r.getInt("posted_by"), r.getString("message_text"), r.getLong("time_posted_epoch"));
                 else {
-                    logger.info("A message with the given ID was not found.");
+                    logger.debug("A message with the given ID was not found.");
                     return null;
                 }
             }
@@ -121,7 +213,7 @@ public class SocialMediaDAO implements ISocialMediaDAO {
     }
 
     public List<Message> findMessagesByPoster(int posted_by) throws Exception {
-        logger.info("Finding message posted by account id `{}`", posted_by);
+        if (logger.isDebugEnabled()) logger.debug("Finding message posted by account id `{}`", posted_by);
         Connection connection = ConnectionUtil.getConnection();
         List<Message> results = new ArrayList<>();
         try (PreparedStatement p = connection.prepareStatement("select * from message where posted_by = ?;")) {
@@ -140,7 +232,7 @@ public class SocialMediaDAO implements ISocialMediaDAO {
     }
 
     public List<Message> findAllMessages() throws Exception {
-        logger.info("Finding all messages");
+        logger.debug("Finding all messages");
         Connection connection = ConnectionUtil.getConnection();
         List<Message> results = new ArrayList<>();
         try (PreparedStatement p = connection.prepareStatement("select * from message;");
@@ -156,13 +248,77 @@ public class SocialMediaDAO implements ISocialMediaDAO {
         }
     }
 
-    public void updateMessage(Message message) throws Exception {
-        logger.info("Updating message with id `{}`", message.getMessage_id());
+    public List<Message> findMessages(MessageQuery query) throws Exception {
+        logger.debug("Finding messages matching {}", query);
+        Connection connection = ConnectionUtil.getConnection();
+        List<Message> results = new ArrayList<>();
+        try (PreparedStatement p = prepareMessageQuery(connection, query)) {
+            try (ResultSet r = p.executeQuery()) {
+                while (r.next())
+                    results.add(new Message(r.getInt("message_id"), r.getInt("posted_by"), r.getString("message_text"), r.getLong("time_posted_epoch")));
+            }
+            return results;
+        } catch (SQLException e) {
+            logger.error("An SQL Exception occurred finding the messages.", e);
+            throw new Exception(e);
+        } finally {
+            connection.close();
+        }
+    }
+
+    /**
+     * Reads the matching rows in keyset chunks of {@value #STREAM_CHUNK}, handing each chunk to the consumer after
+     * its connection has gone back to the pool, so a consumer writing to a slow client never holds a connection.
+     * Each chunk is its own query, so the listing is not one snapshot: a message created while it is streamed shows
+     * up if its id is past the chunks already read.
+     */
+    public void streamMessages(MessageQuery query, MessageConsumer consumer) throws Exception {
+        logger.debug("Streaming messages matching {}", query);
+        int after = query.getAfter();
+        int remaining = query.getLimit();
+        while (remaining > 0) {
+            int limit = Math.min(remaining, STREAM_CHUNK);
+            List<Message> chunk = findMessages(new MessageQuery(query.getPostedBy(), after, limit, query.getSince()));
+            for (Message message : chunk) consumer.accept(message);
+            if (chunk.size() < limit) return;
+            remaining -= chunk.size();
+            after = chunk.get(chunk.size() - 1).getMessage_id();
+        }
+    }
+
+    private PreparedStatement prepareMessageQuery(Connection connection, MessageQuery query) throws SQLException {
+        StringBuilder sql = new StringBuilder("select * from message where message_id > ?");
+        if (query.getPostedBy() != null) sql.append(" and posted_by = ?");
+        if (query.getSince() != null) sql.append(" and time_posted_epoch >= ?");
+        sql.append(" order by message_id limit ?;");
+        PreparedStatement p = connection.prepareStatement(sql.toString());
+        int i = 1;
+        p.setInt(i++, query.getAfter());
+        if (query.getPostedBy() != null) p.setInt(i++, query.getPostedBy());
+        if (query.getSince() != null) p.setLong(i++, query.getSince());
+        p.setInt(i, query.getLimit());
+        return p;
+    }
+
+    /**
+     * Updates the message text and reads the updated row back in the same statement through H2's FINAL TABLE delta
+     * table. The ownership check is part of the WHERE clause, so it costs no extra query. The message's version is
+     * incremented with the text.
+     * @param owner_id the account that must have posted the message, or ANY_ACCOUNT
+     * @return the updated message, or null if no message with the given id was posted by owner_id
+     */
+    public Message updateMessage(Message message, int owner_id) throws Exception {
+        if (logger.isDebugEnabled()) logger.debug("Updating message with id `{}`", message.getMessage_id());
         Connection c = ConnectionUtil.getConnection();
-        try (PreparedStatement p = c.prepareStatement("update message set message_text = ? where message_id = ?;")) {
+        try (PreparedStatement p = c.prepareStatement("select * from final table (update message set message_text = ?, version = version + 1 where message_id = ? and (? = 0 or posted_by = ?));")) {
             p.setString(1, message.getMessage_text());
             p.setInt(2, message.getMessage_id());
-            p.executeUpdate();
+            p.setInt(3, owner_id);
+            p.setInt(4, owner_id);
+            try (ResultSet r = p.executeQuery()) {
+                if (r.next()) return new Message(r.getInt("message_id"), r.getInt("posted_by"), r.getString("message_text"), r.getLong("time_posted_epoch"));
+                else return null;
+            }
         } catch (SQLException e) {
             logger.error("An SQL Exception occurred updating the message.", e);
             throw new Exception(e);
@@ -171,12 +327,22 @@ public class SocialMediaDAO implements ISocialMediaDAO {
         }
     }
 
-    public void deleteMessage(int id) throws Exception {
-        logger.info("Deleting message with id `{}`", id);
+    /**
+     * Deletes the message and returns the deleted row in the same statement through H2's OLD TABLE delta table.
+     * @param owner_id the account that must have posted the message, or ANY_ACCOUNT
+     * @return the deleted message, or null if no message with the given id was posted by owner_id
+     */
+    public Message deleteMessage(int id, int owner_id) throws Exception {
+        if (logger.isDebugEnabled()) logger.debug("Deleting message with id `{}`", id);
         Connection c = ConnectionUtil.getConnection();
-        try (PreparedStatement p = c.prepareStatement("delete from message where message_id = ?;")) {
+        try (PreparedStatement p = c.prepareStatement("select * from old table (delete from message where message_id = ? and (? = 0 or posted_by = ?));")) {
             p.setInt(1, id);
-            p.executeUpdate();
+            p.setInt(2, owner_id);
+            p.setInt(3, owner_id);
+            try (ResultSet r = p.executeQuery()) {
+                if (r.next()) return new Message(r.getInt("message_id"), r.getInt("posted_by"), r.getString("message_text"), r.getLong("time_posted_epoch"));
+                else return null;
+            }
         } catch (SQLException e) {
             logger.error("An SQL Exception occurred deleting the message.", e);
             throw new Exception(e);
@@ -184,4 +350,179 @@ public class SocialMediaDAO implements ISocialMediaDAO {
             c.close();
         }
     }
+
+    /**
+     * @return the version of the message, which starts at 1 and is incremented by every update, or 0 if no message
+     * has the given id
+     */
+    public int findMessageVersion(int id) throws Exception {
+        if (logger.isDebugEnabled()) logger.debug("Finding the version of message with id `{}`", id);
+        Connection c = ConnectionUtil.getConnection();
+        try (PreparedStatement p = c.prepareStatement("select version from message where message_id = ?;")) {
+            p.setInt(1, id);
+            try (ResultSet r = p.executeQuery()) {
+                return r.next() ? r.getInt(1) : 0;
+            }
+        } catch (SQLException e) {
+            logger.error("An SQL Exception occurred retrieving the message version.", e);
+            throw new Exception(e);
+        } finally {
+            c.close();
+        }
+    }
+
+    /**
+     * Reads all the given messages with one query, binding the ids as a single array parameter.
+     * @return the messages that exist, in no particular order
+     */
+    public List<Message> findMessagesByIds(List<Integer> ids) throws Exception {
+        if (logger.isDebugEnabled()) logger.debug("Finding {} messages by id", ids.size());
+        List<Message> results = new ArrayList<>(ids.size());
+        if (ids.isEmpty()) return results;
+        Connection connection = ConnectionUtil.getConnection();
+        try (PreparedStatement p = connection.prepareStatement("select * from message where message_id = any(?);")) {
+            p.setObject(1, ids.toArray(new Integer[0]));
+            try (ResultSet r = p.executeQuery()) {
+                while (r.next())
+                    results.add(new Message(r.getInt("message_id"), r.getInt("posted_by"), r.getString("message_text"), r.getLong("time_posted_epoch")));
+            }
+            return results;
+        } catch (SQLException e) {
+            logger.error("An SQL Exception occurred finding the messages.", e);
+            throw new Exception(e);
+        } finally {
+            connection.close();
+        }
+    }
+
+    /**
+     * Deletes all the given messages with one statement, binding the ids as a single array parameter, and returns
+     * the deleted rows through H2's OLD TABLE delta table.
+     * @param owner_id the account that must have posted a message for it to be deleted, or ANY_ACCOUNT
+     * @return the deleted messages, in no particular order
+     */
+    public List<Message> deleteMessages(List<Integer> ids, int owner_id) throws Exception {
+        if (logger.isDebugEnabled()) logger.debug("Deleting {} messages by id", ids.size());
+        List<Message> results = new ArrayList<>(ids.size());
+        if (ids.isEmpty()) return results;
+        Connection connection = ConnectionUtil.getConnection();
+        try (PreparedStatement p = connection.prepareStatement("select * from old table (delete from message where message_id = any(?) and (? = 0 or posted_by = ?));")) {
+            p.setObject(1, ids.toArray(new Integer[0]));
+            p.setInt(2, owner_id);
+            p.setInt(3, owner_id);
+            try (ResultSet r = p.executeQuery()) {
+                while (r.next())
+                    results.add(new Message(r.getInt("message_id"), r.getInt("posted_by"), r.getString("message_text"), r.getLong("time_posted_epoch")));
+            }
+            return results;
+        } catch (SQLException e) {
+            logger.error("An SQL Exception occurred deleting the messages.", e);
+            throw new Exception(e);
+        } finally {
+            connection.close();
+        }
+    }
+
+    /**
+     * Reads the ids of the newest messages posted by any of the given accounts, using the (posted_by, message_id)
+     * index for each poster.
+     * @param before only ids below this one are returned
+     * @return at most limit message ids, newest first
+     */
+    public List<Integer> findRecentMessageIds(List<Integer> posted_by, int before, int limit) throws Exception {
+        if (logger.isDebugEnabled()) logger.debug("Finding recent messages of {} posters before id `{}`", posted_by.size(), before);
+        List<Integer> results = new ArrayList<>();
+        if (posted_by.isEmpty()) return results;
+        Connection connection = ConnectionUtil.getConnection();
+        try (PreparedStatement p = connection.prepareStatement("select message_id from message where posted_by = any(?) and message_id < ? order by message_id desc limit ?;")) {
+            p.setObject(1, posted_by.toArray(new Integer[0]));
+            p.setInt(2, before);
+            p.setInt(3, limit);
+            try (ResultSet r = p.executeQuery()) {
+                while (r.next()) results.add(r.getInt(1));
+            }
+            return results;
+        } catch (SQLException e) {
+            logger.error("An SQL Exception occurred finding recent messages.", e);
+            throw new Exception(e);
+        } finally {
+            connection.close();
+        }
+    }
+
+    /**
+     * Adds the follow edge if both accounts exist and the edge is not there yet, in one INSERT ... SELECT.
+     * @return true if the edge was added, false if follower_id already followed followee_id
+     * @throws FollowException if either account does not exist
+     */
+    public boolean createFollow(int follower_id, int followee_id) throws Exception {
+        if (logger.isDebugEnabled()) logger.debug("Account `{}` follows account `{}`", follower_id, followee_id);
+        Connection connection = ConnectionUtil.getConnection();
+        try {
+            try (PreparedStatement p = connection.prepareStatement("insert into follow (follower_id, followee_id) select a.account_id, b.account_id from account a, account b where a.account_id = ? and b.account_id = ? and not exists (select 1 from follow where follower_id = a.account_id and followee_id = b.account_id);")) {
+                p.setInt(1, follower_id);
+                p.setInt(2, followee_id);
+                if (p.executeUpdate() > 0) return true;
+            } catch (SQLIntegrityConstraintViolationException e) {
+                // a concurrent request added the same edge, or an account was removed in the meantime
+                logger.debug("Follow edge could not be inserted", e);
+            }
+            try (PreparedStatement p = connection.prepareStatement("select count(*) from follow where follower_id = ? and followee_id = ?;")) {
+                p.setInt(1, follower_id);
+                p.setInt(2, followee_id);
+                try (ResultSet r = p.executeQuery()) {
+                    if (r.next() && r.getInt(1) > 0) return false;
+                }
+            }
+            throw new FollowException("Invalid follower or followee account ID");
+        } catch (SQLException e) {
+            logger.error("An SQL Exception occurred creating the follow.", e);
+            throw new Exception(e);
+        } finally {
+            connection.close();
+        }
+    }
+
+    /**
+     * @return true if the edge existed and was removed
+     */
+    public boolean deleteFollow(int follower_id, int followee_id) throws Exception {
+        if (logger.isDebugEnabled()) logger.debug("Account `{}` unfollows account `{}`", follower_id, followee_id);
+        Connection connection = ConnectionUtil.getConnection();
+        try (PreparedStatement p = connection.prepareStatement("delete from follow where follower_id = ? and followee_id = ?;")) {
+            p.setInt(1, follower_id);
+            p.setInt(2, followee_id);
+            return p.executeUpdate() > 0;
+        } catch (SQLException e) {
+            logger.error("An SQL Exception occurred deleting the follow.", e);
+            throw new Exception(e);
+        } finally {
+            connection.close();
+        }
+    }
+
+    public List<Integer> findFollowers(int followee_id) throws Exception {
+        return findFollowIds("select follower_id from follow where followee_id = ?;", followee_id);
+    }
+
+    public List<Integer> findFollowees(int follower_id) throws Exception {
+        return findFollowIds("select followee_id from follow where follower_id = ?;", follower_id);
+    }
+
+    private List<Integer> findFollowIds(String sql, int account_id) throws Exception {
+        Connection connection = ConnectionUtil.getConnection();
+        List<Integer> results = new ArrayList<>();
+        try (PreparedStatement p = connection.prepareStatement(sql)) {
+            p.setInt(1, account_id);
+            try (ResultSet r = p.executeQuery()) {
+                while (r.next()) results.add(r.getInt(1));
+            }
+            return results;
+        } catch (SQLException e) {
+            logger.error("An SQL Exception occurred reading the follow graph.", e);
+            throw new Exception(e);
+        } finally {
+            connection.close();
+        }
+    }
 }
@@ -0,0 +1,593 @@
+package DAO;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import Model.*;
+import Util.MessageCodec;
+
+/**
+ * The WriteAheadLog records every change to an in-process store in a directory of numbered files:
+ *
+ * wal-N.log segments hold the changes in the order they were made. A segment is a file of segmentBytes mapped into
+ * memory, so appending a record is a copy into the page cache and survives the process crashing; {@link #sync(long)}
+ * forces it to disk. When a record does not fit, the segment is forced and the next one is started.
+ * snapshot-N.dat holds the complete contents of the store as of the start of segment N, so on startup only the newest
+ * snapshot and the segments from N on have to be read, and everything older can be deleted. A snapshot starts with
+ * the highest account_id and message_id given out so far, which the records after it do not show once the newest
+ * messages have been deleted.
+ *
+ * Records describe the state after a change (the whole account or message, a deleted message_id, a follow edge
+ * added or removed), so reading one twice does no harm. Each is framed by its length and a CRC32 of its contents.
+ * Reading a segment stops at the first unused length or the first record that fails its checksum: a record the
+ * process was still writing when it stopped, which no caller was told had been written.
+ *
+ * Appends must come from one thread at a time, in the order the changes were applied; syncs may come from any
+ * number of threads and share fsyncs between them.
+ *
+ * While it is open, the log holds an exclusive lock on the file named lock in its directory, so a second log, in
+ * this process or another, cannot be opened on the same directory and interleave its segments with this one's.
+ */
+public class WriteAheadLog implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(WriteAheadLog.class);
+
+    /**
+     * Receives the records read back from a snapshot or segment, in the order they were written.
+     */
+    public interface Visitor {
+        void account(Account account) throws IOException;
+        void message(Message message, int version) throws IOException;
+        void messageDeleted(int message_id) throws IOException;
+        void follow(int follower_id, int followee_id, boolean following) throws IOException;
+        void lastIds(int account_id, int message_id) throws IOException;
+    }
+
+    /**
+     * Writes the contents of a store as records, for {@link #writeSnapshot(long, Snapshot)}.
+     */
+    public interface Snapshot {
+        void writeTo(Visitor out) throws IOException;
+    }
+
+    private static final int LOG_MAGIC = 0x534d574c;
+    private static final int SNAPSHOT_MAGIC = 0x534d5353;
+
+    /**
+     * A record's length and checksum, ahead of its type and payload.
+     */
+    private static final int HEADER = 8;
+
+    private static final byte ACCOUNT = 1;
+    private static final byte MESSAGE_DELETED = 3;
+    private static final byte FOLLOW = 4;
+    private static final byte UNFOLLOW = 5;
+    /**
+     * A message's version followed by the message in the {@link MessageCodec} encoding.
+     */
+    private static final byte MESSAGE = 6;
+    /**
+     * The highest account_id and message_id given out, so that ids are not given out again after a restart.
+     */
+    private static final byte LAST_IDS = 7;
+
+    private static final Pattern FILE_NAME = Pattern.compile("(wal|snapshot)-(\\d+)\\.(log|dat)");
+    private static final String LOCK_FILE = "lock";
+
+    /**
+     * Encodes one record at a time into a reusable buffer and hands it to {@link #emit()} to be framed.
+     */
+    private abstract static class Encoder implements Visitor {
+        private ByteBuffer record = ByteBuffer.allocate(1024);
+        private final CRC32 crc = new CRC32();
+
+        public final void account(Account account) throws IOException {
+            start(ACCOUNT).putInt(account.getAccount_id());
+            putString(account.getUsername());
+            putString(account.getPassword());
+            emit();
+        }
+
+        public final void message(Message message, int version) throws IOException {
+            start(MESSAGE).putInt(version);
+            reserve(MessageCodec.size(message));
+            MessageCodec.write(this.record, message);
+            emit();
+        }
+
+        public final void messageDeleted(int message_id) throws IOException {
+            start(MESSAGE_DELETED).putInt(message_id);
+            emit();
+        }
+
+        public final void follow(int follower_id, int followee_id, boolean following) throws IOException {
+            start(following ? FOLLOW : UNFOLLOW).putInt(follower_id).putInt(followee_id);
+            emit();
+        }
+
+        public final void lastIds(int account_id, int message_id) throws IOException {
+            start(LAST_IDS).putInt(account_id).putInt(message_id);
+            emit();
+        }
+
+        abstract void emit() throws IOException;
+
+        /**
+         * @return the size of the current record once framed
+         */
+        final int size() {
+            return HEADER + this.record.position();
+        }
+
+        final void writeTo(ByteBuffer out) {
+            this.record.flip();
+            this.crc.reset();
+            this.crc.update(this.record.duplicate());
+            out.putInt(this.record.remaining()).putInt((int) this.crc.getValue()).put(this.record);
+        }
+
+        private ByteBuffer start(byte type) {
+            this.record.clear();
+            return this.record.put(type);
+        }
+
+        private void putString(String value) {
+            if (value == null) {
+                this.record.putInt(-1);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            reserve(4 + bytes.length);
+            this.record.putInt(bytes.length).put(bytes);
+        }
+
+        /**
+         * Grows the record buffer if fewer than bytes remain in it.
+         */
+        private void reserve(int bytes) {
+            if (this.record.remaining() < bytes) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(this.record.capacity() * 2, this.record.position() + bytes));
+                this.record.flip();
+                this.record = larger.put(this.record);
+            }
+        }
+    }
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final boolean syncOnWrite;
+
+    private final Encoder encoder = new Encoder() {
+        void emit() throws IOException {
+            append(this);
+        }
+    };
+
+    /**
+     * The channel holding the directory's lock while the log is open. Guarded by this object's monitor.
+     */
+    private FileChannel lock;
+
+    /**
+     * The segment being appended to, and its number. Guarded by this object's monitor.
+     */
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+    private long sequence;
+    private long segmentRecords;
+
+    /**
+     * Bytes appended since the log was opened; the position {@link #sync(long)} waits for.
+     */
+    private volatile long appended;
+
+    private final ReentrantLock syncLock = new ReentrantLock();
+    private final Condition syncDone = this.syncLock.newCondition();
+    private long synced;
+    private boolean syncing;
+
+    private final LongAdder records = new LongAdder();
+    private final LongAdder syncs = new LongAdder();
+    private final LongAdder snapshots = new LongAdder();
+    private long replayedLogRecords;
+
+    /**
+     * @param segmentBytes the size of each segment file, which bounds the size of a record
+     * @param syncOnWrite whether {@link #sync(long)} forces appended records to disk. Without it, records survive the
+     * process crashing but not the machine, and are forced when a segment fills up or a snapshot is taken
+     */
+    public WriteAheadLog(Path directory, int segmentBytes, boolean syncOnWrite) {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.syncOnWrite = syncOnWrite;
+    }
+
+    /**
+     * Reads the newest snapshot and every segment written after it into the visitor, deletes what they supersede and
+     * starts a new segment for appends.
+     * @return the number of records read
+     * @throws IOException if another log is open on the directory
+     */
+    public synchronized long recover(Visitor visitor) throws IOException {
+        Files.createDirectories(this.directory);
+        lock();
+        try {
+            return replay(visitor);
+        } catch (IOException | RuntimeException e) {
+            unlock();
+            throw e;
+        }
+    }
+
+    private long replay(Visitor visitor) throws IOException {
+        TreeMap<Long, Path> logs = new TreeMap<>();
+        TreeMap<Long, Path> snapshots = new TreeMap<>();
+        try (Stream<Path> files = Files.list(this.directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Matcher name = FILE_NAME.matcher(file.getFileName().toString());
+                if (name.matches()) (name.group(1).equals("wal") ? logs : snapshots).put(Long.parseLong(name.group(2)), file);
+                else if (file.getFileName().toString().endsWith(".tmp")) Files.delete(file);
+            }
+        }
+        long first = snapshots.isEmpty() ? 0 : snapshots.lastKey();
+        long count = first == 0 ? 0 : readSnapshot(snapshots.get(first), visitor);
+        for (Path log : logs.tailMap(first, true).values()) {
+            long read = readLog(log, visitor);
+            this.replayedLogRecords += read;
+            count += read;
+        }
+        deleteBefore(first);
+        startSegment(Math.max(first, logs.isEmpty() ? 0 : logs.lastKey()) + 1);
+        return count;
+    }
+
+    private void lock() throws IOException {
+        FileChannel channel = FileChannel.open(this.directory.resolve(LOCK_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock held;
+        try {
+            held = channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            // held by another channel in this process
+            held = null;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        if (held == null) {
+            channel.close();
+            throw new IOException("The write-ahead log in " + this.directory + " is already in use");
+        }
+        this.lock = channel;
+    }
+
+    private void unlock() throws IOException {
+        if (this.lock == null) return;
+        this.lock.close();
+        this.lock = null;
+    }
+
+    public synchronized void appendAccount(Account account) throws IOException {
+        this.encoder.account(account);
+    }
+
+    public synchronized void appendMessage(Message message, int version) throws IOException {
+        this.encoder.message(message, version);
+    }
+
+    public synchronized void appendMessageDeleted(int message_id) throws IOException {
+        this.encoder.messageDeleted(message_id);
+    }
+
+    public synchronized void appendFollow(int follower_id, int followee_id, boolean following) throws IOException {
+        this.encoder.follow(follower_id, followee_id, following);
+    }
+
+    private void append(Encoder record) throws IOException {
+        if (this.segment == null) throw new IOException("The write-ahead log is closed");
+        if (record.size() > this.segment.remaining()) startSegment(this.sequence + 1);
+        if (record.size() > this.segment.remaining())
+            throw new IOException("A record of " + record.size() + " bytes does not fit in a segment of " + this.segmentBytes);
+        record.writeTo(this.segment);
+        this.appended += record.size();
+        this.segmentRecords++;
+        this.records.increment();
+    }
+
+    /**
+     * Forces the current segment and starts the next one, for a snapshot of everything appended so far.
+     * @return the number of the new segment, which is the number the snapshot must be written under
+     */
+    public synchronized long startSegment() throws IOException {
+        if (this.segment == null) throw new IOException("The write-ahead log is closed");
+        startSegment(this.sequence + 1);
+        return this.sequence;
+    }
+
+    private void startSegment(long sequence) throws IOException {
+        closeSegment();
+        this.channel = FileChannel.open(file("wal", sequence, "log"), StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.segment = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, this.segmentBytes);
+        this.segment.putInt(LOG_MAGIC);
+        this.sequence = sequence;
+        this.segmentRecords = 0;
+        syncDirectory();
+    }
+
+    private void closeSegment() throws IOException {
+        if (this.segment == null) return;
+        this.segment.force();
+        this.channel.close();
+        this.segment = null;
+    }
+
+    /**
+     * Returns once everything appended up to position is on disk. A caller that arrives while an fsync is running
+     * waits for it; if that did not cover its position, one waiting caller starts the next, so concurrent writers
+     * share each fsync instead of queuing one each.
+     * @param position a value of {@link #getAppendedBytes()} read after the caller's records were appended
+     */
+    public void sync(long position) throws IOException {
+        if (!this.syncOnWrite) return;
+        this.syncLock.lock();
+        try {
+            while (this.synced < position) {
+                if (this.syncing) {
+                    this.syncDone.awaitUninterruptibly();
+                    continue;
+                }
+                this.syncing = true;
+                this.syncLock.unlock();
+                long target = -1;
+                try {
+                    target = force();
+                } finally {
+                    this.syncLock.lock();
+                    this.syncing = false;
+                    this.synced = Math.max(this.synced, target);
+                    this.syncDone.signalAll();
+                }
+                this.syncs.increment();
+            }
+        } finally {
+            this.syncLock.unlock();
+        }
+    }
+
+    /**
+     * Forces the current segment. A segment that was replaced since was forced when it was replaced.
+     * @return the position up to which everything is now on disk
+     */
+    private long force() throws IOException {
+        MappedByteBuffer segment;
+        long target;
+        synchronized (this) {
+            if (this.segment == null) throw new IOException("The write-ahead log is closed");
+            segment = this.segment;
+            target = this.appended;
+        }
+        segment.force();
+        return target;
+    }
+
+    /**
+     * Writes a snapshot under the given segment number, then deletes the segments before it and older snapshots.
+     * The snapshot is written to a temporary file and renamed into place once it is on disk, so a crash midway
+     * leaves the previous snapshot and segments in charge.
+     */
+    public void writeSnapshot(long sequence, Snapshot contents) throws IOException {
+        Path snapshot = file("snapshot", sequence, "dat");
+        Path temporary = this.directory.resolve(snapshot.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(1 << 20);
+            buffer.putInt(SNAPSHOT_MAGIC);
+            contents.writeTo(new Encoder() {
+                void emit() throws IOException {
+                    if (size() > buffer.remaining()) drain(channel, buffer);
+                    if (size() > buffer.remaining()) throw new IOException("A record of " + size() + " bytes does not fit in the snapshot buffer");
+                    writeTo(buffer);
+                }
+            });
+            if (buffer.remaining() < 4) drain(channel, buffer);
+            buffer.putInt(0);
+            drain(channel, buffer);
+            channel.force(true);
+        }
+        Files.move(temporary, snapshot, StandardCopyOption.ATOMIC_MOVE);
+        syncDirectory();
+        deleteBefore(sequence);
+        this.snapshots.increment();
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) channel.write(buffer);
+        buffer.clear();
+    }
+
+    private long readSnapshot(Path file, Visitor visitor) throws IOException {
+        long count = 0;
+        CRC32 crc = new CRC32();
+        byte[] bytes = new byte[1024];
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != SNAPSHOT_MAGIC) throw new IOException(file + " is not a snapshot");
+            for (int length = in.readInt(); length != 0; length = in.readInt()) {
+                int checksum = in.readInt();
+                if (length < 0) throw new IOException(file + " is corrupt");
+                if (length > bytes.length) bytes = new byte[Math.max(length, bytes.length * 2)];
+                in.readFully(bytes, 0, length);
+                crc.reset();
+                crc.update(bytes, 0, length);
+                if ((int) crc.getValue() != checksum) throw new IOException(file + " is corrupt");
+                decode(ByteBuffer.wrap(bytes, 0, length), visitor);
+                count++;
+            }
+        }
+        logger.info("Read {} records from {}", count, file);
+        return count;
+    }
+
+    private long readLog(Path file, Visitor visitor) throws IOException {
+        long count = 0;
+        CRC32 crc = new CRC32();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < 4) return 0;
+            ByteBuffer log = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (log.getInt() != LOG_MAGIC) throw new IOException(file + " is not a write-ahead log segment");
+            for (ByteBuffer record = next(log, crc); record != null; record = next(log, crc)) {
+                decode(record, visitor);
+                count++;
+            }
+            if (log.remaining() >= 4 && log.getInt(log.position()) != 0)
+                logger.warn("Ignoring a record cut short at byte {} of {}", log.position(), file);
+        }
+        logger.info("Replayed {} records from {}", count, file);
+        return count;
+    }
+
+    /**
+     * Reads the record at the position of the log and moves past it.
+     * @return the record's type and payload, or null at an unused length or a record that is cut short or fails
+     * its checksum
+     */
+    private static ByteBuffer next(ByteBuffer log, CRC32 crc) {
+        if (log.remaining() < HEADER) return null;
+        int start = log.position();
+        int length = log.getInt(start);
+        if (length <= 0 || length > log.remaining() - HEADER) return null;
+        ByteBuffer record = log.duplicate();
+        record.limit(start + HEADER + length).position(start + HEADER);
+        crc.reset();
+        crc.update(record.duplicate());
+        if ((int) crc.getValue() != log.getInt(start + 4)) return null;
+        log.position(start + HEADER + length);
+        return record;
+    }
+
+    private static void decode(ByteBuffer record, Visitor visitor) throws IOException {
+        byte type = record.get();
+        switch (type) {
+            case ACCOUNT:
+                visitor.account(new Account(record.getInt(), getString(record), getString(record)));
+                break;
+            case MESSAGE:
+                int current = record.getInt();
+                visitor.message(MessageCodec.read(record), current);
+                break;
+            case MESSAGE_DELETED:
+                visitor.messageDeleted(record.getInt());
+                break;
+            case FOLLOW:
+            case UNFOLLOW:
+                visitor.follow(record.getInt(), record.getInt(), type == FOLLOW);
+                break;
+            case LAST_IDS:
+                visitor.lastIds(record.getInt(), record.getInt());
+                break;
+            default:
+                throw new IOException("Unknown write-ahead log record type " + type);
+        }
+    }
+
+    private static String getString(ByteBuffer record) {
+        int length = record.getInt();
+        if (length < 0) return null;
+        byte[] bytes = new byte[length];
+        record.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Deletes the segments and snapshots numbered below sequence.
+     */
+    private void deleteBefore(long sequence) throws IOException {
+        try (Stream<Path> files = Files.list(this.directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Matcher name = FILE_NAME.matcher(file.getFileName().toString());
+                if (name.matches() && Long.parseLong(name.group(2)) < sequence) Files.delete(file);
+            }
+        }
+    }
+
+    private Path file(String kind, long sequence, String extension) {
+        return this.directory.resolve(String.format("%s-%010d.%s", kind, sequence, extension));
+    }
+
+    /**
+     * Forces the directory itself, so that files created or renamed in it are still there after a power loss.
+     */
+    private void syncDirectory() {
+        try (FileChannel directory = FileChannel.open(this.directory, StandardOpenOption.READ)) {
+            directory.force(true);
+        } catch (IOException e) {
+            // not every platform can open a directory
+            logger.debug("Could not sync {}", this.directory, e);
+        }
+    }
+
+    /**
+     * Forces and closes the current segment, deletes it if nothing was appended to it, and releases the directory.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            if (this.segment == null) return;
+            boolean empty = this.segmentRecords == 0;
+            closeSegment();
+            if (empty) Files.delete(file("wal", this.sequence, "log"));
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * @return the number of bytes appended since the log was opened
+     */
+    public long getAppendedBytes() {
+        return this.appended;
+    }
+
+    public long getRecordCount() {
+        return this.records.sum();
+    }
+
+    /**
+     * @return the number of fsyncs performed by {@link #sync(long)}; with concurrent writers, fewer than records
+     */
+    public long getSyncCount() {
+        return this.syncs.sum();
+    }
+
+    public long getSnapshotCount() {
+        return this.snapshots.sum();
+    }
+
+    /**
+     * @return the number of records read from segments, rather than from the snapshot, by {@link #recover(Visitor)}
+     */
+    public synchronized long getReplayedLogRecords() {
+        return this.replayedLogRecords;
+    }
+}
@@ -0,0 +1,7 @@
+package Exception;
+
+public class AuthorizationException extends Exception {
+    public AuthorizationException(String message) {
+        super(message);
+    }
+}
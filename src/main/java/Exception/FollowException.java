@@ -0,0 +1,7 @@
+package Exception;
+
+public class FollowException extends Exception {
+    public FollowException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,49 @@
+package Model;
+
+import java.util.List;
+
+/**
+ * This is a class that models one page of a paginated message listing.
+ */
+public class MessagePage {
+    /**
+     * The messages on this page, in ascending message_id order (newest first for a feed).
+     */
+    public List<Message> messages;
+    /**
+     * An opaque cursor that fetches the page after this one, or null if this is the last page.
+     */
+    public String next;
+
+    public MessagePage() {
+    }
+
+    public MessagePage(List<Message> messages, String next) {
+        this.messages = messages;
+        this.next = next;
+    }
+
+    public List<Message> getMessages() {
+        return messages;
+    }
+
+    public void setMessages(List<Message> messages) {
+        this.messages = messages;
+    }
+
+    public String getNext() {
+        return next;
+    }
+
+    public void setNext(String next) {
+        this.next = next;
+    }
+
+    @Override
+    public String toString() {
+        return "MessagePage{" +
+                "messages=" + messages +
+                ", next='" + next + '\'' +
+                '}';
+    }
+}
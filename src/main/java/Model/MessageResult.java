@@ -0,0 +1,85 @@
+package Model;
+
+import java.util.Objects;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * This is a class that models the outcome of one item of a bulk message request. The status is the HTTP status the
+ * item would have had as a single request: 200 with the message, or 400, 403 or 404 with an error.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class MessageResult {
+    public int status;
+    /**
+     * The created, found or deleted message, or null if the item failed.
+     */
+    public Message message;
+    /**
+     * Why the item failed, or null if it succeeded.
+     */
+    public String error;
+
+    public MessageResult() {
+    }
+
+    public MessageResult(int status, Message message, String error) {
+        this.status = status;
+        this.message = message;
+        this.error = error;
+    }
+
+    public static MessageResult ok(Message message) {
+        return new MessageResult(200, message, null);
+    }
+
+    public static MessageResult failed(int status, String error) {
+        return new MessageResult(status, null, error);
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public void setStatus(int status) {
+        this.status = status;
+    }
+
+    public Message getMessage() {
+        return message;
+    }
+
+    public void setMessage(Message message) {
+        this.message = message;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        MessageResult result = (MessageResult) o;
+        return status == result.status && Objects.equals(message, result.message) && Objects.equals(error, result.error);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(status, message, error);
+    }
+
+    @Override
+    public String toString() {
+        return "MessageResult{" +
+                "status=" + status +
+                ", message=" + message +
+                ", error='" + error + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,298 @@
+package Service;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import Model.*;
+import DAO.MessageConsumer;
+import DAO.MessageQuery;
+import Util.Config;
+
+/**
+ * The AsyncSocialMediaService runs a synchronous ISocialMediaService on a dedicated, bounded JDBC executor. The
+ * executor has a fixed number of threads (by default as many as the connection pool has connections) and a bounded
+ * queue in front of them. When both are full, a call is refused straight away with a RejectedExecutionException
+ * rather than waiting, so overload surfaces as fast failures instead of an ever-growing backlog.
+ *
+ * Registration and login spend most of their time deriving password hashes, which is CPU work rather than database
+ * work, so they run on a second, smaller credential executor (socialmedia.auth.executor.threads, by default one per
+ * processor, with a queue of socialmedia.auth.executor.queueCapacity, default 64). A burst of logins then fills that
+ * queue and is refused, while the JDBC executor stays free for every other route.
+ *
+ * Streamed listings are read a chunk of rows at a time on the JDBC executor, and each chunk is handed to the consumer
+ * on a third, stream executor (socialmedia.stream.executor.threads, default 32, with a queue of
+ * socialmedia.stream.executor.queueCapacity, default 1000). The next chunk is only read once the consumer has taken
+ * the previous one. A consumer writing to a slow client therefore holds a stream thread while it waits, never a JDBC
+ * thread or a connection.
+ */
+public class AsyncSocialMediaService implements IAsyncSocialMediaService {
+
+    private static final Logger logger = LoggerFactory.getLogger(AsyncSocialMediaService.class);
+
+    /**
+     * The most messages a streamed listing reads from the database at a time.
+     */
+    private static final int STREAM_CHUNK = 1000;
+
+    private final ISocialMediaService socialMediaService;
+
+    private final ThreadPoolExecutor executor;
+
+    private final ThreadPoolExecutor credentialExecutor;
+
+    private final LongAdder rejected = new LongAdder();
+
+    private final LongAdder credentialRejected = new LongAdder();
+
+    private final ThreadPoolExecutor streamExecutor;
+
+    private final LongAdder streamRejected = new LongAdder();
+
+    public AsyncSocialMediaService(ISocialMediaService socialMediaService) {
+        this(socialMediaService,
+            Config.getInt("socialmedia.db.executor.threads", Config.getInt("socialmedia.db.pool.maxSize", 10)),
+            Config.getInt("socialmedia.db.executor.queueCapacity", 1_000));
+    }
+
+    public AsyncSocialMediaService(ISocialMediaService socialMediaService, int threads, int queueCapacity) {
+        this(socialMediaService, threads, queueCapacity,
+            Config.getInt("socialmedia.auth.executor.threads", Runtime.getRuntime().availableProcessors()),
+            Config.getInt("socialmedia.auth.executor.queueCapacity", 64));
+    }
+
+    public AsyncSocialMediaService(ISocialMediaService socialMediaService, int threads, int queueCapacity,
+            int credentialThreads, int credentialQueueCapacity) {
+        this(socialMediaService, threads, queueCapacity, credentialThreads, credentialQueueCapacity,
+            Config.getInt("socialmedia.stream.executor.threads", 32),
+            Config.getInt("socialmedia.stream.executor.queueCapacity", 1_000));
+    }
+
+    public AsyncSocialMediaService(ISocialMediaService socialMediaService, int threads, int queueCapacity,
+            int credentialThreads, int credentialQueueCapacity, int streamThreads, int streamQueueCapacity) {
+        this.socialMediaService = socialMediaService;
+        this.executor = newExecutor("jdbc-executor-", threads, queueCapacity);
+        this.credentialExecutor = newExecutor("credential-executor-", credentialThreads, credentialQueueCapacity);
+        this.streamExecutor = newExecutor("stream-executor-", streamThreads, streamQueueCapacity);
+    }
+
+    private static ThreadPoolExecutor newExecutor(String namePrefix, int threads, int queueCapacity) {
+        AtomicInteger count = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, namePrefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(queueCapacity), threadFactory, new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * @return the number of calls waiting for a free executor thread
+     */
+    public int getQueueDepth() {
+        return this.executor.getQueue().size();
+    }
+
+    /**
+     * @return the number of executor threads currently running a call
+     */
+    public int getActiveCount() {
+        return this.executor.getActiveCount();
+    }
+
+    /**
+     * @return the number of calls refused because the executor was saturated
+     */
+    public long getRejectedCount() {
+        return this.rejected.sum();
+    }
+
+    /**
+     * @return the number of registrations and logins waiting for a free credential executor thread
+     */
+    public int getCredentialQueueDepth() {
+        return this.credentialExecutor.getQueue().size();
+    }
+
+    /**
+     * @return the number of registrations and logins refused because the credential executor was saturated
+     */
+    public long getCredentialRejectedCount() {
+        return this.credentialRejected.sum();
+    }
+
+    /**
+     * @return the number of streamed chunks waiting for a free stream executor thread
+     */
+    public int getStreamQueueDepth() {
+        return this.streamExecutor.getQueue().size();
+    }
+
+    /**
+     * @return the number of stream executor threads currently handing a chunk to its consumer
+     */
+    public int getStreamActiveCount() {
+        return this.streamExecutor.getActiveCount();
+    }
+
+    /**
+     * @return the number of streamed chunks refused because the stream executor was saturated
+     */
+    public long getStreamRejectedCount() {
+        return this.streamRejected.sum();
+    }
+
+    /**
+     * Stops accepting calls, lets the queued ones finish for up to 30 seconds and then closes the service.
+     */
+    public void shutdown() throws Exception {
+        this.streamExecutor.shutdown();
+        this.executor.shutdown();
+        this.credentialExecutor.shutdown();
+        if (!this.streamExecutor.awaitTermination(30, TimeUnit.SECONDS) || !this.executor.awaitTermination(30, TimeUnit.SECONDS)
+                || !this.credentialExecutor.awaitTermination(30, TimeUnit.SECONDS))
+            logger.warn("Service calls were still running 30 seconds after shutdown; closing the service anyway");
+        this.socialMediaService.close();
+    }
+
+    private <T> CompletableFuture<T> submit(Callable<T> call) {
+        return submit(this.executor, this.rejected, "Database executor", call);
+    }
+
+    private <T> CompletableFuture<T> submitCredentialCheck(Callable<T> call) {
+        return submit(this.credentialExecutor, this.credentialRejected, "Credential executor", call);
+    }
+
+    private <T> CompletableFuture<T> submitStream(Callable<T> call) {
+        return submit(this.streamExecutor, this.streamRejected, "Stream executor", call);
+    }
+
+    private static <T> CompletableFuture<T> submit(ThreadPoolExecutor executor, LongAdder rejected, String name, Callable<T> call) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    future.complete(call.call());
+                } catch (Exception e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            logger.warn("{} is saturated; rejecting call", name);
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    public CompletableFuture<Account> registerAccount(Account account) {
+        return submitCredentialCheck(() -> this.socialMediaService.registerAccount(account));
+    }
+
+    public CompletableFuture<Account> login(Account account) {
+        return submitCredentialCheck(() -> this.socialMediaService.login(account));
+    }
+
+    public CompletableFuture<Message> createMessage(Message message) {
+        return submit(() -> this.socialMediaService.createMessage(message));
+    }
+
+    public CompletableFuture<List<MessageResult>> createMessages(List<Message> messages, int owner_id) {
+        return submit(() -> this.socialMediaService.createMessages(messages, owner_id));
+    }
+
+    public CompletableFuture<Message> getMessage(int message_id) {
+        return submit(() -> this.socialMediaService.getMessage(message_id));
+    }
+
+    public CompletableFuture<List<MessageResult>> getMessages(List<Integer> message_ids) {
+        return submit(() -> this.socialMediaService.getMessages(message_ids));
+    }
+
+    public CompletableFuture<Integer> getMessageVersion(int message_id) {
+        return submit(() -> this.socialMediaService.getMessageVersion(message_id));
+    }
+
+    public CompletableFuture<List<Message>> getAllMessages() {
+        return submit(this.socialMediaService::getAllMessages);
+    }
+
+    public CompletableFuture<List<Message>> getAllMessagesFromPoster(int posted_by) {
+        return submit(() -> this.socialMediaService.getAllMessagesFromPoster(posted_by));
+    }
+
+    public CompletableFuture<MessagePage> getMessagesPage(MessageQuery query) {
+        return submit(() -> this.socialMediaService.getMessagesPage(query));
+    }
+
+    /**
+     * Reads the listing in pages of at most {@value #STREAM_CHUNK} messages on the JDBC executor and hands each to the
+     * consumer on the stream executor, reading the next page once the consumer has taken the last one.
+     */
+    public CompletableFuture<Void> streamMessages(MessageQuery query, MessageConsumer consumer) {
+        int chunk = Math.min(STREAM_CHUNK, SocialMediaService.MAX_PAGE_SIZE);
+        return submit(() -> this.socialMediaService.getMessagesPage(query.withLimit(Math.min(query.getLimit(), chunk))))
+            .thenCompose(page -> submitStream(() -> consume(page, consumer)))
+            .thenCompose(page -> {
+                List<Message> messages = page.getMessages();
+                int remaining = query.getLimit() - messages.size();
+                if (page.getNext() == null || remaining <= 0) return CompletableFuture.completedFuture(null);
+                int after = messages.get(messages.size() - 1).getMessage_id();
+                return streamMessages(new MessageQuery(query.getPostedBy(), after, remaining, query.getSince()), consumer);
+            });
+    }
+
+    /**
+     * Reads the page on the JDBC executor and hands it to the consumer on the stream executor.
+     */
+    public CompletableFuture<String> streamMessagesPage(MessageQuery query, MessageConsumer consumer) {
+        return submit(() -> this.socialMediaService.getMessagesPage(query))
+            .thenCompose(page -> submitStream(() -> consume(page, consumer).getNext()));
+    }
+
+    private static MessagePage consume(MessagePage page, MessageConsumer consumer) throws Exception {
+        for (Message message : page.getMessages()) consumer.accept(message);
+        return page;
+    }
+
+    public CompletableFuture<Message> updateMessage(Message message, int owner_id) {
+        return submit(() -> this.socialMediaService.updateMessage(message, owner_id));
+    }
+
+    public CompletableFuture<Message> deleteMessage(int message_id, int owner_id) {
+        return submit(() -> this.socialMediaService.deleteMessage(message_id, owner_id));
+    }
+
+    public CompletableFuture<List<MessageResult>> deleteMessages(List<Integer> message_ids, int owner_id) {
+        return submit(() -> this.socialMediaService.deleteMessages(message_ids, owner_id));
+    }
+
+    public CompletableFuture<Boolean> follow(Follow follow) {
+        return submit(() -> this.socialMediaService.follow(follow));
+    }
+
+    public CompletableFuture<Boolean> unfollow(Follow follow) {
+        return submit(() -> this.socialMediaService.unfollow(follow));
+    }
+
+    public CompletableFuture<MessagePage> getFeed(int account_id, int before, int limit) {
+        return submit(() -> this.socialMediaService.getFeed(account_id, before, limit));
+    }
+
+    public CompletableFuture<MessagePage> searchMessages(String query, int offset, int limit) {
+        return submit(() -> this.socialMediaService.searchMessages(query, offset, limit));
+    }
+}
@@ -0,0 +1,132 @@
+package Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import Util.Config;
+import Util.LatencyHistogram;
+import Util.Metrics;
+import Util.PasswordHasher;
+
+/**
+ * The CredentialVerifier checks login passwords against stored hashes, remembering for a short while which
+ * credentials it has already verified so that a client logging in repeatedly pays for the key derivation once.
+ *
+ * The cache is keyed by the stored hash, whose salt makes it unique per account and which changes whenever the
+ * password does, so a changed password can never be satisfied by a cached entry. The value is an HMAC-SHA256 of the
+ * submitted password under a random key held only by this process, not the password itself. Entries expire
+ * socialmedia.auth.credentialCache.ttlSeconds (default 60) after they were verified; at most
+ * socialmedia.auth.credentialCache.maxSize (default 10000) are kept. Failed attempts are never cached.
+ *
+ * A login for a username that does not exist is checked against a random hash at the configured cost, so it takes as
+ * long as one with a wrong password and the response time does not tell which usernames exist.
+ */
+public class CredentialVerifier {
+
+    private static final LatencyHistogram derivations = Metrics.histogram("socialmedia_auth_pbkdf2_duration_seconds",
+        "Time spent deriving password hashes.", "");
+    private static final LongAdder cacheHits = Metrics.counter("socialmedia_auth_credential_cache_hits_total",
+        "Logins verified from the credential cache without deriving a hash.", "");
+
+    private final PasswordHasher passwordHasher;
+
+    private final Cache<String, byte[]> verified;
+
+    private final SecretKeySpec cacheKey;
+
+    private final String unknownAccountHash;
+
+    public CredentialVerifier() {
+        this(new PasswordHasher(),
+            Config.getLong("socialmedia.auth.credentialCache.maxSize", 10_000),
+            Duration.ofSeconds(Config.getLong("socialmedia.auth.credentialCache.ttlSeconds", 60)));
+    }
+
+    public CredentialVerifier(PasswordHasher passwordHasher, long maximumSize, Duration timeToLive) {
+        this.passwordHasher = passwordHasher;
+        this.verified = Caffeine.newBuilder().maximumSize(maximumSize).expireAfterWrite(timeToLive).build();
+        byte[] key = new byte[32];
+        SecureRandom random = new SecureRandom();
+        random.nextBytes(key);
+        this.cacheKey = new SecretKeySpec(key, "HmacSHA256");
+        byte[] salt = new byte[16];
+        byte[] hash = new byte[32];
+        random.nextBytes(salt);
+        random.nextBytes(hash);
+        Base64.Encoder encoder = Base64.getEncoder().withoutPadding();
+        this.unknownAccountHash = PasswordHasher.PREFIX + passwordHasher.getIterations() + '$' + encoder.encodeToString(salt) + '$' + encoder.encodeToString(hash);
+    }
+
+    /**
+     * @return the hash to store for a new password
+     */
+    public String hash(String password) {
+        long start = System.nanoTime();
+        try {
+            return this.passwordHasher.hash(password);
+        } finally {
+            derivations.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * @param stored the account's stored hash, or a legacy plain-text password
+     * @return true if password matches
+     */
+    public boolean verify(String password, String stored) {
+        if (password == null || stored == null) return false;
+        if (!PasswordHasher.isHashed(stored)) return this.passwordHasher.verify(password, stored);
+        byte[] mac = mac(password);
+        byte[] cached = this.verified.getIfPresent(stored);
+        if (cached != null && MessageDigest.isEqual(cached, mac)) {
+            cacheHits.increment();
+            return true;
+        }
+        long start = System.nanoTime();
+        boolean matches = this.passwordHasher.verify(password, stored);
+        derivations.record(System.nanoTime() - start);
+        if (matches) this.verified.put(stored, mac);
+        return matches;
+    }
+
+    /**
+     * Verifies the password of a login whose username does not exist against a hash nothing can match, spending the
+     * same key derivation as {@link #verify} would for a wrong password.
+     * @return false
+     */
+    public boolean verifyUnknownAccount(String password) {
+        if (password == null) return false;
+        long start = System.nanoTime();
+        this.passwordHasher.verify(password, this.unknownAccountHash);
+        derivations.record(System.nanoTime() - start);
+        return false;
+    }
+
+    /**
+     * @return true if the stored password is plain text or was hashed at a cost other than the configured one
+     */
+    public boolean needsRehash(String stored) {
+        return this.passwordHasher.needsRehash(stored);
+    }
+
+    private byte[] mac(String password) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(this.cacheKey);
+            return mac.doFinal(password.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,314 @@
+package Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import Model.*;
+import DAO.ISocialMediaDAO;
+import Exception.FollowException;
+import Util.Config;
+import Util.Metrics;
+import Util.PageCursor;
+
+/**
+ * The FeedEngine serves home timelines: the newest messages of the accounts an account follows. It keeps a bounded,
+ * in-memory timeline of message_ids per reader, so a feed read is a merge of a few sorted int arrays followed by one
+ * lookup of the messages by id, rather than a join of the follow table against the whole message table.
+ *
+ * The engine is a hybrid of fan-out on write and fan-out on read:
+ *
+ * When an account with at most socialmedia.feed.fanoutThreshold followers (default 1000) posts, the new message_id
+ * is pushed into the timeline of every follower that has one in memory.
+ * An account with more followers than that is not fanned out. Its newest message_ids are kept in a single author
+ * timeline instead, which is merged into each follower's feed when the feed is read.
+ *
+ * A reader's timeline is built from the database on the first read (the newest socialmedia.feed.timelineSize
+ * message_ids of everyone it follows, default 800) and is dropped whenever the reader follows or unfollows someone.
+ * At most socialmedia.feed.maxTimelines timelines (default 10000) are kept; the least recently used are evicted.
+ * Paging past what the timelines hold falls back to reading the ids from the database. Deleted messages are
+ * skipped when the ids are resolved, so a page can hold fewer messages than its limit.
+ */
+public class FeedEngine {
+
+    private static final Logger logger = LoggerFactory.getLogger(FeedEngine.class);
+
+    private static final LongAdder fanoutWrites = Metrics.counter("socialmedia_feed_fanout_writes_total",
+        "Message ids pushed into follower timelines.", "");
+    private static final LongAdder databaseReads = Metrics.counter("socialmedia_feed_database_reads_total",
+        "Feed pages that had to read message ids from the database.", "");
+
+    private final ISocialMediaDAO socialMediaDAO;
+    private final int timelineSize;
+    private final int fanoutThreshold;
+
+    /**
+     * Home timelines by the account_id of the reader.
+     */
+    private final Cache<Integer, Timeline> timelines;
+
+    /**
+     * The newest message_ids of accounts that are not fanned out, by account_id.
+     */
+    private final Cache<Integer, Timeline> authorTimelines;
+
+    /**
+     * Follower ids by the account_id of the followed account.
+     */
+    private final Cache<Integer, Set<Integer>> followers;
+
+    /**
+     * Accounts whose latest message had more followers than the fan-out threshold. Their messages are merged into
+     * feeds at read time.
+     */
+    private final Set<Integer> celebrities = ConcurrentHashMap.newKeySet();
+
+    public FeedEngine(ISocialMediaDAO socialMediaDAO) {
+        this(socialMediaDAO,
+            Config.getInt("socialmedia.feed.timelineSize", 800),
+            Config.getInt("socialmedia.feed.fanoutThreshold", 1_000),
+            Config.getLong("socialmedia.feed.maxTimelines", 10_000));
+    }
+
+    public FeedEngine(ISocialMediaDAO socialMediaDAO, int timelineSize, int fanoutThreshold, long maxTimelines) {
+        this.socialMediaDAO = socialMediaDAO;
+        this.timelineSize = timelineSize;
+        this.fanoutThreshold = fanoutThreshold;
+        this.timelines = Caffeine.newBuilder().maximumSize(maxTimelines).build();
+        this.authorTimelines = Caffeine.newBuilder().maximumSize(maxTimelines).build();
+        this.followers = Caffeine.newBuilder().maximumSize(maxTimelines).build();
+    }
+
+    /**
+     * The message_ids of one timeline, newest first. When the timeline is full the oldest id is dropped, after which
+     * the timeline is only known to be complete down to its oldest remaining id.
+     */
+    static class Timeline {
+        /**
+         * The accounts the reader followed when the timeline was built, or null for an author timeline.
+         */
+        final int[] followees;
+        private final int[] ids;
+        private int size;
+        private boolean truncated;
+
+        Timeline(int[] followees, List<Integer> newestFirst, int capacity) {
+            this.followees = followees;
+            this.ids = new int[capacity];
+            this.size = Math.min(newestFirst.size(), capacity);
+            for (int i = 0; i < this.size; i++) this.ids[i] = newestFirst.get(i);
+            this.truncated = newestFirst.size() >= capacity;
+        }
+
+        synchronized void add(int id) {
+            int low = 0, high = this.size;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (this.ids[middle] > id) low = middle + 1;
+                else high = middle;
+            }
+            if (low < this.size && this.ids[low] == id) return;
+            if (this.size == this.ids.length) {
+                this.truncated = true;
+                if (low == this.size) return;
+                this.size--;
+            }
+            System.arraycopy(this.ids, low, this.ids, low + 1, this.size - low);
+            this.ids[low] = id;
+            this.size++;
+        }
+
+        /**
+         * Appends up to limit ids below before to out, newest first.
+         * @return the lowest id down to which this timeline is complete: 0 if it holds every id
+         */
+        synchronized int collect(int before, int limit, List<Integer> out) {
+            int added = 0;
+            for (int i = 0; i < this.size && added < limit; i++) {
+                if (this.ids[i] < before) {
+                    out.add(this.ids[i]);
+                    added++;
+                }
+            }
+            if (!this.truncated) return 0;
+            return this.size == 0 ? Integer.MAX_VALUE : this.ids[this.size - 1];
+        }
+    }
+
+    /**
+     * @return true if the follow was added, false if it already existed
+     * @throws FollowException if an account follows itself or either account does not exist
+     */
+    public boolean follow(int follower_id, int followee_id) throws Exception {
+        if (follower_id == followee_id) throw new FollowException("An account cannot follow itself");
+        boolean created = this.socialMediaDAO.createFollow(follower_id, followee_id);
+        this.followers.asMap().computeIfPresent(followee_id, (key, set) -> {
+            set.add(follower_id);
+            return set;
+        });
+        this.timelines.invalidate(follower_id);
+        return created;
+    }
+
+    /**
+     * @return true if the follow existed and was removed
+     */
+    public boolean unfollow(int follower_id, int followee_id) throws Exception {
+        boolean deleted = this.socialMediaDAO.deleteFollow(follower_id, followee_id);
+        this.followers.asMap().computeIfPresent(followee_id, (key, set) -> {
+            set.remove(follower_id);
+            return set;
+        });
+        this.timelines.invalidate(follower_id);
+        return deleted;
+    }
+
+    /**
+     * Fans a newly committed message out to the timelines of the poster's followers, or records it in the poster's
+     * author timeline if the poster has too many followers.
+     */
+    public void onMessageCreated(Message message) throws Exception {
+        int author = message.getPosted_by();
+        int id = message.getMessage_id();
+        Set<Integer> audience = followers(author);
+        if (audience.size() > this.fanoutThreshold) {
+            this.celebrities.add(author);
+            this.authorTimelines.asMap().computeIfPresent(author, (key, timeline) -> {
+                timeline.add(id);
+                return timeline;
+            });
+            return;
+        }
+        if (this.celebrities.remove(author)) {
+            // the follower timelines lack the messages that were only merged at read time; rebuild them
+            this.timelines.invalidateAll(audience);
+            this.authorTimelines.invalidate(author);
+        }
+        for (Integer follower : audience) {
+            this.timelines.asMap().computeIfPresent(follower, (key, timeline) -> {
+                timeline.add(id);
+                return timeline;
+            });
+        }
+        fanoutWrites.add(audience.size());
+    }
+
+    /**
+     * Drops every timeline, so each is rebuilt from the database on its next read.
+     */
+    public void invalidateAll() {
+        this.timelines.invalidateAll();
+        this.authorTimelines.invalidateAll();
+    }
+
+    /**
+     * @param before only messages with a lower message_id are returned; Integer.MAX_VALUE for the newest
+     * @return up to limit messages, newest first, and the cursor of the next page
+     */
+    public MessagePage getFeed(int account_id, int before, int limit) throws Exception {
+        Timeline home = load(this.timelines, account_id, this::buildTimeline);
+        List<Integer> candidates = new ArrayList<>();
+        int floor = home.collect(before, limit + 1, candidates);
+        for (int followee : home.followees) {
+            if (!this.celebrities.contains(followee)) continue;
+            Timeline author = load(this.authorTimelines, followee, this::buildAuthorTimeline);
+            floor = Math.max(floor, author.collect(before, limit + 1, candidates));
+        }
+
+        // newest first, without duplicates, and only as far down as every source is complete
+        candidates.sort(Collections.reverseOrder());
+        List<Integer> ids = new ArrayList<>(limit + 1);
+        for (Integer id : candidates) {
+            if (id < floor || ids.size() > limit) break;
+            if (ids.isEmpty() || !ids.get(ids.size() - 1).equals(id)) ids.add(id);
+        }
+        if (ids.size() <= limit && floor > 0 && home.followees.length > 0) {
+            databaseReads.increment();
+            int from = ids.isEmpty() ? before : ids.get(ids.size() - 1);
+            ids.addAll(this.socialMediaDAO.findRecentMessageIds(toList(home.followees), from, limit + 1 - ids.size()));
+        }
+
+        String next = null;
+        if (ids.size() > limit) {
+            ids = ids.subList(0, limit);
+            next = new PageCursor(ids.get(limit - 1), null).encode();
+        }
+        return new MessagePage(resolve(this.socialMediaDAO, ids), next);
+    }
+
+    private Timeline buildTimeline(int account_id) throws Exception {
+        if (logger.isDebugEnabled()) logger.debug("Building the feed timeline of account `{}`", account_id);
+        List<Integer> followees = this.socialMediaDAO.findFollowees(account_id);
+        List<Integer> ids = this.socialMediaDAO.findRecentMessageIds(followees, Integer.MAX_VALUE, this.timelineSize);
+        int[] followeeIds = new int[followees.size()];
+        for (int i = 0; i < followeeIds.length; i++) followeeIds[i] = followees.get(i);
+        return new Timeline(followeeIds, ids, this.timelineSize);
+    }
+
+    private Timeline buildAuthorTimeline(int account_id) throws Exception {
+        List<Integer> ids = this.socialMediaDAO.findRecentMessageIds(Collections.singletonList(account_id), Integer.MAX_VALUE, this.timelineSize);
+        return new Timeline(null, ids, this.timelineSize);
+    }
+
+    private Set<Integer> followers(int account_id) throws Exception {
+        return load(this.followers, account_id, key -> {
+            Set<Integer> set = ConcurrentHashMap.newKeySet();
+            set.addAll(this.socialMediaDAO.findFollowers(key));
+            return set;
+        });
+    }
+
+    /**
+     * Reads the messages with one query and puts them in the order of ids, leaving out those that no longer exist.
+     */
+    static List<Message> resolve(ISocialMediaDAO socialMediaDAO, List<Integer> ids) throws Exception {
+        Map<Integer, Message> byId = new HashMap<>();
+        for (Message message : socialMediaDAO.findMessagesByIds(ids)) byId.put(message.getMessage_id(), message);
+        List<Message> messages = new ArrayList<>(ids.size());
+        for (Integer id : ids) {
+            Message message = byId.get(id);
+            if (message != null) messages.add(message);
+        }
+        return messages;
+    }
+
+    private static List<Integer> toList(int[] values) {
+        List<Integer> list = new ArrayList<>(values.length);
+        for (int value : values) list.add(value);
+        return list;
+    }
+
+    /**
+     * A database lookup that may fail with a checked exception.
+     */
+    @FunctionalInterface
+    private interface Loader<K, V> {
+        V load(K key) throws Exception;
+    }
+
+    private static <K, V> V load(Cache<K, V> cache, K key, Loader<K, V> loader) throws Exception {
+        try {
+            return cache.get(key, k -> {
+                try {
+                    return loader.load(k);
+                } catch (Exception e) {
+                    throw new CompletionException(e);
+                }
+            });
+        } catch (CompletionException e) {
+            throw (Exception) e.getCause();
+        }
+    }
+}
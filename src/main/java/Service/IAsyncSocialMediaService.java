@@ -0,0 +1,37 @@
+package Service;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import Model.*;
+import DAO.MessageConsumer;
+import DAO.MessageQuery;
+
+/**
+ * The asynchronous counterpart of {@link ISocialMediaService}. Every call returns immediately with a future that
+ * completes on a dedicated database executor. Failures complete the future exceptionally with the same exception
+ * the synchronous call would have thrown; a call refused because the executor is saturated fails with a
+ * RejectedExecutionException. The streaming calls pass the messages to their consumer on a separate executor, never
+ * on the database executor.
+ */
+public interface IAsyncSocialMediaService {
+    CompletableFuture<Account> registerAccount(Account account);
+    CompletableFuture<Account> login(Account account);
+    CompletableFuture<Message> createMessage(Message message);
+    CompletableFuture<List<MessageResult>> createMessages(List<Message> messages, int owner_id);
+    CompletableFuture<Message> getMessage(int message_id);
+    CompletableFuture<List<MessageResult>> getMessages(List<Integer> message_ids);
+    CompletableFuture<Integer> getMessageVersion(int message_id);
+    CompletableFuture<List<Message>> getAllMessages();
+    CompletableFuture<List<Message>> getAllMessagesFromPoster(int posted_by);
+    CompletableFuture<MessagePage> getMessagesPage(MessageQuery query);
+    CompletableFuture<Void> streamMessages(MessageQuery query, MessageConsumer consumer);
+    CompletableFuture<String> streamMessagesPage(MessageQuery query, MessageConsumer consumer);
+    CompletableFuture<Message> updateMessage(Message message, int owner_id);
+    CompletableFuture<Message> deleteMessage(int message_id, int owner_id);
+    CompletableFuture<List<MessageResult>> deleteMessages(List<Integer> message_ids, int owner_id);
+    CompletableFuture<Boolean> follow(Follow follow);
+    CompletableFuture<Boolean> unfollow(Follow follow);
+    CompletableFuture<MessagePage> getFeed(int account_id, int before, int limit);
+    CompletableFuture<MessagePage> searchMessages(String query, int offset, int limit);
+}
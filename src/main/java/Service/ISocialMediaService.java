@@ -3,14 +3,29 @@ package Service;
 import java.util.List;
 
 import Model.*;
+import DAO.MessageConsumer;
+import DAO.MessageQuery;
 
 public interface ISocialMediaService {
     Account registerAccount(Account account) throws Exception;
     Account login(Account account) throws Exception;
     Message createMessage(Message message) throws Exception;
+    List<MessageResult> createMessages(List<Message> messages, int owner_id) throws Exception;
     Message getMessage(int message_id) throws Exception;
+    List<MessageResult> getMessages(List<Integer> message_ids) throws Exception;
+    int getMessageVersion(int message_id) throws Exception;
+    long getListVersion(Integer posted_by);
     List<Message> getAllMessages() throws Exception;
     List<Message> getAllMessagesFromPoster(int posted_by) throws Exception;
-    Message updateMessage(Message message) throws Exception;
-    Message deleteMessage(int message_id) throws Exception;
+    MessagePage getMessagesPage(MessageQuery query) throws Exception;
+    void streamMessages(MessageQuery query, MessageConsumer consumer) throws Exception;
+    String streamMessagesPage(MessageQuery query, MessageConsumer consumer) throws Exception;
+    Message updateMessage(Message message, int owner_id) throws Exception;
+    Message deleteMessage(int message_id, int owner_id) throws Exception;
+    List<MessageResult> deleteMessages(List<Integer> message_ids, int owner_id) throws Exception;
+    boolean follow(Follow follow) throws Exception;
+    boolean unfollow(Follow follow) throws Exception;
+    MessagePage getFeed(int account_id, int before, int limit) throws Exception;
+    MessagePage searchMessages(String query, int offset, int limit) throws Exception;
+    void close() throws Exception;
 }
@@ -0,0 +1,110 @@
+package Service;
+
+import java.time.Duration;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import DAO.ISocialMediaDAO;
+import Model.Message;
+import Util.Config;
+
+/**
+ * The MessageVersions class tracks what conditional GETs need to answer 304 Not Modified without reading or
+ * serializing messages.
+ *
+ * A message's version is the version column of its row, which every update increments. Versions are cached by
+ * message_id (socialmedia.cache.versions.maxSize entries, default 100000, each kept for at most
+ * socialmedia.cache.versions.ttlSeconds, default 300), so only the first conditional request for a message reads its
+ * version from the database. {@link SocialMediaService} drops the entry whenever it updates or deletes the message.
+ *
+ * A listing's version is a change counter that {@link SocialMediaService} bumps after every message it creates,
+ * updates or deletes: one for all messages, and one per posting account, hashed into a fixed number of stripes so the
+ * memory used does not grow with the number of accounts. Two accounts sharing a stripe only cost each other a 200
+ * where a 304 would have done. The counters start from the startup time in milliseconds shifted left by 20 bits, so
+ * a version handed out before a restart is never handed out again after it. Listing versions only see changes made
+ * through this process.
+ *
+ * Callers must read a version before the data it describes: a change that lands in between then gives the response
+ * an outdated version, which costs the next request a 200, never a wrong 304.
+ */
+public class MessageVersions {
+
+    private static final int STRIPES = 4096;
+
+    private final ISocialMediaDAO socialMediaDAO;
+
+    /**
+     * Message versions by message_id; 0 records that no message has the id.
+     */
+    private final Cache<Integer, Integer> messages;
+
+    private final AtomicLong all = new AtomicLong(System.currentTimeMillis() << 20);
+
+    private final AtomicLongArray accounts = new AtomicLongArray(STRIPES);
+
+    public MessageVersions(ISocialMediaDAO socialMediaDAO) {
+        this(socialMediaDAO,
+            Config.getLong("socialmedia.cache.versions.maxSize", 100_000),
+            Duration.ofSeconds(Config.getLong("socialmedia.cache.versions.ttlSeconds", 300)));
+    }
+
+    public MessageVersions(ISocialMediaDAO socialMediaDAO, long maximumSize, Duration timeToLive) {
+        this.socialMediaDAO = socialMediaDAO;
+        this.messages = Caffeine.newBuilder().maximumSize(maximumSize).expireAfterWrite(timeToLive).build();
+        long start = this.all.get();
+        for (int i = 0; i < STRIPES; i++) this.accounts.set(i, start);
+    }
+
+    /**
+     * @return the version of the message, or 0 if it does not exist
+     */
+    public int getMessageVersion(int message_id) throws Exception {
+        try {
+            return this.messages.get(message_id, id -> {
+                try {
+                    return this.socialMediaDAO.findMessageVersion(id);
+                } catch (Exception e) {
+                    throw new CompletionException(e);
+                }
+            });
+        } catch (CompletionException e) {
+            throw (Exception) e.getCause();
+        }
+    }
+
+    /**
+     * @param posted_by the account whose messages are listed, or null for all messages
+     */
+    public long getListVersion(Integer posted_by) {
+        return posted_by == null ? this.all.get() : this.accounts.get(stripe(posted_by));
+    }
+
+    /**
+     * Records a committed new message.
+     */
+    public void onMessageCreated(Message message) {
+        this.messages.put(message.getMessage_id(), 1);
+        bump(message.getPosted_by());
+    }
+
+    /**
+     * Records a committed update or delete of the message.
+     */
+    public void onMessageChanged(Message message) {
+        this.messages.invalidate(message.getMessage_id());
+        bump(message.getPosted_by());
+    }
+
+    private void bump(int posted_by) {
+        long version = this.all.incrementAndGet();
+        this.accounts.accumulateAndGet(stripe(posted_by), version, Math::max);
+    }
+
+    private static int stripe(int posted_by) {
+        return (posted_by * 0x9E3779B9 >>> 20) & (STRIPES - 1);
+    }
+}
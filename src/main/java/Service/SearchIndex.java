@@ -0,0 +1,275 @@
+package Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import Model.Message;
+
+/**
+ * The SearchIndex is an in-memory inverted index over message_text. Text is split into lower-cased runs of letters
+ * and digits; for every such term the index keeps a posting list of the messages containing it, sorted by
+ * message_id, with the number of occurrences and the length of each message.
+ *
+ * A search returns the messages that contain every term of the query, ranked by BM25 with newer messages first on
+ * equal scores. Matching walks the shortest posting list and looks each candidate up in the others by binary
+ * search, so the cost of a query grows with the number of messages containing its rarest term, not with the number
+ * of messages indexed.
+ *
+ * The index is kept current by {@link SocialMediaService} as messages are created, updated and deleted, and is
+ * rebuilt from the DAO when the service starts. Readers share a read lock; each change takes the write lock briefly.
+ */
+public class SearchIndex {
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    /**
+     * Terms longer than this are not indexed.
+     */
+    private static final int MAX_TERM_LENGTH = 64;
+
+    /**
+     * The messages containing one term, ordered by message_id.
+     */
+    private static class Postings {
+        final String term;
+        int[] ids = new int[4];
+        int[] frequencies = new int[4];
+        int[] lengths = new int[4];
+        int size;
+
+        Postings(String term) {
+            this.term = term;
+        }
+
+        int find(int id) {
+            return Arrays.binarySearch(this.ids, 0, this.size, id);
+        }
+
+        void add(int id, int frequency, int length) {
+            int position = find(id);
+            if (position >= 0) {
+                this.frequencies[position] = frequency;
+                this.lengths[position] = length;
+                return;
+            }
+            position = -position - 1;
+            if (this.size == this.ids.length) {
+                int capacity = this.size * 2;
+                this.ids = Arrays.copyOf(this.ids, capacity);
+                this.frequencies = Arrays.copyOf(this.frequencies, capacity);
+                this.lengths = Arrays.copyOf(this.lengths, capacity);
+            }
+            int moved = this.size - position;
+            System.arraycopy(this.ids, position, this.ids, position + 1, moved);
+            System.arraycopy(this.frequencies, position, this.frequencies, position + 1, moved);
+            System.arraycopy(this.lengths, position, this.lengths, position + 1, moved);
+            this.ids[position] = id;
+            this.frequencies[position] = frequency;
+            this.lengths[position] = length;
+            this.size++;
+        }
+
+        void remove(int id) {
+            int position = find(id);
+            if (position < 0) return;
+            int moved = this.size - position - 1;
+            System.arraycopy(this.ids, position + 1, this.ids, position, moved);
+            System.arraycopy(this.frequencies, position + 1, this.frequencies, position, moved);
+            System.arraycopy(this.lengths, position + 1, this.lengths, position, moved);
+            this.size--;
+        }
+    }
+
+    /**
+     * The posting lists an indexed message appears in, so the message can be removed without its old text.
+     */
+    private static class Document {
+        final Postings[] postings;
+        final int length;
+
+        Document(Postings[] postings, int length) {
+            this.postings = postings;
+            this.length = length;
+        }
+    }
+
+    /**
+     * One scored match.
+     */
+    private static class Hit {
+        final int id;
+        final double score;
+
+        Hit(int id, double score) {
+            this.id = id;
+            this.score = score;
+        }
+    }
+
+    private static final Comparator<Hit> RANK = Comparator.<Hit>comparingDouble(hit -> hit.score).thenComparingInt(hit -> hit.id);
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Postings> terms = new HashMap<>();
+    private final Map<Integer, Document> documents = new HashMap<>();
+    private long totalLength;
+
+    /**
+     * Indexes the message, replacing whatever was indexed for its message_id before.
+     */
+    public void add(Message message) {
+        Map<String, Integer> frequencies = new LinkedHashMap<>();
+        int length = 0;
+        for (String term : tokenize(message.getMessage_text())) {
+            frequencies.merge(term, 1, Integer::sum);
+            length++;
+        }
+        this.lock.writeLock().lock();
+        try {
+            removeDocument(message.getMessage_id());
+            Postings[] postings = new Postings[frequencies.size()];
+            int i = 0;
+            for (Map.Entry<String, Integer> entry : frequencies.entrySet()) {
+                Postings list = this.terms.computeIfAbsent(entry.getKey(), Postings::new);
+                list.add(message.getMessage_id(), entry.getValue(), length);
+                postings[i++] = list;
+            }
+            this.documents.put(message.getMessage_id(), new Document(postings, length));
+            this.totalLength += length;
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(int message_id) {
+        this.lock.writeLock().lock();
+        try {
+            removeDocument(message_id);
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    public void clear() {
+        this.lock.writeLock().lock();
+        try {
+            this.terms.clear();
+            this.documents.clear();
+            this.totalLength = 0;
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of indexed messages
+     */
+    public int size() {
+        this.lock.readLock().lock();
+        try {
+            return this.documents.size();
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param query free text; every term in it must occur in a message for the message to match
+     * @param offset the number of top-ranked matches to skip
+     * @param limit the largest number of message_ids to return
+     * @return the message_ids of the matches ranked offset to offset + limit, best first
+     */
+    public List<Integer> search(String query, int offset, int limit) {
+        Set<String> queryTerms = new LinkedHashSet<>(tokenize(query));
+        if (queryTerms.isEmpty() || limit <= 0) return new ArrayList<>();
+        this.lock.readLock().lock();
+        try {
+            Postings[] lists = new Postings[queryTerms.size()];
+            int n = 0;
+            for (String term : queryTerms) {
+                Postings list = this.terms.get(term);
+                if (list == null) return new ArrayList<>();
+                lists[n++] = list;
+            }
+            Arrays.sort(lists, Comparator.comparingInt(list -> list.size));
+
+            int documentCount = this.documents.size();
+            double averageLength = (double) this.totalLength / documentCount;
+            double[] idf = new double[lists.length];
+            for (int i = 0; i < lists.length; i++)
+                idf[i] = Math.log(1 + (documentCount - lists[i].size + 0.5) / (lists[i].size + 0.5));
+
+            int wanted = (int) Math.min((long) offset + limit, Integer.MAX_VALUE);
+            PriorityQueue<Hit> best = new PriorityQueue<>(Math.min(wanted, 1024) + 1, RANK);
+            Postings rarest = lists[0];
+            candidates:
+            for (int i = 0; i < rarest.size; i++) {
+                int id = rarest.ids[i];
+                double lengthNorm = K1 * (1 - B + B * rarest.lengths[i] / averageLength);
+                double score = idf[0] * bm25(rarest.frequencies[i], lengthNorm);
+                for (int j = 1; j < lists.length; j++) {
+                    int position = lists[j].find(id);
+                    if (position < 0) continue candidates;
+                    score += idf[j] * bm25(lists[j].frequencies[position], lengthNorm);
+                }
+                Hit hit = new Hit(id, score);
+                if (best.size() < wanted) best.add(hit);
+                else if (RANK.compare(hit, best.peek()) > 0) {
+                    best.poll();
+                    best.add(hit);
+                }
+            }
+
+            Hit[] ranked = best.toArray(new Hit[0]);
+            Arrays.sort(ranked, RANK.reversed());
+            List<Integer> ids = new ArrayList<>(limit);
+            for (int i = offset; i < ranked.length; i++) ids.add(ranked[i].id);
+            return ids;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    private static double bm25(int frequency, double lengthNorm) {
+        return frequency * (K1 + 1) / (frequency + lengthNorm);
+    }
+
+    private void removeDocument(int message_id) {
+        Document document = this.documents.remove(message_id);
+        if (document == null) return;
+        for (Postings list : document.postings) {
+            list.remove(message_id);
+            if (list.size == 0) this.terms.remove(list.term);
+        }
+        this.totalLength -= document.length;
+    }
+
+    /**
+     * Splits text into lower-cased runs of letters and digits. The query and the messages go through the same
+     * tokenizer, so they agree on what a term is.
+     */
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) return tokens;
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean termChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (termChar && start < 0) start = i;
+            else if (!termChar && start >= 0) {
+                if (i - start <= MAX_TERM_LENGTH) tokens.add(text.substring(start, i).toLowerCase());
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+}
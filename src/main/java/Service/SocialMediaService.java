@@ -1,6 +1,12 @@
 package Service;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.LoggerFactory;
 import org.slf4j.Logger;
@@ -8,85 +14,445 @@ import org.slf4j.Logger;
 import Model.*;
 import DAO.*;
 import Exception.*;
+import Util.Config;
+import Util.PageCursor;
 
 public class SocialMediaService implements ISocialMediaService {
     private static final Logger logger = LoggerFactory.getLogger(SocialMediaService.class);
 
-    private ISocialMediaDAO socialMediaDAO = new SocialMediaDAO();
-    
+    /**
+     * The largest page size a client may request from a paginated listing.
+     */
+    public static final int MAX_PAGE_SIZE = Config.getInt("socialmedia.page.maxSize", 1000);
+
+    /**
+     * The largest number of items a client may send in one bulk request.
+     */
+    public static final int MAX_BATCH_SIZE = Config.getInt("socialmedia.batch.maxSize", 1000);
+
+    private ISocialMediaDAO socialMediaDAO;
+
+    private FeedEngine feedEngine;
+
+    private SearchIndex searchIndex = new SearchIndex();
+
+    private CredentialVerifier credentialVerifier;
+
+    private MessageVersions messageVersions;
+
+    private Thread passwordMigration;
+
+    /**
+     * Uses the DAO assembled by {@link DAOFactory} from the current configuration.
+     */
+    public SocialMediaService() {
+        this(DAOFactory.create());
+    }
+
+    public SocialMediaService(ISocialMediaDAO socialMediaDAO) {
+        this(socialMediaDAO, new CredentialVerifier());
+    }
+
+    public SocialMediaService(ISocialMediaDAO socialMediaDAO, CredentialVerifier credentialVerifier) {
+        this.socialMediaDAO = socialMediaDAO;
+        this.feedEngine = new FeedEngine(socialMediaDAO);
+        this.credentialVerifier = credentialVerifier;
+        this.messageVersions = new MessageVersions(socialMediaDAO);
+        rebuildSearchIndex();
+        this.passwordMigration = new Thread(this::hashPlainTextPasswords, "password-migration");
+        this.passwordMigration.setDaemon(true);
+        this.passwordMigration.start();
+    }
+
+    /**
+     * Stores a salted hash of the password. The returned account carries the password as it was submitted, as the
+     * API has always echoed it, never the stored hash.
+     */
     public Account registerAccount(Account account) throws Exception {
-        logger.info("Verifying account meets validation requirements...");
+        logger.debug("Verifying account meets validation requirements...");
         if (account.getUsername() == null || account.getUsername().isBlank()) throw new AccountRegistrationException("Username is blank");
         if (account.getPassword() == null) throw new AccountRegistrationException("Password is blank");
         if (account.getPassword().length() < 4) throw new AccountRegistrationException("Password does not meet length requirements");
         if (this.socialMediaDAO.findAccount(account.getUsername()) == null) {
-            logger.info("Account registration request has been successfully validated!");   
-            return this.socialMediaDAO.createAccount(account);
+            logger.debug("Account registration request has been successfully validated!");   
+            Account created = this.socialMediaDAO.createAccount(new Account(account.getUsername(), this.credentialVerifier.hash(account.getPassword())));
+            return new Account(created.getAccount_id(), created.getUsername(), account.getPassword());
         } else throw new AccountRegistrationException("Account with given username already exists");
     }
 
+    /**
+     * Verifies the password against the stored hash. A password still stored in plain text, or hashed at a cost
+     * other than the configured one, is re-hashed once it has been verified. An unknown username costs the same key
+     * derivation as a wrong password, so the two cannot be told apart by timing.
+     */
     public Account login(Account account) throws Exception {
-        logger.info("Attempting to log in account with username `{}`", account.getUsername());
+        logger.debug("Attempting to log in account with username `{}`", account.getUsername());
         
-        if (account.getUsername().isBlank()) {
-            logger.warn("Account username is blank!");
+        if (account.getUsername() == null || account.getUsername().isBlank()) {
+            logger.debug("Account username is blank!");
             return null;
         }
 
         Account actual = this.socialMediaDAO.findAccount(account.getUsername());
         
         if (actual == null) {
-            logger.info("Could not find account with the specified username");
+            logger.debug("Could not find account with the specified username");
+            this.credentialVerifier.verifyUnknownAccount(account.getPassword());
             return null;
         }
 
-        if (actual.getPassword().equals(account.getPassword())) return actual;
-        else {
-            logger.info("Passwords do not match!");
+        if (!this.credentialVerifier.verify(account.getPassword(), actual.getPassword())) {
+            logger.debug("Passwords do not match!");
             return null;
         }
+        if (this.credentialVerifier.needsRehash(actual.getPassword())) rehashPassword(actual, account.getPassword());
+        return new Account(actual.getAccount_id(), actual.getUsername(), account.getPassword());
     }
 
     public Message createMessage(Message message) throws Exception {
-        logger.info("Validating message meets requirements...");
+        logger.debug("Validating message meets requirements...");
         validateMessageText(message.getMessage_text());
-        if (this.socialMediaDAO.findAccount(message.getPosted_by()) == null) throw new MessageException("Invalid posted_by user account ID");
-        return this.socialMediaDAO.createMessage(message);
+        // the DAO rejects an unknown posted_by with a MessageException as part of the insert
+        Message created = this.socialMediaDAO.createMessage(message);
+        this.messageVersions.onMessageCreated(created);
+        fanOut(created);
+        this.searchIndex.add(created);
+        return created;
+    }
+
+    /**
+     * Validates every message on its own and inserts the valid ones with one JDBC batch in one transaction. An item
+     * that fails validation, names another account than owner_id or an unknown posted_by gets an error result; the
+     * others are created.
+     * @param owner_id the authenticated account, which every message must be posted by, or ISocialMediaDAO.ANY_ACCOUNT
+     * @return one result per message, in the order given
+     * @throws MessageException if the batch is empty or larger than MAX_BATCH_SIZE
+     */
+    public List<MessageResult> createMessages(List<Message> messages, int owner_id) throws Exception {
+        logger.debug("Creating a batch of messages");
+        validateBatchSize(messages);
+        MessageResult[] results = new MessageResult[messages.size()];
+        List<Message> valid = new ArrayList<>(messages.size());
+        List<Integer> positions = new ArrayList<>(messages.size());
+        for (int i = 0; i < results.length; i++) {
+            Message message = messages.get(i);
+            if (message == null) {
+                results[i] = MessageResult.failed(400, "Message is missing");
+            } else if (owner_id != ISocialMediaDAO.ANY_ACCOUNT && message.getPosted_by() != owner_id) {
+                results[i] = MessageResult.failed(403, "posted_by does not match the session token");
+            } else {
+                try {
+                    validateMessageText(message.getMessage_text());
+                    valid.add(message);
+                    positions.add(i);
+                } catch (MessageException e) {
+                    results[i] = MessageResult.failed(400, e.getMessage());
+                }
+            }
+        }
+        if (!valid.isEmpty()) this.socialMediaDAO.createMessages(valid);
+        for (int i = 0; i < valid.size(); i++) {
+            Message created = valid.get(i);
+            if (created.getMessage_id() == 0) {
+                results[positions.get(i)] = MessageResult.failed(400, "Invalid posted_by user account ID");
+                continue;
+            }
+            this.messageVersions.onMessageCreated(created);
+            fanOut(created);
+            this.searchIndex.add(created);
+            results[positions.get(i)] = MessageResult.ok(created);
+        }
+        return Arrays.asList(results);
     }
 
     public Message getMessage(int message_id) throws Exception {
-        logger.info("Fetching message with id `{}`", message_id);
+        if (logger.isDebugEnabled()) logger.debug("Fetching message with id `{}`", message_id);
         return this.socialMediaDAO.findMessage(message_id);
     }
 
+    /**
+     * Reads all the messages with one query.
+     * @return one result per id, in the order given: the message, or 404 if it does not exist
+     * @throws MessageException if the list is empty or larger than MAX_BATCH_SIZE
+     */
+    public List<MessageResult> getMessages(List<Integer> message_ids) throws Exception {
+        logger.debug("Fetching a batch of messages");
+        validateBatchSize(message_ids);
+        Map<Integer, Message> found = byId(this.socialMediaDAO.findMessagesByIds(distinct(message_ids)));
+        List<MessageResult> results = new ArrayList<>(message_ids.size());
+        for (Integer id : message_ids) {
+            Message message = found.get(id);
+            results.add(message != null ? MessageResult.ok(message) : MessageResult.failed(404, "Message not found"));
+        }
+        return results;
+    }
+
+    /**
+     * @return the version of the message for conditional GETs, or 0 if it does not exist; usually answered from memory
+     */
+    public int getMessageVersion(int message_id) throws Exception {
+        return this.messageVersions.getMessageVersion(message_id);
+    }
+
+    /**
+     * @param posted_by the account whose messages are listed, or null for all messages
+     * @return the version of the listing for conditional GETs; never touches the database
+     */
+    public long getListVersion(Integer posted_by) {
+        return this.messageVersions.getListVersion(posted_by);
+    }
+
     public List<Message> getAllMessages() throws Exception {
-        logger.info("Fetching all messages from the database");
+        logger.debug("Fetching all messages from the database");
         return this.socialMediaDAO.findAllMessages();
     }
 
     public List<Message> getAllMessagesFromPoster(int posted_by) throws Exception {
-        logger.info("Fetching all messages from the database posted by poster with account id `{}`", posted_by);
+        if (logger.isDebugEnabled()) logger.debug("Fetching all messages from the database posted by poster with account id `{}`", posted_by);
         return this.socialMediaDAO.findMessagesByPoster(posted_by);
     }
 
-    public Message updateMessage(Message message) throws Exception {
-        logger.info("Updating message with id: `{}`", message.getMessage_id());
+    public MessagePage getMessagesPage(MessageQuery query) throws Exception {
+        logger.debug("Fetching a page of messages matching {}", query);
+        validatePageLimit(query);
+        List<Message> messages = this.socialMediaDAO.findMessages(query.withLimit(query.getLimit() + 1));
+        String next = null;
+        if (messages.size() > query.getLimit()) {
+            messages = messages.subList(0, query.getLimit());
+            next = new PageCursor(messages.get(messages.size() - 1).getMessage_id(), query.getSince()).encode();
+        }
+        return new MessagePage(messages, next);
+    }
+
+    public void streamMessages(MessageQuery query, MessageConsumer consumer) throws Exception {
+        logger.debug("Streaming messages matching {}", query);
+        this.socialMediaDAO.streamMessages(query, consumer);
+    }
+
+    /**
+     * Streams one page of messages to the consumer. One row past the page limit is read to learn whether another
+     * page follows; that row is not passed to the consumer.
+     * @return the cursor of the next page, or null if this is the last page
+     */
+    public String streamMessagesPage(MessageQuery query, MessageConsumer consumer) throws Exception {
+        logger.debug("Streaming a page of messages matching {}", query);
+        validatePageLimit(query);
+        int[] seen = new int[2];
+        this.socialMediaDAO.streamMessages(query.withLimit(query.getLimit() + 1), message -> {
+            if (seen[0]++ < query.getLimit()) {
+                seen[1] = message.getMessage_id();
+                consumer.accept(message);
+            }
+        });
+        return seen[0] > query.getLimit() ? new PageCursor(seen[1], query.getSince()).encode() : null;
+    }
+
+    /**
+     * @param owner_id the authenticated account, which must have posted the message, or ISocialMediaDAO.ANY_ACCOUNT
+     * @throws AuthorizationException if the message exists but was posted by another account
+     */
+    public Message updateMessage(Message message, int owner_id) throws Exception {
+        if (logger.isDebugEnabled()) logger.debug("Updating message with id: `{}`", message.getMessage_id());
         validateMessageText(message.getMessage_text());
-        if (this.socialMediaDAO.findMessage(message.getMessage_id()) == null) throw new MessageException("Message with specified ID not found");
-        this.socialMediaDAO.updateMessage(message);
-        return this.socialMediaDAO.findMessage(message.getMessage_id());
+        Message updated = this.socialMediaDAO.updateMessage(message, owner_id);
+        if (updated == null) {
+            checkNotOwnedByOther(message.getMessage_id(), owner_id);
+            throw new MessageException("Message with specified ID not found");
+        }
+        this.messageVersions.onMessageChanged(updated);
+        this.searchIndex.add(updated);
+        return updated;
     }
 
-    public Message deleteMessage(int message_id) throws Exception {
-        Message message = this.getMessage(message_id);
-        logger.info("Deleting message with id `{}`", message_id);
-        this.socialMediaDAO.deleteMessage(message_id);
-        return message;
+    /**
+     * @param owner_id the authenticated account, which must have posted the message, or ISocialMediaDAO.ANY_ACCOUNT
+     * @throws AuthorizationException if the message exists but was posted by another account
+     */
+    public Message deleteMessage(int message_id, int owner_id) throws Exception {
+        if (logger.isDebugEnabled()) logger.debug("Deleting message with id `{}`", message_id);
+        Message deleted = this.socialMediaDAO.deleteMessage(message_id, owner_id);
+        if (deleted != null) {
+            this.messageVersions.onMessageChanged(deleted);
+            this.searchIndex.remove(message_id);
+        } else checkNotOwnedByOther(message_id, owner_id);
+        return deleted;
+    }
+
+    /**
+     * Deletes all the messages with one statement. Only when owner_id is set and some messages were not deleted is a
+     * second query made, to tell the messages of other accounts (403) from those that do not exist (404).
+     * @param owner_id the authenticated account, which must have posted the messages, or ISocialMediaDAO.ANY_ACCOUNT
+     * @return one result per id, in the order given
+     * @throws MessageException if the list is empty or larger than MAX_BATCH_SIZE
+     */
+    public List<MessageResult> deleteMessages(List<Integer> message_ids, int owner_id) throws Exception {
+        logger.debug("Deleting a batch of messages");
+        validateBatchSize(message_ids);
+        List<Integer> ids = distinct(message_ids);
+        Map<Integer, Message> deleted = byId(this.socialMediaDAO.deleteMessages(ids, owner_id));
+        for (Message message : deleted.values()) {
+            this.messageVersions.onMessageChanged(message);
+            this.searchIndex.remove(message.getMessage_id());
+        }
+        Map<Integer, Message> others = new HashMap<>();
+        if (owner_id != ISocialMediaDAO.ANY_ACCOUNT && deleted.size() < ids.size()) {
+            List<Integer> remaining = new ArrayList<>(ids.size() - deleted.size());
+            for (Integer id : ids) if (!deleted.containsKey(id)) remaining.add(id);
+            others = byId(this.socialMediaDAO.findMessagesByIds(remaining));
+        }
+        List<MessageResult> results = new ArrayList<>(message_ids.size());
+        for (Integer id : message_ids) {
+            if (deleted.containsKey(id)) results.add(MessageResult.ok(deleted.get(id)));
+            else if (others.containsKey(id)) results.add(MessageResult.failed(403, "Message was posted by another account"));
+            else results.add(MessageResult.failed(404, "Message not found"));
+        }
+        return results;
+    }
+
+    /**
+     * Ranks the messages containing every term of the query with the in-memory {@link SearchIndex}.
+     * @param offset the number of results already returned by previous pages, as decoded from the client's cursor
+     * @return a page of matching messages, best first, and the cursor of the next page
+     * @throws MessageException if the offset is negative or the page would run past Integer.MAX_VALUE results
+     */
+    public MessagePage searchMessages(String query, int offset, int limit) throws Exception {
+        logger.debug("Searching messages for `{}`", query);
+        if (query == null || SearchIndex.tokenize(query).isEmpty()) throw new MessageException("Search query is blank");
+        if (limit < 1 || limit > MAX_PAGE_SIZE) throw new MessageException("Page limit must be between 1 and " + MAX_PAGE_SIZE);
+        if (offset < 0 || offset > Integer.MAX_VALUE - limit - 1) throw new MessageException("Search cursor is out of range");
+        List<Integer> ids = this.searchIndex.search(query, offset, limit + 1);
+        String next = null;
+        if (ids.size() > limit) {
+            ids = ids.subList(0, limit);
+            next = new PageCursor(offset + limit, null).encode();
+        }
+        return new MessagePage(FeedEngine.resolve(this.socialMediaDAO, ids), next);
+    }
+
+    public boolean follow(Follow follow) throws Exception {
+        if (logger.isDebugEnabled()) logger.debug("Account `{}` follows account `{}`", follow.getFollower_id(), follow.getFollowee_id());
+        return this.feedEngine.follow(follow.getFollower_id(), follow.getFollowee_id());
+    }
+
+    public boolean unfollow(Follow follow) throws Exception {
+        if (logger.isDebugEnabled()) logger.debug("Account `{}` unfollows account `{}`", follow.getFollower_id(), follow.getFollowee_id());
+        return this.feedEngine.unfollow(follow.getFollower_id(), follow.getFollowee_id());
+    }
+
+    /**
+     * @param before the message_id the previous page ended with, or Integer.MAX_VALUE for the first page
+     * @return a page of the messages posted by the accounts account_id follows, newest first
+     */
+    public MessagePage getFeed(int account_id, int before, int limit) throws Exception {
+        if (logger.isDebugEnabled()) logger.debug("Fetching the feed of account `{}`", account_id);
+        if (limit < 1 || limit > MAX_PAGE_SIZE) throw new MessageException("Page limit must be between 1 and " + MAX_PAGE_SIZE);
+        return this.feedEngine.getFeed(account_id, before, limit);
+    }
+
+    /**
+     * Hands a committed message to the feed engine. The message is already stored, so a failure here does not fail
+     * the request; the timelines are dropped instead and rebuilt from the database on their next read.
+     */
+    private void fanOut(Message message) {
+        try {
+            this.feedEngine.onMessageCreated(message);
+        } catch (Exception e) {
+            logger.error("Feed fan-out of message `{}` failed", message.getMessage_id(), e);
+            this.feedEngine.invalidateAll();
+        }
+    }
+
+    /**
+     * Tells a message that does not exist apart from one posted by another account, after an owner-restricted update
+     * or delete changed no row. Successful updates and deletes never get here, so they cost no extra lookup.
+     */
+    private void checkNotOwnedByOther(int message_id, int owner_id) throws Exception {
+        if (owner_id != ISocialMediaDAO.ANY_ACCOUNT && this.socialMediaDAO.findMessage(message_id) != null)
+            throw new AuthorizationException("Message was posted by another account");
+    }
+
+    /**
+     * Replaces a verified password's stored form with a hash at the configured cost. The login has already
+     * succeeded, so a failure is logged and the password is re-hashed on a later login instead.
+     */
+    private void rehashPassword(Account account, String password) {
+        try {
+            if (this.socialMediaDAO.updatePassword(account, this.credentialVerifier.hash(password)) && logger.isDebugEnabled())
+                logger.debug("Re-hashed the password of account `{}`", account.getAccount_id());
+        } catch (Exception e) {
+            logger.error("Could not re-hash the password of account `{}`", account.getAccount_id(), e);
+        }
+    }
+
+    /**
+     * Hashes every password still stored in plain text, from before passwords were hashed. Each hash costs a full key
+     * derivation, so this runs on its own thread once the service has started rather than delaying startup; a login
+     * in the meantime verifies the plain-text password and hashes it itself. The update only applies while the
+     * password is still the one read, so the two never overwrite each other. Like the search index, a failure is
+     * logged rather than thrown; the remaining accounts are migrated as they log in.
+     */
+    private void hashPlainTextPasswords() {
+        try {
+            List<Account> accounts = this.socialMediaDAO.findAccountsWithPlainTextPasswords();
+            int migrated = 0;
+            for (Account account : accounts) {
+                if (Thread.currentThread().isInterrupted()) break;
+                if (this.socialMediaDAO.updatePassword(account, this.credentialVerifier.hash(account.getPassword()))) migrated++;
+            }
+            if (migrated > 0) logger.info("Hashed the plain-text passwords of {} accounts", migrated);
+        } catch (Exception e) {
+            logger.error("Could not hash plain-text passwords", e);
+        }
+    }
+
+    /**
+     * Loads every stored message into the search index. A failure leaves the index with whatever was read, and is
+     * logged rather than thrown so that the API still starts.
+     */
+    private void rebuildSearchIndex() {
+        long start = System.nanoTime();
+        this.searchIndex.clear();
+        try {
+            this.socialMediaDAO.streamMessages(MessageQuery.all(null), this.searchIndex::add);
+            if (logger.isDebugEnabled())
+                logger.debug("Indexed {} messages for search in {} ms", this.searchIndex.size(), (System.nanoTime() - start) / 1_000_000);
+        } catch (Exception e) {
+            logger.error("Could not rebuild the search index", e);
+        }
+    }
+
+    private void validateBatchSize(List<?> items) throws MessageException {
+        if (items == null || items.isEmpty()) throw new MessageException("Batch is empty");
+        if (items.size() > MAX_BATCH_SIZE) throw new MessageException("Batch exceeds " + MAX_BATCH_SIZE + " items");
+    }
+
+    private static List<Integer> distinct(List<Integer> ids) {
+        return new ArrayList<>(new LinkedHashSet<>(ids));
+    }
+
+    private static Map<Integer, Message> byId(List<Message> messages) {
+        Map<Integer, Message> byId = new HashMap<>();
+        for (Message message : messages) byId.put(message.getMessage_id(), message);
+        return byId;
+    }
+
+    private void validatePageLimit(MessageQuery query) throws MessageException {
+        if (query.getLimit() < 1 || query.getLimit() > MAX_PAGE_SIZE) throw new MessageException("Page limit must be between 1 and " + MAX_PAGE_SIZE);
     }
 
     private void validateMessageText(String messageText) throws MessageException {
-        logger.info("Validating message_text meets requirements...");
+        logger.debug("Validating message_text meets requirements...");
         if (messageText == null || messageText.isBlank()) throw new MessageException("Message is blank");
         if (messageText.length() > 255) throw new MessageException("Message exceeds character limit (255)");
     }
-}
\ No newline at end of file
+
+    /**
+     * Stops the password migration, if it is still running, and closes the DAO, stopping any threads and files it
+     * holds.
+     */
+    public void close() throws Exception {
+        this.passwordMigration.interrupt();
+        this.passwordMigration.join(TimeUnit.SECONDS.toMillis(5));
+        this.socialMediaDAO.close();
+    }
+}
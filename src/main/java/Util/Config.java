@@ -0,0 +1,39 @@
+package Util;
+
+/**
+ * The Config class resolves runtime settings for the application. A setting is looked up first as a JVM system
+ * property (e.g. -Dsocialmedia.db.pool=simple) and then as an environment variable, where the property name is
+ * upper-cased and dots are replaced with underscores (e.g. SOCIALMEDIA_DB_POOL=simple). If neither is present, the
+ * supplied default is used.
+ */
+public final class Config {
+
+    private Config() {
+    }
+
+    /**
+     * @param key the property name of the setting
+     * @param defaultValue the value to use when the setting is absent
+     * @return the configured value, or defaultValue
+     */
+    public static String getString(String key, String defaultValue) {
+        String value = System.getProperty(key);
+        if (value == null) value = System.getenv(key.toUpperCase().replace('.', '_'));
+        return value == null || value.isBlank() ? defaultValue : value.trim();
+    }
+
+    public static int getInt(String key, int defaultValue) {
+        String value = getString(key, null);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+
+    public static long getLong(String key, long defaultValue) {
+        String value = getString(key, null);
+        return value == null ? defaultValue : Long.parseLong(value);
+    }
+
+    public static boolean getBoolean(String key, boolean defaultValue) {
+        String value = getString(key, null);
+        return value == null ? defaultValue : Boolean.parseBoolean(value);
+    }
+}
@@ -1,27 +1,44 @@
 package Util;
 
-import java.io.FileNotFoundException;
 import java.io.FileReader;
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.sql.Statement;
+
+import javax.sql.DataSource;
 
 import org.h2.jdbcx.JdbcDataSource;
 import org.h2.tools.RunScript;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
 
 /**
  * The ConnectionUtil class will be utilized to create an active connection to
  * our database. This class utilizes the singleton design pattern. We will be
  * utilizing an in-memory called h2database for the sql demos.
  *
- * DO NOT CHANGE ANYTHING IN THIS CLASS
+ * The DataSource behind getConnection() is chosen by the socialmedia.db.pool setting (see {@link Config}):
+ * "hikari" (the default) uses a bounded HikariCP pool, so closing a connection returns it to the pool instead of
+ * tearing down the physical H2 connection; "simple" uses a bare H2 JdbcDataSource that opens a new connection for
+ * every call.
+ *
+ * Unless socialmedia.db.migrate is false, the schema is brought up to date before the first connection is handed out.
+ * A failed migration stops the class from loading, and with it the app, rather than letting it run on a schema the
+ * DAO does not expect.
  */
 public class ConnectionUtil {
 
+	private static final Logger logger = LoggerFactory.getLogger(ConnectionUtil.class);
+
 	/**
 	 * url will represent our connection string. Since this is an in-memory db, we
 	 * will represent a file location to store the data
 	 */
-	private static String url = "jdbc:h2:./h2/db;";
+	private static String url = Config.getString("socialmedia.db.url", "jdbc:h2:./h2/db;");
 	/**
 	 * Default username for connecting to h2
 	 */
@@ -31,44 +48,114 @@ public class ConnectionUtil {
 	 */
 	private static String password = "sa";
 
+	/**
+	 * Statistics reported by the connection pool. Only populated when the pooled DataSource is in use.
+	 */
+	private static final PoolMetrics poolMetrics = new PoolMetrics();
+
+	/**
+	 * Time spent in {@link #getConnection()}, whichever DataSource is in use.
+	 */
+	private static final LatencyHistogram acquireLatency = Metrics.histogram("socialmedia_db_connection_acquire_seconds",
+		"Time taken to obtain a database connection.", "");
+
 	/**
 	 * DataSource for pooling. Pooling enables the creation of multiple connections when connections are closed.
 	 */
-	private static JdbcDataSource pool = new JdbcDataSource();
+	private static DataSource pool;
 
 	/**
 	 * static initialization block to establish credentials for DataSoure Pool
 	 */
 	static {
-		pool.setURL(url);
-		pool.setUser(username);
-		pool.setPassword(password);
+		if ("simple".equalsIgnoreCase(Config.getString("socialmedia.db.pool", "hikari"))) {
+			JdbcDataSource simple = new JdbcDataSource();
+			simple.setURL(url);
+			simple.setUser(username);
+			simple.setPassword(password);
+			pool = simple;
+		} else {
+			HikariConfig config = new HikariConfig();
+			config.setPoolName("SocialMediaPool");
+			config.setJdbcUrl(url);
+			config.setUsername(username);
+			config.setPassword(password);
+			config.setMinimumIdle(Config.getInt("socialmedia.db.pool.minIdle", 2));
+			config.setMaximumPoolSize(Config.getInt("socialmedia.db.pool.maxSize", 10));
+			config.setIdleTimeout(Config.getLong("socialmedia.db.pool.idleTimeoutMs", 600_000));
+			config.setConnectionTimeout(Config.getLong("socialmedia.db.pool.acquireTimeoutMs", 30_000));
+			config.setLeakDetectionThreshold(Config.getLong("socialmedia.db.pool.leakDetectionMs", 10_000));
+			config.setConnectionTestQuery(Config.getString("socialmedia.db.pool.validationQuery", "select 1"));
+			config.setMetricsTrackerFactory(poolMetrics);
+			pool = new HikariDataSource(config);
+			registerPoolMetrics();
+		}
+		if (Config.getBoolean("socialmedia.db.migrate", true)) {
+			try (Connection connection = getConnection()) {
+				SchemaMigrator.migrate(connection);
+			} catch (SQLException | IOException e) {
+				logger.error("Migrating the database schema failed", e);
+				throw new IllegalStateException("Could not migrate the database schema", e);
+			}
+		}
 	}
 
 	/**
 	 * @return an active connection to the database
+	 * @throws SQLException if no connection could be obtained, for instance because the pool timed out
 	 */
-	public static Connection getConnection() {
+	public static Connection getConnection() throws SQLException {
+		long start = System.nanoTime();
 		try {
 			return pool.getConnection();
 		} catch (SQLException e) {
-			e.printStackTrace();
+			logger.error("Could not obtain a database connection", e);
+			throw e;
+		} finally {
+			acquireLatency.record(System.nanoTime() - start);
 		}
+	}
+
+	/**
+	 * @return the statistics of the connection pool
+	 */
+	public static PoolMetrics getPoolMetrics() {
+		return poolMetrics;
+	}
 
-		return null;
+	/**
+	 * Exports the HikariCP statistics collected by {@link PoolMetrics} on GET /metrics.
+	 */
+	private static void registerPoolMetrics() {
+		String name = "socialmedia_db_connections";
+		String help = "Connections in the pool by state.";
+		Metrics.gauge(name, help, Metrics.labels("state", "active"), poolMetrics::getActiveConnections);
+		Metrics.gauge(name, help, Metrics.labels("state", "idle"), poolMetrics::getIdleConnections);
+		Metrics.gauge(name, help, Metrics.labels("state", "total"), poolMetrics::getTotalConnections);
+		Metrics.gauge("socialmedia_db_pending_threads", "Threads waiting for a connection.", "", poolMetrics::getPendingThreads);
+		Metrics.counter("socialmedia_db_connection_timeouts_total", "Connection requests that timed out.", "", poolMetrics::getAcquireTimeouts);
+		Metrics.counter("socialmedia_db_connections_created_total", "Physical connections opened by the pool.", "", poolMetrics::getConnectionsCreated);
+		Metrics.gauge("socialmedia_db_connection_acquire_max_seconds", "Longest wait for a pooled connection.", "",
+			() -> poolMetrics.getMaxAcquireNanos() / 1e9);
 	}
 
 	/**
 	 * For the purpose of testing, we will need to drop and recreate our database
-	 * tables to keep it consistent across all tests. The method will read the sql
-	 * file in resources. This will be performed before every test.
+	 * tables to keep it consistent across all tests. The method drops every object,
+	 * rebuilds the schema with {@link SchemaMigrator} and then loads the fixture data
+	 * from the sql file in resources. This will be performed before every test.
 	 */
 	public static void resetTestDatabase() {
-		try {
+		try (Connection connection = getConnection()) {
+			try (Statement s = connection.createStatement()) {
+				s.execute("drop all objects;");
+			}
+			SchemaMigrator.migrate(connection);
 			FileReader sqlReader = new FileReader("src/main/resources/SocialMedia.sql");
-			RunScript.execute(getConnection(), sqlReader);
-		} catch (SQLException | FileNotFoundException e) {
-			e.printStackTrace();
+			RunScript.execute(connection, sqlReader);
+		} catch (SQLException | IOException e) {
+			logger.error("Resetting the test database failed", e);
+			throw new IllegalStateException("Could not reset the test database", e);
 		}
 	}
 }
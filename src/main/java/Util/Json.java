@@ -0,0 +1,82 @@
+package Util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+
+import io.javalin.json.JsonMapper;
+import Model.*;
+
+/**
+ * The Json class is the single JSON subsystem of the application. It owns one preconfigured ObjectMapper, so
+ * Jackson's serializer and deserializer caches are built once and shared by every request, along with pre-built
+ * ObjectReader and ObjectWriter instances for the Model classes. The BlackbirdModule replaces reflective getter and
+ * setter calls on the Model classes with generated accessors.
+ *
+ * {@link #JSON_MAPPER} exposes the same mapper to Javalin, so ctx.json() and ctx.bodyAsClass() share its caches too.
+ */
+public final class Json {
+
+    public static final ObjectMapper MAPPER = new ObjectMapper().registerModule(new BlackbirdModule());
+
+    public static final ObjectReader ACCOUNT_READER = MAPPER.readerFor(Account.class);
+    public static final ObjectWriter ACCOUNT_WRITER = MAPPER.writerFor(Account.class);
+    public static final ObjectReader MESSAGE_READER = MAPPER.readerFor(Message.class);
+    public static final ObjectWriter MESSAGE_WRITER = MAPPER.writerFor(Message.class);
+    public static final ObjectReader MESSAGE_LIST_READER = MAPPER.readerFor(new TypeReference<List<Message>>() {});
+    public static final ObjectWriter MESSAGE_LIST_WRITER = MAPPER.writerFor(new TypeReference<List<Message>>() {});
+    public static final ObjectWriter MESSAGE_PAGE_WRITER = MAPPER.writerFor(MessagePage.class);
+    public static final ObjectWriter MESSAGE_RESULT_LIST_WRITER = MAPPER.writerFor(new TypeReference<List<MessageResult>>() {});
+    public static final ObjectReader ID_LIST_READER = MAPPER.readerFor(new TypeReference<List<Integer>>() {});
+    public static final ObjectReader FOLLOW_READER = MAPPER.readerFor(Follow.class);
+    public static final ObjectWriter FOLLOW_WRITER = MAPPER.writerFor(Follow.class);
+
+    /**
+     * Javalin's JsonMapper backed by the shared ObjectMapper. Readers and writers for other types are created on
+     * first use and cached.
+     */
+    public static final JsonMapper JSON_MAPPER = new JsonMapper() {
+        private final Map<Type, ObjectReader> readers = new ConcurrentHashMap<>();
+        private final Map<Type, ObjectWriter> writers = new ConcurrentHashMap<>();
+
+        @Override
+        public String toJsonString(Object obj, Type type) {
+            try {
+                return writers.computeIfAbsent(type, t -> MAPPER.writerFor(MAPPER.constructType(t))).writeValueAsString(obj);
+            } catch (JsonProcessingException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public <T> T fromJsonString(String json, Type type) {
+            try {
+                return readers.computeIfAbsent(type, t -> MAPPER.readerFor(MAPPER.constructType(t))).readValue(json);
+            } catch (JsonProcessingException e) {
+                throw new IllegalArgumentException(e);
+            }
+        }
+
+        @Override
+        public <T> T fromJsonStream(InputStream json, Type type) {
+            try {
+                return readers.computeIfAbsent(type, t -> MAPPER.readerFor(MAPPER.constructType(t))).readValue(json);
+            } catch (IOException e) {
+                throw new IllegalArgumentException(e);
+            }
+        }
+    };
+
+    private Json() {
+    }
+}
@@ -0,0 +1,98 @@
+package Util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The LatencyHistogram records durations in nanoseconds into log-linear buckets, in the manner of an HdrHistogram:
+ * every power of two is split into 32 equal sub-buckets, so a reported percentile is within about 3% of the true
+ * value across the whole range from 1ns to about two minutes (longer durations are counted in the last bucket).
+ *
+ * Recording is a single atomic increment of one bucket plus two LongAdder updates; there are no locks, and the
+ * histogram never allocates after construction. Percentiles are computed from a pass over the buckets when they are
+ * read, so reads are slower than writes, which suits a metrics scrape every few seconds.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * The largest recordable duration, 2^37 - 1 nanoseconds (about 137 seconds).
+     */
+    private static final long MAX_VALUE = (1L << 37) - 1;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(bucketIndex(MAX_VALUE) + 1);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        this.buckets.incrementAndGet(bucketIndex(Math.min(nanos, MAX_VALUE)));
+        this.count.increment();
+        this.sum.add(nanos);
+        if (nanos > this.max.get()) this.max.accumulateAndGet(nanos, Math::max);
+    }
+
+    public void record(long duration, TimeUnit unit) {
+        record(unit.toNanos(duration));
+    }
+
+    public long getCount() {
+        return this.count.sum();
+    }
+
+    /**
+     * @return the sum of all recorded durations, in nanoseconds
+     */
+    public long getSum() {
+        return this.sum.sum();
+    }
+
+    /**
+     * @return the longest recorded duration, in nanoseconds
+     */
+    public long getMax() {
+        return this.max.get();
+    }
+
+    /**
+     * @param quantile a value between 0 and 1, e.g. 0.99 for the 99th percentile
+     * @return the upper bound of the bucket holding the given quantile, in nanoseconds, or 0 if nothing was recorded
+     */
+    public long getValueAtQuantile(double quantile) {
+        int length = this.buckets.length();
+        long[] snapshot = new long[length];
+        long total = 0;
+        for (int i = 0; i < length; i++) {
+            snapshot[i] = this.buckets.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < length; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) return Math.min(bucketUpperBound(i), this.max.get());
+        }
+        return this.max.get();
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) - SUB_BUCKETS;
+        return (shift + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKETS) return index;
+        int shift = index / SUB_BUCKETS - 1;
+        long mantissa = SUB_BUCKETS + index % SUB_BUCKETS;
+        return ((mantissa + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,270 @@
+package Util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import Model.*;
+
+/**
+ * The MessageCodec is a compact binary encoding of {@link Message}, in the Protocol Buffers wire format so that any
+ * protobuf library can read it with the schema in src/main/resources/message.proto:
+ *
+ *   message Message { int32 message_id = 1; int32 posted_by = 2; string message_text = 3; int64 time_posted_epoch = 4; }
+ *   message MessageList { repeated Message messages = 1; }
+ *   message MessagePage { repeated Message messages = 1; string next = 2; }
+ *
+ * Each field is a one-byte tag followed by a varint, or for message_text a varint length and the UTF-8 bytes, so a
+ * typical message costs its text plus about 15 bytes, against about 80 bytes of field names and punctuation in
+ * JSON. A list is its messages one after another, each behind a tag and length, so it can be written as the messages
+ * are read. Fields that are 0 or null are left out, as protobuf does, and fields the decoder does not know are
+ * skipped.
+ *
+ * It is served as {@link #CONTENT_TYPE} by the message endpoints and used for the message records of the
+ * write-ahead log.
+ */
+public final class MessageCodec {
+
+    public static final String CONTENT_TYPE = "application/x-protobuf";
+
+    private static final int VARINT = 0;
+    private static final int FIXED64 = 1;
+    private static final int LENGTH_DELIMITED = 2;
+    private static final int FIXED32 = 5;
+
+    private static final int MESSAGE_ID = 1 << 3 | VARINT;
+    private static final int POSTED_BY = 2 << 3 | VARINT;
+    private static final int MESSAGE_TEXT = 3 << 3 | LENGTH_DELIMITED;
+    private static final int TIME_POSTED_EPOCH = 4 << 3 | VARINT;
+    private static final int MESSAGES = 1 << 3 | LENGTH_DELIMITED;
+    private static final int NEXT = 2 << 3 | LENGTH_DELIMITED;
+
+    private MessageCodec() {
+    }
+
+    /**
+     * @return the number of bytes {@link #write(ByteBuffer, Message)} writes for the message
+     */
+    public static int size(Message message) {
+        return size(message, text(message));
+    }
+
+    private static int size(Message message, byte[] text) {
+        int size = 0;
+        if (message.getMessage_id() != 0) size += 1 + varintSize(message.getMessage_id());
+        if (message.getPosted_by() != 0) size += 1 + varintSize(message.getPosted_by());
+        if (text != null) size += 1 + varintSize(text.length) + text.length;
+        if (message.getTime_posted_epoch() != 0) size += 1 + varintSize(message.getTime_posted_epoch());
+        return size;
+    }
+
+    public static void write(ByteBuffer out, Message message) {
+        write(out, message, text(message));
+    }
+
+    private static void write(ByteBuffer out, Message message, byte[] text) {
+        if (message.getMessage_id() != 0) putVarint(out.put((byte) MESSAGE_ID), message.getMessage_id());
+        if (message.getPosted_by() != 0) putVarint(out.put((byte) POSTED_BY), message.getPosted_by());
+        if (text != null) putVarint(out.put((byte) MESSAGE_TEXT), text.length).put(text);
+        if (message.getTime_posted_epoch() != 0) putVarint(out.put((byte) TIME_POSTED_EPOCH), message.getTime_posted_epoch());
+    }
+
+    /**
+     * Reads a message from the position of in up to its limit.
+     * @throws IllegalArgumentException if the bytes are not a valid message
+     */
+    public static Message read(ByteBuffer in) {
+        Message message = new Message();
+        try {
+            while (in.hasRemaining()) {
+                int tag = (int) getVarint(in);
+                switch (tag) {
+                    case MESSAGE_ID:
+                        message.setMessage_id((int) getVarint(in));
+                        break;
+                    case POSTED_BY:
+                        message.setPosted_by((int) getVarint(in));
+                        break;
+                    case MESSAGE_TEXT:
+                        message.setMessage_text(getString(in));
+                        break;
+                    case TIME_POSTED_EPOCH:
+                        message.setTime_posted_epoch(getVarint(in));
+                        break;
+                    default:
+                        skip(in, tag);
+                }
+            }
+            return message;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Truncated protobuf message", e);
+        }
+    }
+
+    public static byte[] encode(Message message) {
+        byte[] text = text(message);
+        ByteBuffer out = ByteBuffer.allocate(size(message, text));
+        write(out, message, text);
+        return out.array();
+    }
+
+    public static Message decode(byte[] bytes) {
+        return read(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * @return the messages as a MessageList
+     */
+    public static byte[] encodeList(List<Message> messages) {
+        ByteBuffer out = ByteBuffer.allocate(256);
+        for (Message message : messages) out = putEntry(out, message);
+        return Arrays.copyOf(out.array(), out.position());
+    }
+
+    /**
+     * @return the messages of a MessageList, or of a MessagePage without its next cursor
+     */
+    public static List<Message> decodeList(byte[] bytes) {
+        return decodePage(bytes).getMessages();
+    }
+
+    public static MessagePage decodePage(byte[] bytes) {
+        ByteBuffer in = ByteBuffer.wrap(bytes);
+        List<Message> messages = new ArrayList<>();
+        String next = null;
+        try {
+            while (in.hasRemaining()) {
+                int tag = (int) getVarint(in);
+                if (tag == MESSAGES) {
+                    int length = (int) getVarint(in);
+                    ByteBuffer entry = in.duplicate();
+                    entry.limit(in.position() + length);
+                    messages.add(read(entry));
+                    in.position(in.position() + length);
+                } else if (tag == NEXT) {
+                    next = getString(in);
+                } else {
+                    skip(in, tag);
+                }
+            }
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Truncated protobuf message list", e);
+        }
+        return new MessagePage(messages, next);
+    }
+
+    /**
+     * Writes one element of a MessageList or MessagePage to a stream, so a list can be sent as it is read.
+     * @param buffer a scratch buffer, returned grown if the message did not fit
+     * @return the scratch buffer to pass to the next call
+     */
+    public static ByteBuffer writeEntry(OutputStream out, Message message, ByteBuffer buffer) throws IOException {
+        buffer.clear();
+        buffer = putEntry(buffer, message);
+        out.write(buffer.array(), 0, buffer.position());
+        return buffer;
+    }
+
+    /**
+     * Writes the next cursor of a MessagePage to a stream, after its messages.
+     */
+    public static void writeNext(OutputStream out, String next) throws IOException {
+        if (next == null) return;
+        byte[] bytes = next.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(1 + varintSize(bytes.length) + bytes.length);
+        putVarint(buffer.put((byte) NEXT), bytes.length).put(bytes);
+        out.write(buffer.array());
+    }
+
+    /**
+     * Appends the message to a heap buffer as a tagged, length-delimited entry, growing the buffer if needed.
+     */
+    private static ByteBuffer putEntry(ByteBuffer out, Message message) {
+        byte[] text = text(message);
+        int size = size(message, text);
+        int needed = 1 + varintSize(size) + size;
+        if (out.remaining() < needed) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(out.capacity() * 2, out.position() + needed));
+            out.flip();
+            out = larger.put(out);
+        }
+        putVarint(out.put((byte) MESSAGES), size);
+        write(out, message, text);
+        return out;
+    }
+
+    private static byte[] text(Message message) {
+        return message.getMessage_text() == null ? null : message.getMessage_text().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Negative ints are sign-extended to 64 bits, as protobuf does for int32 fields.
+     */
+    private static int varintSize(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    private static ByteBuffer putVarint(ByteBuffer out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        return out.put((byte) value);
+    }
+
+    private static long getVarint(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+
+    private static String getString(ByteBuffer in) {
+        int length = (int) getVarint(in);
+        if (length < 0 || length > in.remaining()) throw new IllegalArgumentException("Malformed string length " + length);
+        if (in.hasArray()) {
+            String value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+            in.position(in.position() + length);
+            return value;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Skips a field this codec does not know, by its wire type.
+     */
+    private static void skip(ByteBuffer in, int tag) {
+        switch (tag & 7) {
+            case VARINT:
+                getVarint(in);
+                break;
+            case FIXED64:
+                in.position(in.position() + 8);
+                break;
+            case LENGTH_DELIMITED:
+                int length = (int) getVarint(in);
+                in.position(in.position() + length);
+                break;
+            case FIXED32:
+                in.position(in.position() + 4);
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported protobuf wire type " + (tag & 7));
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package Util;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+/**
+ * The Metrics class is the process-wide registry behind GET /metrics. Metrics are grouped into families by name,
+ * and each family holds one series per label set. A series is one of three kinds:
+ *
+ * a LongAdder counter, incremented by the code that owns it;
+ * a {@link LatencyHistogram}, exported as a Prometheus summary with p50, p99 and p999 quantiles in seconds;
+ * a DoubleSupplier, read at scrape time, for values another component already keeps (pool and cache statistics).
+ *
+ * Callers look a counter or histogram up once and keep the reference, so recording never touches the registry.
+ * Registering the same name and labels again returns the existing counter or histogram, and replaces a supplier.
+ */
+public final class Metrics {
+
+    /**
+     * The Content-Type of the Prometheus text exposition format.
+     */
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static final double[] QUANTILES = {0.5, 0.99, 0.999};
+
+    private static final Map<String, Family> families = new ConcurrentSkipListMap<>();
+
+    private static class Family {
+        final String help;
+        final String type;
+        final Map<String, Object> series = new ConcurrentSkipListMap<>();
+
+        Family(String help, String type) {
+            this.help = help;
+            this.type = type;
+        }
+    }
+
+    private Metrics() {
+    }
+
+    public static LongAdder counter(String name, String help, String labels) {
+        return (LongAdder) family(name, help, "counter").series.computeIfAbsent(labels, key -> new LongAdder());
+    }
+
+    /**
+     * Registers a counter whose value is maintained elsewhere and read when the metrics are scraped.
+     */
+    public static void counter(String name, String help, String labels, DoubleSupplier value) {
+        family(name, help, "counter").series.put(labels, value);
+    }
+
+    public static void gauge(String name, String help, String labels, DoubleSupplier value) {
+        family(name, help, "gauge").series.put(labels, value);
+    }
+
+    /**
+     * @param name the metric name, which should end in _seconds since durations are exported in seconds
+     */
+    public static LatencyHistogram histogram(String name, String help, String labels) {
+        return (LatencyHistogram) family(name, help, "summary").series.computeIfAbsent(labels, key -> new LatencyHistogram());
+    }
+
+    /**
+     * Formats label pairs for the registration methods, e.g. labels("method", "GET", "route", "/messages") returns
+     * method="GET",route="/messages".
+     */
+    public static String labels(String... namesAndValues) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            if (i > 0) builder.append(',');
+            builder.append(namesAndValues[i]).append("=\"");
+            String value = namesAndValues[i + 1];
+            for (int j = 0; j < value.length(); j++) {
+                char c = value.charAt(j);
+                if (c == '\\' || c == '"') builder.append('\\').append(c);
+                else if (c == '\n') builder.append("\\n");
+                else builder.append(c);
+            }
+            builder.append('"');
+        }
+        return builder.toString();
+    }
+
+    /**
+     * @return every registered metric in the Prometheus text exposition format
+     */
+    public static String scrape() {
+        StringBuilder out = new StringBuilder(8192);
+        for (Map.Entry<String, Family> entry : families.entrySet()) {
+            String name = entry.getKey();
+            Family family = entry.getValue();
+            out.append("# HELP ").append(name).append(' ').append(family.help).append('\n');
+            out.append("# TYPE ").append(name).append(' ').append(family.type).append('\n');
+            for (Map.Entry<String, Object> series : family.series.entrySet()) {
+                String labels = series.getKey();
+                Object value = series.getValue();
+                if (value instanceof LatencyHistogram) {
+                    LatencyHistogram histogram = (LatencyHistogram) value;
+                    for (double quantile : QUANTILES) {
+                        String quantileLabel = "quantile=\"" + quantile + "\"";
+                        sample(out, name, labels.isEmpty() ? quantileLabel : labels + "," + quantileLabel,
+                            seconds(histogram.getValueAtQuantile(quantile)));
+                    }
+                    sample(out, name + "_sum", labels, seconds(histogram.getSum()));
+                    sample(out, name + "_count", labels, Long.toString(histogram.getCount()));
+                } else if (value instanceof LongAdder) {
+                    sample(out, name, labels, Long.toString(((LongAdder) value).sum()));
+                } else {
+                    sample(out, name, labels, format(((DoubleSupplier) value).getAsDouble()));
+                }
+            }
+        }
+        return out.toString();
+    }
+
+    private static Family family(String name, String help, String type) {
+        Family family = families.computeIfAbsent(name, key -> new Family(help, type));
+        if (!family.type.equals(type))
+            throw new IllegalArgumentException("Metric " + name + " is already registered as a " + family.type);
+        return family;
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, String value) {
+        out.append(name);
+        if (!labels.isEmpty()) out.append('{').append(labels).append('}');
+        out.append(' ').append(value).append('\n');
+    }
+
+    private static String seconds(long nanos) {
+        return format(nanos / (double) TimeUnit.SECONDS.toNanos(1));
+    }
+
+    private static String format(double value) {
+        if (value == Math.rint(value) && !Double.isInfinite(value)) return Long.toString((long) value);
+        return Double.toString(value);
+    }
+}
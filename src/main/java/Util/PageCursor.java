@@ -0,0 +1,60 @@
+package Util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * The PageCursor class encodes the position of a keyset-paginated listing into an opaque, URL-safe token. Clients
+ * hand the token back unchanged to fetch the next page; its contents are not part of the API.
+ */
+public final class PageCursor {
+
+    private static final String VERSION = "v1";
+
+    /**
+     * The last message_id the client has seen, or for a ranked listing such as search, the number of results it
+     * has seen.
+     */
+    private final int after;
+    /**
+     * The lower time_posted_epoch bound of the listing, or null.
+     */
+    private final Long since;
+
+    public PageCursor(int after, Long since) {
+        this.after = after;
+        this.since = since;
+    }
+
+    public int getAfter() {
+        return after;
+    }
+
+    public Long getSince() {
+        return since;
+    }
+
+    /**
+     * @return the opaque token for this cursor
+     */
+    public String encode() {
+        String raw = VERSION + ":" + after + ":" + (since == null ? "" : since);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param token a token previously produced by {@link #encode()}
+     * @return the decoded cursor
+     * @throws IllegalArgumentException if the token is malformed
+     */
+    public static PageCursor decode(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            String[] parts = raw.split(":", -1);
+            if (parts.length != 3 || !VERSION.equals(parts[0])) throw new IllegalArgumentException("Unrecognized cursor");
+            return new PageCursor(Integer.parseInt(parts[1]), parts[2].isEmpty() ? null : Long.parseLong(parts[2]));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor `" + token + "`", e);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package Util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+/**
+ * The PasswordHasher derives password hashes with PBKDF2-HMAC-SHA256 and a random 16 byte salt per password. A hash
+ * is stored as pbkdf2-sha256$iterations$salt$hash, with salt and hash in unpadded Base64, so every stored hash
+ * carries the cost it was made with and raising socialmedia.auth.pbkdf2.iterations (default 210000) does not
+ * invalidate existing passwords; {@link #needsRehash(String)} tells the caller when one should be re-derived.
+ *
+ * Anything stored without the prefix is taken to be a plain-text password from before hashing was introduced, and
+ * is compared in constant time, so such accounts can still log in until they are migrated.
+ */
+public class PasswordHasher {
+
+    public static final String PREFIX = "pbkdf2-sha256$";
+
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+
+    private static final Base64.Encoder ENCODER = Base64.getEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getDecoder();
+
+    private final int iterations;
+    private final SecureRandom random = new SecureRandom();
+
+    public PasswordHasher() {
+        this(Config.getInt("socialmedia.auth.pbkdf2.iterations", 210_000));
+    }
+
+    public PasswordHasher(int iterations) {
+        if (iterations < 1) throw new IllegalArgumentException("PBKDF2 iterations must be positive");
+        this.iterations = iterations;
+    }
+
+    public int getIterations() {
+        return this.iterations;
+    }
+
+    /**
+     * @return the salted hash of password in the stored format, derived at the configured cost
+     */
+    public String hash(String password) {
+        byte[] salt = new byte[SALT_BYTES];
+        this.random.nextBytes(salt);
+        byte[] hash = derive(password, salt, this.iterations);
+        return PREFIX + this.iterations + '$' + ENCODER.encodeToString(salt) + '$' + ENCODER.encodeToString(hash);
+    }
+
+    /**
+     * @param stored a hash in the stored format, or a legacy plain-text password
+     * @return true if password matches what is stored
+     */
+    public boolean verify(String password, String stored) {
+        if (password == null || stored == null) return false;
+        if (!isHashed(stored)) return MessageDigest.isEqual(password.getBytes(StandardCharsets.UTF_8), stored.getBytes(StandardCharsets.UTF_8));
+        String[] parts = stored.substring(PREFIX.length()).split("\\$");
+        if (parts.length != 3) return false;
+        try {
+            byte[] salt = DECODER.decode(parts[1]);
+            byte[] expected = DECODER.decode(parts[2]);
+            return MessageDigest.isEqual(expected, derive(password, salt, Integer.parseInt(parts[0])));
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return true if stored is a plain-text password or was hashed at a different cost than the configured one
+     */
+    public boolean needsRehash(String stored) {
+        if (!isHashed(stored)) return true;
+        int end = stored.indexOf('$', PREFIX.length());
+        return end < 0 || !stored.substring(PREFIX.length(), end).equals(Integer.toString(this.iterations));
+    }
+
+    public static boolean isHashed(String stored) {
+        return stored != null && stored.startsWith(PREFIX);
+    }
+
+    private static byte[] derive(String password, byte[] salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, HASH_BITS);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(ALGORITHM + " is not available", e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+}
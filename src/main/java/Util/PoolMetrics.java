@@ -0,0 +1,111 @@
+package Util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+
+/**
+ * The PoolMetrics class collects connection pool statistics reported by HikariCP: how long callers wait to acquire
+ * a connection, how often that wait times out, and how long connections are held. All recorders are lock-free so
+ * they can be updated from every request thread.
+ */
+public class PoolMetrics implements MetricsTrackerFactory {
+
+    private final LongAdder acquireCount = new LongAdder();
+    private final LongAdder acquireNanos = new LongAdder();
+    private final AtomicLong maxAcquireNanos = new AtomicLong();
+    private final LongAdder acquireTimeouts = new LongAdder();
+    private final LongAdder connectionsCreated = new LongAdder();
+    private final LongAdder usageMillis = new LongAdder();
+
+    private volatile PoolStats poolStats;
+
+    @Override
+    public IMetricsTracker create(String poolName, PoolStats poolStats) {
+        this.poolStats = poolStats;
+        return new IMetricsTracker() {
+            @Override
+            public void recordConnectionCreatedMillis(long connectionCreatedMillis) {
+                connectionsCreated.increment();
+            }
+
+            @Override
+            public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+                acquireCount.increment();
+                acquireNanos.add(elapsedAcquiredNanos);
+                maxAcquireNanos.accumulateAndGet(elapsedAcquiredNanos, Math::max);
+            }
+
+            @Override
+            public void recordConnectionUsageMillis(long elapsedBorrowedMillis) {
+                usageMillis.add(elapsedBorrowedMillis);
+            }
+
+            @Override
+            public void recordConnectionTimeout() {
+                acquireTimeouts.increment();
+            }
+        };
+    }
+
+    /**
+     * @return the number of connections handed out by the pool
+     */
+    public long getAcquireCount() {
+        return acquireCount.sum();
+    }
+
+    /**
+     * @return the total time, in nanoseconds, callers have spent waiting for a connection
+     */
+    public long getAcquireNanos() {
+        return acquireNanos.sum();
+    }
+
+    /**
+     * @return the longest single wait, in nanoseconds, for a connection
+     */
+    public long getMaxAcquireNanos() {
+        return maxAcquireNanos.get();
+    }
+
+    /**
+     * @return the number of acquire attempts that gave up after the configured connection timeout
+     */
+    public long getAcquireTimeouts() {
+        return acquireTimeouts.sum();
+    }
+
+    /**
+     * @return the number of physical connections opened by the pool
+     */
+    public long getConnectionsCreated() {
+        return connectionsCreated.sum();
+    }
+
+    /**
+     * @return the total time, in milliseconds, connections have been borrowed from the pool
+     */
+    public long getUsageMillis() {
+        return usageMillis.sum();
+    }
+
+    public int getActiveConnections() {
+        return poolStats == null ? 0 : poolStats.getActiveConnections();
+    }
+
+    public int getIdleConnections() {
+        return poolStats == null ? 0 : poolStats.getIdleConnections();
+    }
+
+    public int getTotalConnections() {
+        return poolStats == null ? 0 : poolStats.getTotalConnections();
+    }
+
+    public int getPendingThreads() {
+        return poolStats == null ? 0 : poolStats.getPendingThreads();
+    }
+}
@@ -0,0 +1,106 @@
+package Util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.h2.tools.RunScript;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The SchemaMigrator brings the database schema up to date with the versioned migration scripts on the classpath.
+ * Migrations live at db/migration/V1.sql, db/migration/V2.sql, ... and are applied in order, each exactly once. The
+ * first line of a script is a `--` comment describing it. Applied versions are recorded in the schema_version table,
+ * so migrate() is cheap to call on every startup.
+ *
+ * Each script runs in one transaction together with the insert of its schema_version row, and a script that fails is
+ * rolled back with its version left unrecorded, so the next startup runs it again. H2 commits most DDL statements on
+ * its own, though, so a failed script may still leave some of its tables or indexes behind; that is why every script
+ * is written to be re-run safely ("if not exists").
+ *
+ * Never edit a migration that has been released; add a new one instead.
+ */
+public final class SchemaMigrator {
+
+    private static final Logger logger = LoggerFactory.getLogger(SchemaMigrator.class);
+
+    private static final String LOCATION = "db/migration/V%d.sql";
+
+    private SchemaMigrator() {
+    }
+
+    /**
+     * Applies every migration newer than the current schema version.
+     * @return the schema version after migrating
+     */
+    public static int migrate(Connection connection) throws SQLException, IOException {
+        return migrate(connection, SchemaMigrator.class.getClassLoader());
+    }
+
+    /**
+     * Applies every migration newer than the current schema version, reading the scripts through the class loader.
+     * @return the schema version after migrating
+     */
+    public static synchronized int migrate(Connection connection, ClassLoader loader) throws SQLException, IOException {
+        try (Statement s = connection.createStatement()) {
+            s.execute("create table if not exists schema_version (version int primary key, description varchar(255), installed_on timestamp default current_timestamp);");
+        }
+        int version = currentVersion(connection);
+        while (true) {
+            int next = version + 1;
+            try (InputStream script = loader.getResourceAsStream(String.format(LOCATION, next))) {
+                if (script == null) return version;
+                String sql = new String(script.readAllBytes(), StandardCharsets.UTF_8);
+                String description = describe(sql);
+                logger.info("Applying schema migration V{}: {}", next, description);
+                apply(connection, next, description, sql);
+                version = next;
+            }
+        }
+    }
+
+    /**
+     * Runs the script and records its version in one transaction, rolling both back if either fails.
+     */
+    private static void apply(Connection connection, int version, String description, String sql) throws SQLException {
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try {
+            RunScript.execute(connection, new StringReader(sql));
+            try (PreparedStatement p = connection.prepareStatement("insert into schema_version (version, description) values (?, ?);")) {
+                p.setInt(1, version);
+                p.setString(2, description);
+                p.executeUpdate();
+            }
+            connection.commit();
+        } catch (SQLException | RuntimeException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    /**
+     * @return the highest applied migration version, or 0 for an empty database
+     */
+    public static int currentVersion(Connection connection) throws SQLException {
+        try (Statement s = connection.createStatement();
+            ResultSet r = s.executeQuery("select coalesce(max(version), 0) from schema_version;")) {
+            r.next();
+            return r.getInt(1);
+        }
+    }
+
+    private static String describe(String script) {
+        String first = script.lines().findFirst().orElse("").trim();
+        return first.startsWith("--") ? first.substring(2).trim() : "";
+    }
+}
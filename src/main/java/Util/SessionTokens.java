@@ -0,0 +1,85 @@
+package Util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * The SessionTokens class issues and checks the self-contained tokens handed out by POST /login. A token is
+ * account_id.expires.signature, where expires is in epoch seconds and signature is the unpadded Base64url
+ * HMAC-SHA256 of account_id.expires. Checking a token needs no storage and no database: it is one HMAC over a few
+ * bytes and a constant-time comparison.
+ *
+ * The key is read as Base64 from socialmedia.auth.tokenSecret. Without one a random key is generated, so tokens stop
+ * being accepted when the process restarts and are not accepted by other instances. Tokens are valid for
+ * socialmedia.auth.tokenTtlSeconds (default 3600).
+ */
+public class SessionTokens {
+
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+
+    private final SecretKeySpec key;
+    private final long timeToLiveSeconds;
+
+    public SessionTokens() {
+        this(secret(Config.getString("socialmedia.auth.tokenSecret", null)), Config.getLong("socialmedia.auth.tokenTtlSeconds", 3_600));
+    }
+
+    public SessionTokens(byte[] secret, long timeToLiveSeconds) {
+        this.key = new SecretKeySpec(secret, ALGORITHM);
+        this.timeToLiveSeconds = timeToLiveSeconds;
+    }
+
+    private static byte[] secret(String configured) {
+        if (configured != null) return Base64.getDecoder().decode(configured);
+        byte[] secret = new byte[32];
+        new SecureRandom().nextBytes(secret);
+        return secret;
+    }
+
+    /**
+     * @return a token for the account that expires after the configured time to live
+     */
+    public String issue(int account_id) {
+        String claims = account_id + "." + (System.currentTimeMillis() / 1000 + this.timeToLiveSeconds);
+        return claims + "." + ENCODER.encodeToString(sign(claims));
+    }
+
+    /**
+     * @return the account_id the token was issued to, or 0 if the token is malformed, was not signed with this key or
+     * has expired
+     */
+    public int verify(String token) {
+        if (token == null) return 0;
+        int firstDot = token.indexOf('.');
+        int lastDot = token.lastIndexOf('.');
+        if (firstDot <= 0 || lastDot <= firstDot + 1) return 0;
+        String claims = token.substring(0, lastDot);
+        byte[] signature = token.substring(lastDot + 1).getBytes(StandardCharsets.US_ASCII);
+        if (!MessageDigest.isEqual(signature, ENCODER.encode(sign(claims)))) return 0;
+        try {
+            int account_id = Integer.parseInt(token, 0, firstDot, 10);
+            long expires = Long.parseLong(token, firstDot + 1, lastDot, 10);
+            return expires >= System.currentTimeMillis() / 1000 && account_id > 0 ? account_id : 0;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private byte[] sign(String claims) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(this.key);
+            return mac.doFinal(claims.getBytes(StandardCharsets.US_ASCII));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(ALGORITHM + " is not available", e);
+        }
+    }
+}
@@ -0,0 +1,3 @@
+-- index message listings by poster and by time
+create index if not exists message_posted_by_message_id on message (posted_by, message_id);
+create index if not exists message_time_posted_epoch_message_id on message (time_posted_epoch, message_id);
@@ -0,0 +1,9 @@
+-- create follow table for the follow graph
+create table if not exists follow (
+    follower_id int,
+    followee_id int,
+    primary key (follower_id, followee_id),
+    foreign key (follower_id) references account(account_id),
+    foreign key (followee_id) references account(account_id)
+);
+create index if not exists follow_followee_id_follower_id on follow (followee_id, follower_id);
@@ -0,0 +1,2 @@
+-- add a version to message, incremented by every update, for HTTP ETags
+alter table message add column if not exists version int not null default 1;
@@ -0,0 +1,136 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Model.MessageResult;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class BulkMessagesTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending a mix of valid and invalid messages to POST localhost:8080/messages/batch
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: one result per message, in order; only the valid messages are created
+     */
+    @Test
+    public void createBatchReportsEachItem() throws IOException, InterruptedException {
+        HttpResponse<String> response = send("POST", "messages/batch", "[" +
+                "{\"posted_by\":1,\"message_text\":\"first\",\"time_posted_epoch\":1669947800}," +
+                "{\"posted_by\":1,\"message_text\":\"\",\"time_posted_epoch\":1669947801}," +
+                "{\"posted_by\":404,\"message_text\":\"unknown poster\",\"time_posted_epoch\":1669947802}," +
+                "{\"posted_by\":1,\"message_text\":\"second\",\"time_posted_epoch\":1669947803}]");
+        Assert.assertEquals(200, response.statusCode());
+        List<MessageResult> results = readResults(response);
+        Assert.assertEquals(Arrays.asList(
+                MessageResult.ok(new Message(2, 1, "first", 1669947800)),
+                MessageResult.failed(400, "Message is blank"),
+                MessageResult.failed(400, "Invalid posted_by user account ID"),
+                MessageResult.ok(new Message(3, 1, "second", 1669947803))), results);
+
+        Message[] all = objectMapper.readValue(send("GET", "messages", null).body(), Message[].class);
+        Assert.assertEquals(3, all.length);
+    }
+
+    /**
+     * Sending a request to GET localhost:8080/messages?ids=2,1,99
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the messages in the requested order, and a 404 result for the missing id
+     */
+    @Test
+    public void getByIdsKeepsRequestedOrder() throws IOException, InterruptedException {
+        send("POST", "messages", "{\"posted_by\":1,\"message_text\":\"second message\",\"time_posted_epoch\":1669947800}");
+        HttpResponse<String> response = send("GET", "messages?ids=2,1,99", null);
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals(Arrays.asList(
+                MessageResult.ok(new Message(2, 1, "second message", 1669947800)),
+                MessageResult.ok(new Message(1, 1, "test message 1", 1669947792)),
+                MessageResult.failed(404, "Message not found")), readResults(response));
+
+        Assert.assertEquals(400, send("GET", "messages?ids=1,x", null).statusCode());
+    }
+
+    /**
+     * Sending a request to DELETE localhost:8080/messages/batch with the ids [1, 99]
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the deleted message, and a 404 result for the missing id
+     */
+    @Test
+    public void deleteBatchReportsEachItem() throws IOException, InterruptedException {
+        HttpResponse<String> response = send("DELETE", "messages/batch", "[1, 99]");
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals(Arrays.asList(
+                MessageResult.ok(new Message(1, 1, "test message 1", 1669947792)),
+                MessageResult.failed(404, "Message not found")), readResults(response));
+        Assert.assertEquals("", send("GET", "messages/1", null).body());
+    }
+
+    /**
+     * An empty batch is rejected.
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void emptyBatchIsRejected() throws IOException, InterruptedException {
+        Assert.assertEquals(400, send("POST", "messages/batch", "[]").statusCode());
+        Assert.assertEquals(400, send("DELETE", "messages/batch", "[]").statusCode());
+    }
+
+    private List<MessageResult> readResults(HttpResponse<String> response) throws IOException {
+        return objectMapper.readValue(response.body(), new TypeReference<List<MessageResult>>() {});
+    }
+
+    private HttpResponse<String> send(String method, String path, String body) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/" + path))
+                .method(method, body == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(body))
+                .header("Content-Type", "application/json")
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,100 @@
+import java.time.Duration;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.CachingSocialMediaDAO;
+import DAO.ISocialMediaDAO;
+import DAO.InMemorySocialMediaDAO;
+import Model.Account;
+import Model.Message;
+
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class CachingDAOTest {
+    InMemorySocialMediaDAO store;
+    CachingSocialMediaDAO dao;
+
+    /**
+     * Before every test, put a caching DAO in front of a spied in-memory store holding one account and two messages.
+     */
+    @Before
+    public void setUp() throws Exception {
+        store = spy(new InMemorySocialMediaDAO());
+        store.createAccount(new Account("testuser1", "password"));
+        store.createMessages(Arrays.asList(new Message(1, "first", 1669947800), new Message(1, "second", 1669947801)));
+        dao = new CachingSocialMediaDAO(store, 100, Duration.ofMinutes(1), 100, Duration.ofMinutes(1));
+    }
+
+    /**
+     * A message read twice is loaded from the store once, and the copy handed out can be changed without changing
+     * the cached one.
+     */
+    @Test
+    public void messageIsServedFromCache() throws Exception {
+        dao.findMessage(1).setMessage_text("changed by the caller");
+        Assert.assertEquals("first", dao.findMessage(1).getMessage_text());
+        verify(store, times(1)).findMessage(1);
+    }
+
+    /**
+     * An update through the DAO invalidates the cached message, so the next read sees the new text.
+     */
+    @Test
+    public void updateInvalidatesMessage() throws Exception {
+        dao.findMessage(1);
+        dao.updateMessage(new Message(1, 1, "updated", 0), ISocialMediaDAO.ANY_ACCOUNT);
+        Assert.assertEquals("updated", dao.findMessage(1).getMessage_text());
+        verify(store, times(2)).findMessage(1);
+    }
+
+    /**
+     * Deleting one message, or a batch, invalidates the cached messages.
+     */
+    @Test
+    public void deleteInvalidatesMessages() throws Exception {
+        dao.findMessage(1);
+        dao.findMessage(2);
+        dao.deleteMessage(1, ISocialMediaDAO.ANY_ACCOUNT);
+        Assert.assertNull(dao.findMessage(1));
+        dao.deleteMessages(Arrays.asList(2), ISocialMediaDAO.ANY_ACCOUNT);
+        Assert.assertNull(dao.findMessage(2));
+    }
+
+    /**
+     * A message created through the DAO is cached as it was stored.
+     */
+    @Test
+    public void createCachesMessage() throws Exception {
+        Message created = dao.createMessage(new Message(1, "third", 1669947802));
+        Assert.assertEquals(created, dao.findMessage(created.getMessage_id()));
+        verify(store, times(0)).findMessage(created.getMessage_id());
+    }
+
+    /**
+     * An unknown username is not cached, so the account registered under it is found at once, and is then served
+     * from the cache.
+     */
+    @Test
+    public void registerIsSeenByLookup() throws Exception {
+        Assert.assertNull(dao.findAccount("testuser2"));
+        Account created = dao.createAccount(new Account("testuser2", "password"));
+        Assert.assertEquals(created, dao.findAccount("testuser2"));
+        verify(store, times(1)).findAccount("testuser2");
+    }
+
+    /**
+     * A password change through the DAO invalidates the cached account.
+     */
+    @Test
+    public void passwordUpdateInvalidatesAccount() throws Exception {
+        Account account = dao.findAccount("testuser1");
+        Assert.assertTrue(dao.updatePassword(account, "new password"));
+        Assert.assertEquals("new password", dao.findAccount("testuser1").getPassword());
+        verify(store, times(2)).findAccount("testuser1");
+    }
+}
@@ -0,0 +1,214 @@
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import Util.MessageCodec;
+import io.javalin.Javalin;
+
+public class CompressionTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * GET localhost:8080/messages with Accept-Encoding: gzip, twice, then after a new message is posted.
+     *
+     * Expected Response:
+     *  Status Code: 200 with the gzipped listing each time; the repeat is served from the compressed listing cache
+     *  without querying the database, and the listing after the post holds the new message
+     */
+    @Test
+    public void listingIsGzippedAndCached() throws IOException, InterruptedException {
+        postMessages(50);
+        HttpResponse<byte[]> first = send("GET", "messages", "gzip", null, null);
+        Assert.assertEquals(200, first.statusCode());
+        Assert.assertEquals("gzip", first.headers().firstValue("Content-Encoding").orElseThrow());
+        Message[] messages = objectMapper.readValue(gunzip(first.body()), Message[].class);
+        Assert.assertEquals(51, messages.length);
+
+        long hits = metric("socialmedia_http_compressed_cache_hits_total");
+        long queries = metric("socialmedia_dao_duration_seconds_count");
+        HttpResponse<byte[]> second = send("GET", "messages", "gzip", null, null);
+        Assert.assertEquals("gzip", second.headers().firstValue("Content-Encoding").orElseThrow());
+        Assert.assertArrayEquals(first.body(), second.body());
+        Assert.assertEquals(hits + 1, metric("socialmedia_http_compressed_cache_hits_total"));
+        Assert.assertEquals(queries, metric("socialmedia_dao_duration_seconds_count"));
+
+        send("POST", "messages", null, null, "{\"posted_by\":1,\"message_text\":\"new\",\"time_posted_epoch\":1669947800}");
+        HttpResponse<byte[]> third = send("GET", "messages", "gzip", null, null);
+        Assert.assertEquals(52, objectMapper.readValue(gunzip(third.body()), Message[].class).length);
+    }
+
+    /**
+     * The JSON and protobuf forms of a listing, and its pages, are cached apart.
+     */
+    @Test
+    public void representationsAreCachedApart() throws IOException, InterruptedException {
+        postMessages(100);
+        for (int i = 0; i < 2; i++) {
+            Assert.assertEquals(101, objectMapper.readValue(gunzip(send("GET", "messages", "gzip", null, null).body()), Message[].class).length);
+            Assert.assertEquals(101, MessageCodec.decodeList(gunzip(send("GET", "messages", "gzip", MessageCodec.CONTENT_TYPE, null).body())).size());
+            Assert.assertEquals(50, MessageCodec.decodePage(gunzip(send("GET", "messages?after=1", "gzip", MessageCodec.CONTENT_TYPE, null).body())).getMessages().size());
+        }
+    }
+
+    /**
+     * GET localhost:8080/messages with Accept-Encoding: gzip when the listing is smaller than
+     * socialmedia.http.compression.minBytes, twice.
+     *
+     * Expected Response:
+     *  Status Code: 200 with the listing uncompressed, under the listing's own ETag, and not cached
+     */
+    @Test
+    public void smallListingIsNotCompressed() throws IOException, InterruptedException {
+        for (int i = 0; i < 2; i++) {
+            long hits = metric("socialmedia_http_compressed_cache_hits_total");
+            HttpResponse<byte[]> small = send("GET", "messages", "gzip", null, null);
+            Assert.assertEquals(200, small.statusCode());
+            Assert.assertTrue(small.headers().firstValue("Content-Encoding").isEmpty());
+            Assert.assertFalse(small.headers().firstValue("ETag").orElseThrow().endsWith("-gz\""));
+            Assert.assertEquals(1, objectMapper.readValue(small.body(), Message[].class).length);
+            Assert.assertEquals(hits, metric("socialmedia_http_compressed_cache_hits_total"));
+        }
+    }
+
+    /**
+     * The gzipped and uncompressed bodies of a listing carry different ETags, whether the gzipped one is compressed
+     * or served from the cache, and each is only answered with 304 for a client that would get that body.
+     */
+    @Test
+    public void gzippedListingHasItsOwnETag() throws IOException, InterruptedException {
+        postMessages(50);
+        String plain = send("GET", "messages", null, null, null).headers().firstValue("ETag").orElseThrow();
+        Assert.assertFalse(plain.endsWith("-gz\""));
+        for (int i = 0; i < 2; i++) {
+            HttpResponse<byte[]> gzipped = send("GET", "messages", "gzip", null, null);
+            Assert.assertEquals("gzip", gzipped.headers().firstValue("Content-Encoding").orElseThrow());
+            Assert.assertEquals(plain.substring(0, plain.length() - 1) + "-gz\"", gzipped.headers().firstValue("ETag").orElseThrow());
+        }
+        String gzipTag = send("GET", "messages", "gzip", null, null).headers().firstValue("ETag").orElseThrow();
+
+        HttpResponse<byte[]> notModified = send("GET", "messages", "gzip", null, null, gzipTag);
+        Assert.assertEquals(304, notModified.statusCode());
+        Assert.assertEquals(gzipTag, notModified.headers().firstValue("ETag").orElseThrow());
+        Assert.assertEquals(304, send("GET", "messages", "gzip", null, null, plain).statusCode());
+
+        HttpResponse<byte[]> identity = send("GET", "messages", null, null, null, gzipTag);
+        Assert.assertEquals(200, identity.statusCode());
+        Assert.assertEquals(plain, identity.headers().firstValue("ETag").orElseThrow());
+        Assert.assertEquals(51, objectMapper.readValue(identity.body(), Message[].class).length);
+    }
+
+    /**
+     * Without Accept-Encoding the listing is sent as it was, and a small response is never compressed.
+     */
+    @Test
+    public void uncompressedUnlessAcceptedAndLargeEnough() throws IOException, InterruptedException {
+        HttpResponse<byte[]> plain = send("GET", "messages", null, null, null);
+        Assert.assertTrue(plain.headers().firstValue("Content-Encoding").isEmpty());
+        Assert.assertEquals(1, objectMapper.readValue(plain.body(), Message[].class).length);
+
+        HttpResponse<byte[]> small = send("GET", "messages/1", "gzip", null, null);
+        Assert.assertTrue(small.headers().firstValue("Content-Encoding").isEmpty());
+        Assert.assertEquals(new Message(1, 1, "test message 1", 1669947792), objectMapper.readValue(small.body(), Message.class));
+    }
+
+    /**
+     * A listing large enough to compress is sent uncompressed when Accept-Encoding refuses gzip with q=0, and gzipped
+     * when it accepts gzip through *.
+     */
+    @Test
+    public void gzipRefusedByQualityIsNotSent() throws IOException, InterruptedException {
+        postMessages(50);
+
+        for (String refused : new String[] {"gzip;q=0", "gzip; q=0.0, deflate", "*;q=0", "identity, gzip;q=0, *"}) {
+            for (String path : new String[] {"messages", "accounts/1/messages"}) {
+                HttpResponse<byte[]> plain = send("GET", path, refused, null, null);
+                Assert.assertEquals(refused, 200, plain.statusCode());
+                Assert.assertTrue(refused, plain.headers().firstValue("Content-Encoding").isEmpty());
+                Assert.assertEquals(refused, 51, objectMapper.readValue(plain.body(), Message[].class).length);
+            }
+        }
+
+        for (String accepted : new String[] {"gzip;q=0.5", "*", "deflate, gzip;q=1.0"}) {
+            HttpResponse<byte[]> gzipped = send("GET", "messages", accepted, null, null);
+            Assert.assertEquals(accepted, "gzip", gzipped.headers().firstValue("Content-Encoding").orElse(null));
+            Assert.assertEquals(accepted, 51, objectMapper.readValue(gunzip(gzipped.body()), Message[].class).length);
+        }
+    }
+
+    /**
+     * Posts count messages in one batch, enough to take a listing past socialmedia.http.compression.minBytes.
+     */
+    private void postMessages(int count) throws IOException, InterruptedException {
+        StringBuilder batch = new StringBuilder("[");
+        for (int i = 0; i < count; i++)
+            batch.append(i == 0 ? "" : ",").append("{\"posted_by\":1,\"message_text\":\"message number ").append(i).append("\",\"time_posted_epoch\":1669947800}");
+        Assert.assertEquals(200, send("POST", "messages/batch", null, null, batch.append("]").toString()).statusCode());
+    }
+
+    private static byte[] gunzip(byte[] body) throws IOException {
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(body))) {
+            return in.readAllBytes();
+        }
+    }
+
+    /**
+     * @return the sum of the series of a metric, from GET /metrics
+     */
+    private long metric(String name) throws IOException, InterruptedException {
+        long total = 0;
+        for (String line : new String(send("GET", "metrics", null, null, null).body()).split("\n"))
+            if (line.startsWith(name)) total += (long) Double.parseDouble(line.substring(line.lastIndexOf(' ') + 1));
+        return total;
+    }
+
+    private HttpResponse<byte[]> send(String method, String path, String acceptEncoding, String accept, String body) throws IOException, InterruptedException {
+        return send(method, path, acceptEncoding, accept, body, null);
+    }
+
+    private HttpResponse<byte[]> send(String method, String path, String acceptEncoding, String accept, String body, String ifNoneMatch) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/" + path))
+                .method(method, body == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(body));
+        if (acceptEncoding != null) request.header("Accept-Encoding", acceptEncoding);
+        if (accept != null) request.header("Accept", accept);
+        if (ifNoneMatch != null) request.header("If-None-Match", ifNoneMatch);
+        return webClient.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+    }
+}
@@ -0,0 +1,131 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class ConditionalGetTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * GET localhost:8080/messages/1 with the ETag of a previous response, before and after the message is patched.
+     *
+     * Expected Response:
+     *  Status Code: 304 with an empty body while unchanged, then 200 with the patched message and a new ETag
+     */
+    @Test
+    public void messageIsNotModifiedUntilPatched() throws IOException, InterruptedException {
+        HttpResponse<String> first = send("GET", "messages/1", null, null);
+        Assert.assertEquals(200, first.statusCode());
+        String etag = first.headers().firstValue("ETag").orElseThrow();
+
+        HttpResponse<String> unchanged = send("GET", "messages/1", etag, null);
+        Assert.assertEquals(304, unchanged.statusCode());
+        Assert.assertEquals("", unchanged.body());
+
+        Assert.assertEquals(200, send("PATCH", "messages/1", null, "{\"message_text\":\"patched\"}").statusCode());
+        HttpResponse<String> changed = send("GET", "messages/1", etag, null);
+        Assert.assertEquals(200, changed.statusCode());
+        Assert.assertEquals(new Message(1, 1, "patched", 1669947792), objectMapper.readValue(changed.body(), Message.class));
+        Assert.assertNotEquals(etag, changed.headers().firstValue("ETag").orElseThrow());
+    }
+
+    /**
+     * A deleted message no longer matches its old ETag.
+     *
+     * Expected Response:
+     *  Status Code: 200 with an empty body
+     */
+    @Test
+    public void deletedMessageIsModified() throws IOException, InterruptedException {
+        String etag = send("GET", "messages/1", null, null).headers().firstValue("ETag").orElseThrow();
+        Assert.assertEquals(200, send("DELETE", "messages/1", null, null).statusCode());
+        HttpResponse<String> response = send("GET", "messages/1", etag, null);
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals("", response.body());
+    }
+
+    /**
+     * GET localhost:8080/accounts/1/messages and GET localhost:8080/messages are not modified until account 1 posts.
+     *
+     * Expected Response:
+     *  Status Code: 304, then 200 with the new message
+     */
+    @Test
+    public void listingsAreNotModifiedUntilAMessageIsPosted() throws IOException, InterruptedException {
+        String accountTag = send("GET", "accounts/1/messages", null, null).headers().firstValue("ETag").orElseThrow();
+        String allTag = send("GET", "messages?limit=10", null, null).headers().firstValue("ETag").orElseThrow();
+        Assert.assertEquals(304, send("GET", "accounts/1/messages", accountTag, null).statusCode());
+        Assert.assertEquals(304, send("GET", "messages?limit=10", "W/" + allTag, null).statusCode());
+
+        send("POST", "messages", null, "{\"posted_by\":1,\"message_text\":\"new\",\"time_posted_epoch\":1669947800}");
+        HttpResponse<String> byAccount = send("GET", "accounts/1/messages", accountTag, null);
+        Assert.assertEquals(200, byAccount.statusCode());
+        Assert.assertEquals(2, objectMapper.readValue(byAccount.body(), Message[].class).length);
+        Assert.assertEquals(200, send("GET", "messages?limit=10", allTag, null).statusCode());
+    }
+
+    /**
+     * Once a message's version is known, a 304 is answered without any database query.
+     */
+    @Test
+    public void notModifiedDoesNotQueryDatabase() throws IOException, InterruptedException {
+        String etag = send("GET", "messages/1", null, null).headers().firstValue("ETag").orElseThrow();
+        long before = daoCalls();
+        for (int i = 0; i < 5; i++) Assert.assertEquals(304, send("GET", "messages/1", etag, null).statusCode());
+        Assert.assertEquals(before, daoCalls());
+    }
+
+    /**
+     * @return the number of calls that reached the database, from GET /metrics
+     */
+    private long daoCalls() throws IOException, InterruptedException {
+        long total = 0;
+        for (String line : send("GET", "metrics", null, null).body().split("\n"))
+            if (line.startsWith("socialmedia_dao_duration_seconds_count")) total += Long.parseLong(line.substring(line.lastIndexOf(' ') + 1));
+        return total;
+    }
+
+    private HttpResponse<String> send(String method, String path, String ifNoneMatch, String body) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/" + path))
+                .method(method, body == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(body));
+        if (ifNoneMatch != null) request.header("If-None-Match", ifNoneMatch);
+        return webClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,99 @@
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import Util.Config;
+import Util.ConnectionUtil;
+import Util.PoolMetrics;
+
+public class ConnectionPoolTest {
+
+    /**
+     * These tests exercise the HikariCP pool, so they are skipped when socialmedia.db.pool selects the simple
+     * DataSource.
+     */
+    @Before
+    public void setUp() {
+        Assume.assumeFalse("simple".equalsIgnoreCase(Config.getString("socialmedia.db.pool", "hikari")));
+        ConnectionUtil.resetTestDatabase();
+    }
+
+    /**
+     * Many threads borrowing, using and closing connections at once are all served, without a timeout, by the
+     * pool's connections; every connection is back in the pool afterwards.
+     */
+    @Test
+    public void concurrentBorrowsAreReturned() throws Exception {
+        int threads = 50;
+        int borrowsPerThread = 20;
+        int maximumSize = Config.getInt("socialmedia.db.pool.maxSize", 10);
+        PoolMetrics pool = ConnectionUtil.getPoolMetrics();
+        long acquired = pool.getAcquireCount();
+        long timeouts = pool.getAcquireTimeouts();
+        long created = pool.getConnectionsCreated();
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> results = new ArrayList<>();
+        try {
+            for (int i = 0; i < threads; i++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    for (int j = 0; j < borrowsPerThread; j++) {
+                        try (Connection connection = ConnectionUtil.getConnection();
+                                Statement statement = connection.createStatement();
+                                ResultSet result = statement.executeQuery("select count(*) from account")) {
+                            Assert.assertTrue(result.next());
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> result : results) result.get(1, TimeUnit.MINUTES);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Assert.assertTrue(pool.getAcquireCount() - acquired >= threads * borrowsPerThread);
+        Assert.assertEquals(timeouts, pool.getAcquireTimeouts());
+        Assert.assertTrue(pool.getConnectionsCreated() - created <= maximumSize);
+        // the pool's statistics are a snapshot refreshed about once a second
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (pool.getActiveConnections() > 0 && System.currentTimeMillis() < deadline) Thread.sleep(100);
+        Assert.assertEquals(0, pool.getActiveConnections());
+        Assert.assertTrue(pool.getTotalConnections() <= maximumSize);
+    }
+
+    /**
+     * A connection closed by its borrower is returned to the pool rather than closed for good, and the next borrower
+     * gets a working connection.
+     */
+    @Test
+    public void closedConnectionIsReusable() throws SQLException {
+        PoolMetrics pool = ConnectionUtil.getPoolMetrics();
+        try (Connection connection = ConnectionUtil.getConnection()) {
+            Assert.assertTrue(connection.isValid(1));
+        }
+        long created = pool.getConnectionsCreated();
+        for (int i = 0; i < 100; i++) {
+            try (Connection connection = ConnectionUtil.getConnection()) {
+                Assert.assertTrue(connection.isValid(1));
+            }
+        }
+        Assert.assertEquals(created, pool.getConnectionsCreated());
+    }
+}
@@ -0,0 +1,180 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import DAO.DurableSocialMediaDAO;
+import DAO.ISocialMediaDAO;
+import Model.Account;
+import Model.Message;
+
+public class DurableStorageTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    Path directory;
+    DurableSocialMediaDAO dao;
+
+    /**
+     * Before every test, open the durable DAO on an empty directory and create one account to post with.
+     */
+    @Before
+    public void setUp() throws Exception {
+        directory = folder.getRoot().toPath();
+        dao = open();
+        dao.createAccount(new Account("testuser1", "password"));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        dao.close();
+    }
+
+    private DurableSocialMediaDAO open() throws Exception {
+        return new DurableSocialMediaDAO(directory, 1 << 14, true, 0);
+    }
+
+    private DurableSocialMediaDAO reopen() throws Exception {
+        dao.close();
+        dao = open();
+        return dao;
+    }
+
+    /**
+     * Every kind of change is replayed from the log after a restart, including message versions.
+     */
+    @Test
+    public void changesSurviveRestart() throws Exception {
+        dao.createAccount(new Account("testuser2", "password"));
+        dao.createMessage(new Message(1, "first", 1669947800));
+        dao.createMessage(new Message(2, "second", 1669947801));
+        dao.updateMessage(new Message(1, 0, "first, edited", 0), 1);
+        dao.deleteMessage(2, ISocialMediaDAO.ANY_ACCOUNT);
+        dao.updatePassword(new Account(2, "testuser2", "password"), "changed");
+        dao.createFollow(1, 2);
+
+        reopen();
+        Assert.assertEquals(Arrays.asList(new Message(1, 1, "first, edited", 1669947800)), dao.findAllMessages());
+        Assert.assertEquals(2, dao.findMessageVersion(1));
+        Assert.assertEquals("changed", dao.findAccount("testuser2").getPassword());
+        Assert.assertEquals(Arrays.asList(2), dao.findFollowees(1));
+        Assert.assertEquals(3, dao.createMessage(new Message(1, "third", 1669947802)).getMessage_id());
+    }
+
+    /**
+     * A snapshot replaces the log segments before it, and recovery reads the snapshot and the segments after it.
+     */
+    @Test
+    public void snapshotCompactsLog() throws Exception {
+        for (int i = 0; i < 1000; i++) dao.createMessage(new Message(1, "message " + i, 1669947800 + i));
+        Assert.assertTrue(files("wal").size() > 1);
+        dao.snapshot();
+        dao.createMessage(new Message(1, "after the snapshot", 1669948800));
+        Assert.assertEquals(1, files("snapshot").size());
+
+        reopen();
+        Assert.assertEquals(1001, dao.findAllMessages().size());
+        Assert.assertEquals(1003, dao.getRecoveredRecords());
+    }
+
+    /**
+     * Ids given out before a snapshot are not given out again after a restart, even when the messages that had them
+     * were deleted before the snapshot was taken, so a new message cannot take over an old one's ETag.
+     */
+    @Test
+    public void snapshotKeepsLastIds() throws Exception {
+        dao.createMessage(new Message(1, "first", 1669947800));
+        dao.createMessage(new Message(1, "second", 1669947801));
+        dao.deleteMessage(2, ISocialMediaDAO.ANY_ACCOUNT);
+        dao.snapshot();
+
+        reopen();
+        Assert.assertEquals(3, dao.createMessage(new Message(1, "third", 1669947802)).getMessage_id());
+        Assert.assertNull(dao.findMessage(2));
+    }
+
+    /**
+     * A record cut short by a crash is ignored, and the log carries on after it.
+     */
+    @Test
+    public void tornRecordIsIgnored() throws Exception {
+        dao.createMessage(new Message(1, "complete", 1669947800));
+        dao.createMessage(new Message(1, "torn", 1669947801));
+        dao.close();
+        Path log = files("wal").get(0);
+        try (FileChannel channel = FileChannel.open(log, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer bytes = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            int last = bytes.limit() - 1;
+            while (bytes.get(last) == 0) last--;
+            bytes.put(last, (byte) 0);
+        }
+
+        dao = open();
+        Assert.assertEquals(Arrays.asList(new Message(1, 1, "complete", 1669947800)), dao.findAllMessages());
+        dao.createMessage(new Message(1, "after the crash", 1669947802));
+        reopen();
+        Assert.assertEquals(2, dao.findAllMessages().size());
+    }
+
+    /**
+     * A second DAO cannot open a directory that is in use, and can once the first is closed.
+     */
+    @Test
+    public void directoryInUseIsRefused() throws Exception {
+        try {
+            open().close();
+            Assert.fail("Opened a directory that was in use");
+        } catch (IOException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("already in use"));
+        }
+        dao.createMessage(new Message(1, "still writable", 1669947800));
+        reopen();
+        Assert.assertEquals(1, dao.findAllMessages().size());
+    }
+
+    /**
+     * Concurrent writers share fsyncs instead of taking one each.
+     */
+    @Test
+    public void concurrentWritersShareSyncs() throws Exception {
+        long syncs = dao.getLog().getSyncCount();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    for (int i = 0; i < 100; i++) dao.createMessage(new Message(1, "concurrent", 1669947800));
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) thread.join();
+        Assert.assertEquals(800, dao.findAllMessages().size());
+        Assert.assertTrue(dao.getLog().getSyncCount() - syncs < 800);
+
+        reopen();
+        Assert.assertEquals(800, dao.findAllMessages().size());
+    }
+
+    private List<Path> files(String kind) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().startsWith(kind + "-")).sorted().collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,127 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.h2.api.Trigger;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import Util.Config;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class ExecutorSaturationTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+
+    static CountDownLatch inserting;
+    static CountDownLatch release;
+
+    /**
+     * Holds every insert into message until the test releases it, so a POST /messages keeps its JDBC executor thread
+     * busy for as long as the test needs.
+     */
+    public static class BlockingTrigger implements Trigger {
+        @Override
+        public void fire(Connection connection, Object[] oldRow, Object[] newRow) throws SQLException {
+            inserting.countDown();
+            try {
+                release.await(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Before every test, reset the database, hold inserts into message with a trigger, and start the Javalin app
+     * with a JDBC executor of one thread and a queue of one call. The trigger needs H2, so the test only runs with
+     * the h2 storage engine.
+     */
+    @Before
+    public void setUp() throws Exception {
+        Assume.assumeTrue(Config.getString("socialmedia.storage", "h2").equalsIgnoreCase("h2"));
+        inserting = new CountDownLatch(1);
+        release = new CountDownLatch(1);
+        System.setProperty("socialmedia.db.executor.threads", "1");
+        System.setProperty("socialmedia.db.executor.queueCapacity", "1");
+        ConnectionUtil.resetTestDatabase();
+        try (Connection connection = ConnectionUtil.getConnection(); Statement s = connection.createStatement()) {
+            s.execute("create trigger hold_message_insert before insert on message for each row call '" + BlockingTrigger.class.getName() + "';");
+        }
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        System.clearProperty("socialmedia.db.executor.threads");
+        System.clearProperty("socialmedia.db.executor.queueCapacity");
+        if (release != null) release.countDown();
+        if (app != null) app.stop();
+    }
+
+    /**
+     * With the only JDBC thread busy and its queue full, the next request is refused at once.
+     *
+     * Expected Response:
+     *  Status Code: 503 with an empty body, counted in socialmedia_db_executor_rejected_total; the calls already
+     *  accepted still complete with 200 once the database frees up
+     */
+    @Test
+    public void saturatedExecutorAnswers503() throws Exception {
+        long rejected = metric("socialmedia_db_executor_rejected_total");
+        CompletableFuture<HttpResponse<String>> running = webClient.sendAsync(postMessage("running"), HttpResponse.BodyHandlers.ofString());
+        Assert.assertTrue(inserting.await(10, TimeUnit.SECONDS));
+        CompletableFuture<HttpResponse<String>> queued = webClient.sendAsync(postMessage("queued"), HttpResponse.BodyHandlers.ofString());
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (metric("socialmedia_db_executor_queue_depth") < 1 && System.currentTimeMillis() < deadline) Thread.sleep(20);
+        Assert.assertEquals(1, metric("socialmedia_db_executor_queue_depth"));
+
+        long start = System.nanoTime();
+        HttpResponse<String> refused = webClient.send(HttpRequest.newBuilder().uri(URI.create("http://localhost:8080/messages/1")).build(),
+                HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(503, refused.statusCode());
+        Assert.assertEquals("", refused.body());
+        Assert.assertTrue(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start) < 5);
+        Assert.assertEquals(rejected + 1, metric("socialmedia_db_executor_rejected_total"));
+
+        release.countDown();
+        Assert.assertEquals(200, running.get(30, TimeUnit.SECONDS).statusCode());
+        Assert.assertEquals(200, queued.get(30, TimeUnit.SECONDS).statusCode());
+    }
+
+    private static HttpRequest postMessage(String text) {
+        return HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"posted_by\":1,\"message_text\":\"" + text + "\",\"time_posted_epoch\":1669947800}"))
+                .header("Content-Type", "application/json")
+                .build();
+    }
+
+    /**
+     * @return the value of a metric, from GET /metrics
+     */
+    private long metric(String name) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder().uri(URI.create("http://localhost:8080/metrics")).build();
+        for (String line : webClient.send(request, HttpResponse.BodyHandlers.ofString()).body().split("\n"))
+            if (line.startsWith(name + " ")) return (long) Double.parseDouble(line.substring(line.lastIndexOf(' ') + 1));
+        return 0;
+    }
+}
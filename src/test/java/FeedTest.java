@@ -0,0 +1,186 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Follow;
+import Model.Message;
+import Model.MessagePage;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class FeedTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database and create a new webClient and ObjectMapper for interacting locally on
+     * the web. Each test starts the Javalin app itself, since some of them change the feed settings first.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+    }
+
+    @After
+    public void tearDown() {
+        if (app != null) app.stop();
+        System.clearProperty("socialmedia.feed.fanoutThreshold");
+        System.clearProperty("socialmedia.feed.timelineSize");
+    }
+
+    private void startApp() throws InterruptedException {
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    /**
+     * Account 2 follows account 1 and reads its feed while accounts 1 and 3 post, via
+     * POST localhost:8080/accounts/1/follow and GET localhost:8080/accounts/2/feed
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: only the messages of account 1, newest first, including those posted after the first read
+     */
+    @Test
+    public void feedContainsFollowedAccountsNewestFirst() throws IOException, InterruptedException {
+        startApp();
+        register("testuser2");
+        register("testuser3");
+        HttpResponse<String> followResponse = send("POST", "accounts/1/follow", "{\"follower_id\":2}");
+        Assert.assertEquals(200, followResponse.statusCode());
+        Assert.assertEquals(new Follow(2, 1), objectMapper.readValue(followResponse.body(), Follow.class));
+        postMessage(3, "not followed");
+
+        MessagePage first = getFeed("accounts/2/feed");
+        List<Message> expected = new ArrayList<>();
+        expected.add(new Message(1, 1, "test message 1", 1669947792));
+        Assert.assertEquals(expected, first.getMessages());
+        Assert.assertNull(first.getNext());
+
+        postMessage(1, "after first read");
+        MessagePage second = getFeed("accounts/2/feed");
+        expected.add(0, new Message(3, 1, "after first read", 1669947800));
+        Assert.assertEquals(expected, second.getMessages());
+    }
+
+    /**
+     * Account 2 follows accounts 1 and 3 with fan-out on write disabled and a timeline that holds two ids, then
+     * pages through GET localhost:8080/accounts/2/feed?limit=2
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: every message of accounts 1 and 3 across the pages, newest first
+     */
+    @Test
+    public void feedMergesAtReadTimeAndPagesPastTimeline() throws IOException, InterruptedException {
+        System.setProperty("socialmedia.feed.fanoutThreshold", "0");
+        System.setProperty("socialmedia.feed.timelineSize", "2");
+        startApp();
+        register("testuser2");
+        register("testuser3");
+        Assert.assertEquals(200, send("POST", "accounts/1/follow", "{\"follower_id\":2}").statusCode());
+        Assert.assertEquals(200, send("POST", "accounts/3/follow", "{\"follower_id\":2}").statusCode());
+        Assert.assertEquals(200, getFeedResponse("accounts/2/feed").statusCode());
+        postMessage(3, "message 2");
+        postMessage(1, "message 3");
+        postMessage(3, "message 4");
+
+        List<Integer> ids = new ArrayList<>();
+        MessagePage page = getFeed("accounts/2/feed?limit=2");
+        for (Message message : page.getMessages()) ids.add(message.getMessage_id());
+        while (page.getNext() != null) {
+            page = getFeed("accounts/2/feed?limit=2&cursor=" + page.getNext());
+            for (Message message : page.getMessages()) ids.add(message.getMessage_id());
+        }
+        Assert.assertEquals(List.of(4, 3, 2, 1), ids);
+    }
+
+    /**
+     * Account 2 unfollows account 1 via DELETE localhost:8080/accounts/1/follow
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the removed follow, and afterwards an empty feed; an empty body when repeated
+     */
+    @Test
+    public void unfollowEmptiesFeed() throws IOException, InterruptedException {
+        startApp();
+        register("testuser2");
+        Assert.assertEquals(200, send("POST", "accounts/1/follow", "{\"follower_id\":2}").statusCode());
+        Assert.assertEquals(1, getFeed("accounts/2/feed").getMessages().size());
+
+        HttpResponse<String> unfollowResponse = send("DELETE", "accounts/1/follow", "{\"follower_id\":2}");
+        Assert.assertEquals(200, unfollowResponse.statusCode());
+        Assert.assertEquals(new Follow(2, 1), objectMapper.readValue(unfollowResponse.body(), Follow.class));
+        Assert.assertTrue(getFeed("accounts/2/feed").getMessages().isEmpty());
+
+        HttpResponse<String> repeated = send("DELETE", "accounts/1/follow", "{\"follower_id\":2}");
+        Assert.assertEquals(200, repeated.statusCode());
+        Assert.assertEquals("", repeated.body());
+    }
+
+    /**
+     * Following an account that does not exist, or oneself, via POST localhost:8080/accounts/{id}/follow
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void followInvalidAccount() throws IOException, InterruptedException {
+        startApp();
+        Assert.assertEquals(400, send("POST", "accounts/99/follow", "{\"follower_id\":1}").statusCode());
+        Assert.assertEquals(400, send("POST", "accounts/1/follow", "{\"follower_id\":99}").statusCode());
+        Assert.assertEquals(400, send("POST", "accounts/1/follow", "{\"follower_id\":1}").statusCode());
+    }
+
+    private HttpResponse<String> send(String method, String path, String body) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/" + path))
+                .method(method, HttpRequest.BodyPublishers.ofString(body))
+                .header("Content-Type", "application/json")
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> getFeedResponse(String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/" + path))
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private MessagePage getFeed(String path) throws IOException, InterruptedException {
+        HttpResponse<String> response = getFeedResponse(path);
+        Assert.assertEquals(200, response.statusCode());
+        return objectMapper.readValue(response.body(), MessagePage.class);
+    }
+
+    private void register(String username) throws IOException, InterruptedException {
+        Assert.assertEquals(200, send("POST", "register", "{\"username\":\"" + username + "\",\"password\":\"password\"}").statusCode());
+    }
+
+    private void postMessage(int postedBy, String text) throws IOException, InterruptedException {
+        Assert.assertEquals(200, send("POST", "messages", "{" +
+                "\"posted_by\":" + postedBy + ", " +
+                "\"message_text\": \"" + text + "\", " +
+                "\"time_posted_epoch\": 1669947800}").statusCode());
+    }
+}
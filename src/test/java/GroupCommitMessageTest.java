@@ -0,0 +1,186 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.BatchingSocialMediaDAO;
+import DAO.ISocialMediaDAO;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class GroupCommitMessageTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app with group commit enabled, and create a new
+     * webClient and ObjectMapper for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        System.setProperty("socialmedia.writes.groupCommit.enabled", "true");
+        System.setProperty("socialmedia.writes.groupCommit.maxDelayMs", "20");
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+        System.clearProperty("socialmedia.writes.groupCommit.enabled");
+        System.clearProperty("socialmedia.writes.groupCommit.maxDelayMs");
+    }
+
+    /**
+     * Sending 20 concurrent http requests to POST localhost:8080/messages, one of them with an unknown posted_by
+     *
+     * Expected Response:
+     *  Status Code: 200 for every valid message, each with its own message_id; 400 for the invalid one
+     */
+    @Test
+    public void createMessagesConcurrently() throws Exception {
+        List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            int postedBy = i == 7 ? 99 : 1;
+            HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/messages"))
+                    .POST(HttpRequest.BodyPublishers.ofString("{" +
+                            "\"posted_by\":" + postedBy + ", " +
+                            "\"message_text\": \"message " + i + "\", " +
+                            "\"time_posted_epoch\": 1669947792}"))
+                    .header("Content-Type", "application/json")
+                    .build();
+            responses.add(webClient.sendAsync(postMessageRequest, HttpResponse.BodyHandlers.ofString()));
+        }
+
+        Set<Integer> ids = new HashSet<>();
+        for (int i = 0; i < 20; i++) {
+            HttpResponse<String> response = responses.get(i).get();
+            if (i == 7) {
+                Assert.assertEquals(400, response.statusCode());
+                continue;
+            }
+            Assert.assertEquals(200, response.statusCode());
+            Message created = objectMapper.readValue(response.body(), Message.class);
+            Assert.assertEquals("message " + i, created.getMessage_text());
+            Assert.assertTrue(ids.add(created.getMessage_id()));
+        }
+        Assert.assertEquals(19, ids.size());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/{id} for a message created through group commit
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: JSON representation of the committed message
+     */
+    @Test
+    public void createdMessageIsCommitted() throws IOException, InterruptedException {
+        HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{" +
+                        "\"posted_by\":1, " +
+                        "\"message_text\": \"hello message\", " +
+                        "\"time_posted_epoch\": 1669947792}"))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> response = webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/2"))
+                .build();
+        HttpResponse<String> fetched = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, fetched.statusCode());
+        Assert.assertEquals(new Message(2, 1, "hello message", 1669947792), objectMapper.readValue(fetched.body(), Message.class));
+    }
+
+    /**
+     * A message submitted after close() is refused instead of waiting for a writer that has gone.
+     */
+    @Test(expected = RejectedExecutionException.class)
+    public void submitAfterCloseIsRejected() throws Exception {
+        BatchingSocialMediaDAO batching = new BatchingSocialMediaDAO(mock(ISocialMediaDAO.class), 16, 1, 16, 100, 1_000);
+        batching.close();
+        batching.createMessage(new Message(1, "too late", 1669947792));
+    }
+
+    /**
+     * A caller whose group commit does not finish in time gets an error rather than waiting forever.
+     */
+    @Test(timeout = 5_000)
+    public void slowCommitTimesOut() throws Exception {
+        ISocialMediaDAO delegate = mock(ISocialMediaDAO.class);
+        when(delegate.createMessages(anyList())).thenAnswer(invocation -> {
+            Thread.sleep(60_000);
+            return invocation.getArgument(0);
+        });
+        BatchingSocialMediaDAO batching = new BatchingSocialMediaDAO(delegate, 16, 1, 16, 100, 200);
+        try {
+            batching.createMessage(new Message(1, "slow", 1669947792));
+            Assert.fail("createMessage should have timed out");
+        } catch (Exception e) {
+            Assert.assertTrue(e.getMessage().startsWith("Timed out"));
+        }
+    }
+
+    /**
+     * When the writer thread dies, the messages it was writing and the ones still queued are failed, and later
+     * submissions are refused.
+     */
+    @Test(timeout = 5_000)
+    public void writerFailureFailsPendingMessages() throws Exception {
+        ISocialMediaDAO delegate = mock(ISocialMediaDAO.class);
+        when(delegate.createMessages(anyList())).thenAnswer(invocation -> {
+            Thread.sleep(200);
+            throw new OutOfMemoryError("simulated");
+        });
+        BatchingSocialMediaDAO batching = new BatchingSocialMediaDAO(delegate, 1, 1, 16, 100, 10_000);
+        List<CompletableFuture<Message>> pending = new ArrayList<>();
+        for (int i = 0; i < 5; i++) pending.add(batching.submit(new Message(1, "message " + i, 1669947792)));
+        for (CompletableFuture<Message> future : pending) {
+            try {
+                future.get();
+                Assert.fail("the message should have failed");
+            } catch (ExecutionException e) {
+                Assert.assertTrue(e.getCause() instanceof RejectedExecutionException);
+            }
+        }
+        try {
+            batching.submit(new Message(1, "after the failure", 1669947792));
+            Assert.fail("submit should have been refused");
+        } catch (RejectedExecutionException e) {
+            Assert.assertEquals("Message writer has stopped", e.getMessage());
+        }
+    }
+}
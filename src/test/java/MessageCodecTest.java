@@ -0,0 +1,114 @@
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import Model.Message;
+import Model.MessagePage;
+import Util.Json;
+import Util.MessageCodec;
+
+public class MessageCodecTest {
+
+    private static Message roundTrip(Message message) {
+        byte[] bytes = MessageCodec.encode(message);
+        Assert.assertEquals(MessageCodec.size(message), bytes.length);
+        return MessageCodec.decode(bytes);
+    }
+
+    /**
+     * Every field survives encoding, including multi-byte text, the longest allowed text and extreme numbers.
+     */
+    @Test
+    public void messagesRoundTrip() {
+        List<Message> messages = Arrays.asList(
+            new Message(1, 1, "test message 1", 1669947792),
+            new Message(Integer.MAX_VALUE, Integer.MAX_VALUE, "h\u00e9llo w\u00f6rld \u65e5\u672c\u8a9e \ud83d\ude00", Long.MAX_VALUE),
+            new Message(300, 128, "x".repeat(255), -1),
+            new Message(-5, Integer.MIN_VALUE, "", Long.MIN_VALUE));
+        for (Message message : messages) Assert.assertEquals(message, roundTrip(message));
+
+        Message empty = roundTrip(new Message());
+        Assert.assertEquals(0, MessageCodec.size(new Message()));
+        Assert.assertNull(empty.getMessage_text());
+        Assert.assertEquals(0, empty.getMessage_id());
+    }
+
+    /**
+     * A message written into a larger buffer is read back up to the buffer's limit.
+     */
+    @Test
+    public void messageIsReadUpToLimit() {
+        Message first = new Message(1, 2, "first", 1669947792);
+        Message second = new Message(2, 2, "second", 1669947793);
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        MessageCodec.write(buffer, first);
+        int end = buffer.position();
+        MessageCodec.write(buffer, second);
+        buffer.flip();
+
+        Assert.assertEquals(first, MessageCodec.read(buffer.duplicate().limit(end)));
+        Assert.assertEquals(second, MessageCodec.read(buffer.position(end)));
+    }
+
+    /**
+     * Lists round-trip, and a page keeps its next cursor.
+     */
+    @Test
+    public void listsAndPagesRoundTrip() throws Exception {
+        List<Message> messages = new ArrayList<>();
+        for (int i = 1; i <= 100; i++) messages.add(new Message(i, i % 7 + 1, "message " + "y".repeat(i), 1669947792L + i));
+        Assert.assertEquals(messages, MessageCodec.decodeList(MessageCodec.encodeList(messages)));
+        Assert.assertEquals(Collections.emptyList(), MessageCodec.decodeList(new byte[0]));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteBuffer buffer = ByteBuffer.allocate(8);
+        for (Message message : messages) buffer = MessageCodec.writeEntry(out, message, buffer);
+        MessageCodec.writeNext(out, "bmV4dA");
+        MessagePage page = MessageCodec.decodePage(out.toByteArray());
+        Assert.assertEquals(messages, page.getMessages());
+        Assert.assertEquals("bmV4dA", page.getNext());
+    }
+
+    /**
+     * Fields added to the schema later, of any wire type, are skipped by this decoder.
+     */
+    @Test
+    public void unknownFieldsAreSkipped() {
+        Message message = new Message(7, 3, "known", 1669947792);
+        byte[] known = MessageCodec.encode(message);
+        byte[] unknown = {
+            (byte) (5 << 3), (byte) 0x96, 0x01,                         // field 5, varint 150
+            (byte) (6 << 3 | 1), 1, 2, 3, 4, 5, 6, 7, 8,                // field 6, fixed64
+            (byte) (7 << 3 | 2), 3, 'a', 'b', 'c',                      // field 7, 3 bytes
+            (byte) (8 << 3 | 5), 1, 2, 3, 4 };                          // field 8, fixed32
+        byte[] bytes = Arrays.copyOf(unknown, unknown.length + known.length);
+        System.arraycopy(known, 0, bytes, unknown.length, known.length);
+        Assert.assertEquals(message, MessageCodec.decode(bytes));
+    }
+
+    /**
+     * A truncated body is rejected rather than read as a shorter message.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void truncatedMessageIsRejected() {
+        byte[] bytes = MessageCodec.encode(new Message(1, 1, "test message 1", 1669947792));
+        MessageCodec.decode(Arrays.copyOf(bytes, 10));
+    }
+
+    /**
+     * The encoding is a fraction of the size of the JSON for the same message.
+     */
+    @Test
+    public void encodingIsSmallerThanJson() throws Exception {
+        Message message = new Message(12345, 678, "test message 1", 1669947792);
+        int json = Json.MESSAGE_WRITER.writeValueAsBytes(message).length;
+        int protobuf = MessageCodec.encode(message).length;
+        Assert.assertTrue(protobuf + " bytes against " + json, protobuf * 2 < json);
+    }
+}
@@ -0,0 +1,75 @@
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.ISocialMediaDAO;
+import DAO.SocialMediaDAO;
+import Model.Account;
+import Model.Message;
+import Util.ConnectionUtil;
+
+public class MessageOwnershipTest {
+    SocialMediaDAO dao;
+    int otherAccount;
+
+    /**
+     * Before every test, reset the database, which holds message 1 posted by account 1, and register a second
+     * account that did not post it.
+     */
+    @Before
+    public void setUp() throws Exception {
+        ConnectionUtil.resetTestDatabase();
+        dao = new SocialMediaDAO();
+        otherAccount = dao.createAccount(new Account("testuser2", "password")).getAccount_id();
+    }
+
+    /**
+     * An update by an account that did not post the message finds nothing and leaves the row and its version as
+     * they were.
+     */
+    @Test
+    public void updateByNonOwnerChangesNothing() throws Exception {
+        Assert.assertNull(dao.updateMessage(new Message(1, 1, "hijacked", 0), otherAccount));
+        Assert.assertEquals(new Message(1, 1, "test message 1", 1669947792), dao.findMessage(1));
+        Assert.assertEquals(1, dao.findMessageVersion(1));
+    }
+
+    /**
+     * A delete by an account that did not post the message finds nothing and leaves the row in place.
+     */
+    @Test
+    public void deleteByNonOwnerChangesNothing() throws Exception {
+        Assert.assertNull(dao.deleteMessage(1, otherAccount));
+        Assert.assertEquals(new Message(1, 1, "test message 1", 1669947792), dao.findMessage(1));
+    }
+
+    /**
+     * The account that posted the message can update and then delete it.
+     */
+    @Test
+    public void ownerCanUpdateAndDelete() throws Exception {
+        Assert.assertEquals(new Message(1, 1, "updated", 1669947792), dao.updateMessage(new Message(1, 1, "updated", 0), 1));
+        Assert.assertEquals(2, dao.findMessageVersion(1));
+        Assert.assertEquals(new Message(1, 1, "updated", 1669947792), dao.deleteMessage(1, 1));
+        Assert.assertNull(dao.findMessage(1));
+    }
+
+    /**
+     * Without an owner (ANY_ACCOUNT, 0) the update and delete apply whoever posted the message.
+     */
+    @Test
+    public void anyAccountCanUpdateAndDelete() throws Exception {
+        Assert.assertEquals(new Message(1, 1, "updated", 1669947792), dao.updateMessage(new Message(1, 1, "updated", 0), ISocialMediaDAO.ANY_ACCOUNT));
+        Assert.assertEquals(new Message(1, 1, "updated", 1669947792), dao.deleteMessage(1, ISocialMediaDAO.ANY_ACCOUNT));
+        Assert.assertNull(dao.findMessage(1));
+    }
+
+    /**
+     * Neither statement matches a message that does not exist.
+     */
+    @Test
+    public void missingMessageIsNotFound() throws Exception {
+        Assert.assertNull(dao.updateMessage(new Message(404, 1, "updated", 0), ISocialMediaDAO.ANY_ACCOUNT));
+        Assert.assertNull(dao.deleteMessage(404, ISocialMediaDAO.ANY_ACCOUNT));
+    }
+}
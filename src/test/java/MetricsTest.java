@@ -0,0 +1,86 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class MetricsTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient for interacting
+     * locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending http requests to POST localhost:8080/messages, GET localhost:8080/messages/1 and an unknown path,
+     * then to GET localhost:8080/metrics
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: Prometheus text containing per-route request counts and latencies, DAO timings and connection
+     *  acquire timings
+     */
+    @Test
+    public void getMetrics() throws IOException, InterruptedException {
+        HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{" +
+                        "\"posted_by\":1, " +
+                        "\"message_text\": \"hello message\", " +
+                        "\"time_posted_epoch\": 1669947792}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+        HttpRequest getMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .build();
+        Assert.assertEquals(200, webClient.send(getMessageRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+        HttpRequest unknownRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/no/such/path"))
+                .build();
+        Assert.assertEquals(404, webClient.send(unknownRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        HttpRequest metricsRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/metrics"))
+                .build();
+        HttpResponse<String> response = webClient.send(metricsRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertTrue(response.headers().firstValue("Content-Type").orElse("").startsWith("text/plain"));
+        String body = response.body();
+        Assert.assertTrue(body.contains("# TYPE http_requests_total counter"));
+        Assert.assertTrue(body.contains("http_requests_total{method=\"POST\",route=\"/messages\",status=\"200\"}"));
+        Assert.assertTrue(body.contains("http_requests_total{method=\"GET\",route=\"/messages/{id}\",status=\"200\"}"));
+        Assert.assertTrue(body.contains("http_requests_total{method=\"GET\",route=\"unmatched\",status=\"404\"}"));
+        Assert.assertTrue(body.contains("http_request_duration_seconds{method=\"POST\",route=\"/messages\",quantile=\"0.999\"}"));
+        Assert.assertTrue(body.contains("socialmedia_dao_duration_seconds_count{method=\"createMessage\"}"));
+        Assert.assertTrue(body.contains("socialmedia_db_connection_acquire_seconds_count"));
+        Assert.assertTrue(body.contains("socialmedia_db_executor_rejected_total"));
+    }
+}
@@ -0,0 +1,152 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Model.MessagePage;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class PaginateMessagesTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web. Three more messages are posted so that listings span several pages.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws IOException, InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+        for (int i = 2; i <= 4; i++) postMessage("test message " + i, 1669947792L + i);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages?limit=2 and following the returned cursor
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: two pages of two messages each, the last without a next cursor
+     */
+    @Test
+    public void getMessagesPaginated() throws IOException, InterruptedException {
+        MessagePage first = getPage("http://localhost:8080/messages?limit=2");
+        List<Message> expectedFirst = new ArrayList<>();
+        expectedFirst.add(new Message(1, 1, "test message 1", 1669947792));
+        expectedFirst.add(new Message(2, 1, "test message 2", 1669947794));
+        Assert.assertEquals(expectedFirst, first.getMessages());
+        Assert.assertNotNull(first.getNext());
+
+        MessagePage second = getPage("http://localhost:8080/messages?limit=2&cursor=" + first.getNext());
+        List<Message> expectedSecond = new ArrayList<>();
+        expectedSecond.add(new Message(3, 1, "test message 3", 1669947795));
+        expectedSecond.add(new Message(4, 1, "test message 4", 1669947796));
+        Assert.assertEquals(expectedSecond, second.getMessages());
+        Assert.assertNull(second.getNext());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/accounts/1/messages?limit=10&since=1669947795
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the messages of account 1 posted at or after the given epoch
+     */
+    @Test
+    public void getMessagesFromUserSince() throws IOException, InterruptedException {
+        MessagePage page = getPage("http://localhost:8080/accounts/1/messages?limit=10&since=1669947795");
+        List<Message> expected = new ArrayList<>();
+        expected.add(new Message(3, 1, "test message 3", 1669947795));
+        expected.add(new Message(4, 1, "test message 4", 1669947796));
+        Assert.assertEquals(expected, page.getMessages());
+        Assert.assertNull(page.getNext());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages with a malformed cursor
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void getMessagesInvalidCursor() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages?cursor=not-a-cursor"))
+                .build();
+        HttpResponse response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(400, response.statusCode());
+    }
+
+    /**
+     * GET localhost:8080/messages after 2000 more messages are posted, so the listing is read in several chunks.
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: every message once, in message_id order
+     */
+    @Test
+    public void getAllMessagesAcrossChunks() throws IOException, InterruptedException {
+        for (int batch = 0; batch < 2; batch++) {
+            StringBuilder body = new StringBuilder("[");
+            for (int i = 0; i < 1000; i++)
+                body.append(i == 0 ? "" : ",").append("{\"posted_by\":1,\"message_text\":\"bulk\",\"time_posted_epoch\":1669947800}");
+            HttpRequest request = HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/messages/batch"))
+                    .POST(HttpRequest.BodyPublishers.ofString(body.append(']').toString()))
+                    .build();
+            Assert.assertEquals(200, webClient.send(request, HttpResponse.BodyHandlers.ofString()).statusCode());
+        }
+        HttpRequest request = HttpRequest.newBuilder().uri(URI.create("http://localhost:8080/messages")).build();
+        Message[] messages = objectMapper.readValue(webClient.send(request, HttpResponse.BodyHandlers.ofString()).body(), Message[].class);
+        Assert.assertEquals(2004, messages.length);
+        for (int i = 0; i < messages.length; i++) Assert.assertEquals(i + 1, messages[i].getMessage_id());
+    }
+
+    private MessagePage getPage(String uri) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(uri))
+                .build();
+        HttpResponse response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+        return objectMapper.readValue(response.body().toString(), MessagePage.class);
+    }
+
+    private void postMessage(String text, long epoch) throws IOException, InterruptedException {
+        HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{" +
+                        "\"posted_by\":1, " +
+                        "\"message_text\": \"" + text + "\", " +
+                        "\"time_posted_epoch\": " + epoch + "}"))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse response = webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+    }
+}
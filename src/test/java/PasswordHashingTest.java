@@ -0,0 +1,148 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Account;
+import Util.ConnectionUtil;
+import Util.PasswordHasher;
+import io.javalin.Javalin;
+
+public class PasswordHashingTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database (which stores testuser1's password in plain text), restart the Javalin
+     * app, and create a new webClient and ObjectMapper for interacting locally on the web.
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * A registered password is stored as a salted PBKDF2 hash, while the response still carries the submitted
+     * password, and the account can log in with it.
+     */
+    @Test
+    public void registeredPasswordIsStoredHashed() throws IOException, InterruptedException, SQLException {
+        HttpResponse<String> registered = send("register", "{\"username\": \"user\", \"password\": \"password\"}");
+        Assert.assertEquals(200, registered.statusCode());
+        Assert.assertEquals(new Account(2, "user", "password"), objectMapper.readValue(registered.body(), Account.class));
+
+        String stored = storedPassword("user");
+        Assert.assertTrue(stored, stored.startsWith(PasswordHasher.PREFIX));
+        Assert.assertFalse(stored.contains("password"));
+
+        HttpResponse<String> login = send("login", "{\"username\": \"user\", \"password\": \"password\"}");
+        Assert.assertEquals(200, login.statusCode());
+        Assert.assertEquals(new Account(2, "user", "password"), objectMapper.readValue(login.body(), Account.class));
+        Assert.assertEquals(401, send("login", "{\"username\": \"user\", \"password\": \"Password\"}").statusCode());
+    }
+
+    /**
+     * Two accounts with the same password are stored with different salts.
+     */
+    @Test
+    public void samePasswordIsSaltedPerAccount() throws IOException, InterruptedException, SQLException {
+        send("register", "{\"username\": \"user1\", \"password\": \"password\"}");
+        send("register", "{\"username\": \"user2\", \"password\": \"password\"}");
+        Assert.assertNotEquals(storedPassword("user1"), storedPassword("user2"));
+    }
+
+    /**
+     * Plain-text passwords present when the app starts are hashed in the background soon after.
+     */
+    @Test
+    public void plainTextPasswordsAreHashedAfterStartup() throws SQLException, InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!storedPassword("testuser1").startsWith(PasswordHasher.PREFIX) && System.currentTimeMillis() < deadline) Thread.sleep(50);
+        Assert.assertTrue(storedPassword("testuser1").startsWith(PasswordHasher.PREFIX));
+    }
+
+    /**
+     * A plain-text password written after startup still logs in, and is hashed by that login.
+     */
+    @Test
+    public void plainTextPasswordIsHashedOnLogin() throws IOException, InterruptedException, SQLException {
+        try (Connection connection = ConnectionUtil.getConnection();
+                PreparedStatement p = connection.prepareStatement("insert into account (username, password) values ('legacy', 'secret');")) {
+            p.executeUpdate();
+        }
+
+        HttpResponse<String> login = send("login", "{\"username\": \"legacy\", \"password\": \"secret\"}");
+        Assert.assertEquals(200, login.statusCode());
+        Assert.assertEquals("secret", objectMapper.readValue(login.body(), Account.class).getPassword());
+        Assert.assertTrue(storedPassword("legacy").startsWith(PasswordHasher.PREFIX));
+
+        Assert.assertEquals(200, send("login", "{\"username\": \"legacy\", \"password\": \"secret\"}").statusCode());
+        Assert.assertEquals(401, send("login", "{\"username\": \"legacy\", \"password\": \"wrong\"}").statusCode());
+    }
+
+    /**
+     * A login for an unknown username derives a hash like a login with a wrong password, so that both take as long.
+     */
+    @Test
+    public void unknownUsernameCostsOneDerivation() throws IOException, InterruptedException {
+        long before = metric("socialmedia_auth_pbkdf2_duration_seconds_count");
+        Assert.assertEquals(401, send("login", "{\"username\": \"nobody\", \"password\": \"password\"}").statusCode());
+        Assert.assertEquals(before + 1, metric("socialmedia_auth_pbkdf2_duration_seconds_count"));
+    }
+
+    private HttpResponse<String> send(String path, String body) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/" + path))
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .header("Content-Type", "application/json")
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * @return the value of a metric, from GET /metrics
+     */
+    private long metric(String name) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder().uri(URI.create("http://localhost:8080/metrics")).build();
+        for (String line : webClient.send(request, HttpResponse.BodyHandlers.ofString()).body().split("\n"))
+            if (line.startsWith(name + " ")) return (long) Double.parseDouble(line.substring(line.lastIndexOf(' ') + 1));
+        return 0;
+    }
+
+    private String storedPassword(String username) throws SQLException {
+        try (Connection connection = ConnectionUtil.getConnection();
+                PreparedStatement p = connection.prepareStatement("select password from account where username = ?;")) {
+            p.setString(1, username);
+            try (ResultSet r = p.executeQuery()) {
+                Assert.assertTrue(r.next());
+                return r.getString(1);
+            }
+        }
+    }
+}
@@ -0,0 +1,132 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Model.MessagePage;
+import Util.ConnectionUtil;
+import Util.MessageCodec;
+import io.javalin.Javalin;
+
+public class ProtobufMessagesTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * GET localhost:8080/messages/1 with Accept: application/x-protobuf
+     *
+     * Expected Response:
+     *  Status Code: 200 with the message in the protobuf encoding, and an ETag different from the JSON one
+     */
+    @Test
+    public void getMessageAsProtobuf() throws IOException, InterruptedException {
+        HttpResponse<byte[]> response = send("GET", "messages/1", MessageCodec.CONTENT_TYPE, null, null);
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals(MessageCodec.CONTENT_TYPE, response.headers().firstValue("Content-Type").orElseThrow());
+        Assert.assertEquals(new Message(1, 1, "test message 1", 1669947792), MessageCodec.decode(response.body()));
+
+        String etag = response.headers().firstValue("ETag").orElseThrow();
+        Assert.assertNotEquals(etag, send("GET", "messages/1", null, null, null).headers().firstValue("ETag").orElseThrow());
+        HttpRequest.Builder conditional = request("GET", "messages/1", MessageCodec.CONTENT_TYPE, null, null).header("If-None-Match", etag);
+        Assert.assertEquals(304, webClient.send(conditional.build(), HttpResponse.BodyHandlers.ofByteArray()).statusCode());
+    }
+
+    /**
+     * POST localhost:8080/messages with a protobuf body and Accept: application/x-protobuf
+     *
+     * Expected Response:
+     *  Status Code: 200 with the created message in the protobuf encoding, readable as JSON afterwards
+     */
+    @Test
+    public void createMessageFromProtobuf() throws IOException, InterruptedException {
+        byte[] body = MessageCodec.encode(new Message(1, "sent as protobuf", 1669947800));
+        HttpResponse<byte[]> response = send("POST", "messages", MessageCodec.CONTENT_TYPE, MessageCodec.CONTENT_TYPE, body);
+        Assert.assertEquals(200, response.statusCode());
+        Message created = MessageCodec.decode(response.body());
+        Assert.assertEquals(new Message(2, 1, "sent as protobuf", 1669947800), created);
+
+        HttpResponse<byte[]> json = send("GET", "messages/2", null, null, null);
+        Assert.assertEquals(created, objectMapper.readValue(json.body(), Message.class));
+    }
+
+    /**
+     * A malformed protobuf body is a bad request.
+     */
+    @Test
+    public void malformedProtobufIsRejected() throws IOException, InterruptedException {
+        byte[] body = {0x08, 0x01, 0x1A, 0x7F, 'x'};
+        Assert.assertEquals(400, send("POST", "messages", null, MessageCodec.CONTENT_TYPE, body).statusCode());
+    }
+
+    /**
+     * GET localhost:8080/messages as a MessageList, and GET localhost:8080/accounts/1/messages?limit=1 as a
+     * MessagePage.
+     *
+     * Expected Response:
+     *  Status Code: 200 with the same messages as the JSON listing
+     */
+    @Test
+    public void listingsAsProtobuf() throws IOException, InterruptedException {
+        send("POST", "messages", null, null, "{\"posted_by\":1,\"message_text\":\"second\",\"time_posted_epoch\":1669947800}".getBytes());
+        List<Message> expected = Arrays.asList(objectMapper.readValue(send("GET", "messages", null, null, null).body(), Message[].class));
+
+        HttpResponse<byte[]> list = send("GET", "messages", MessageCodec.CONTENT_TYPE, null, null);
+        Assert.assertEquals(200, list.statusCode());
+        Assert.assertEquals(MessageCodec.CONTENT_TYPE, list.headers().firstValue("Content-Type").orElseThrow());
+        Assert.assertEquals(expected, MessageCodec.decodeList(list.body()));
+
+        HttpResponse<byte[]> paged = send("GET", "accounts/1/messages?limit=1", MessageCodec.CONTENT_TYPE, null, null);
+        MessagePage page = MessageCodec.decodePage(paged.body());
+        Assert.assertEquals(expected.subList(0, 1), page.getMessages());
+        Assert.assertNotNull(page.getNext());
+        page = MessageCodec.decodePage(send("GET", "accounts/1/messages?limit=1&cursor=" + page.getNext(), MessageCodec.CONTENT_TYPE, null, null).body());
+        Assert.assertEquals(expected.subList(1, 2), page.getMessages());
+    }
+
+    private HttpRequest.Builder request(String method, String path, String accept, String contentType, byte[] body) {
+        HttpRequest.Builder request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/" + path))
+                .method(method, body == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofByteArray(body));
+        if (accept != null) request.header("Accept", accept);
+        if (contentType != null) request.header("Content-Type", contentType);
+        return request;
+    }
+
+    private HttpResponse<byte[]> send(String method, String path, String accept, String contentType, byte[] body) throws IOException, InterruptedException {
+        return webClient.send(request(method, path, accept, contentType, body).build(), HttpResponse.BodyHandlers.ofByteArray());
+    }
+}
@@ -0,0 +1,99 @@
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import Util.SchemaMigrator;
+
+public class SchemaMigratorTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    Connection connection;
+
+    /**
+     * Before every test, open a new, empty in-memory database.
+     */
+    @Before
+    public void setUp() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:h2:mem:" + folder.getRoot().getName(), "sa", "sa");
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    /**
+     * An empty database is brought up to the newest migration, with every version recorded once.
+     */
+    @Test
+    public void freshDatabaseIsMigrated() throws Exception {
+        int version = SchemaMigrator.migrate(connection);
+        Assert.assertTrue(version >= 4);
+        Assert.assertEquals(version, count("select count(*) from schema_version"));
+        Assert.assertEquals(0, count("select count(*) from message"));
+        Assert.assertEquals(0, count("select count(*) from follow"));
+    }
+
+    /**
+     * Migrating a database that is already up to date changes nothing.
+     */
+    @Test
+    public void migratedDatabaseIsLeftAlone() throws Exception {
+        int version = SchemaMigrator.migrate(connection);
+        Assert.assertEquals(version, SchemaMigrator.migrate(connection));
+        Assert.assertEquals(version, count("select count(*) from schema_version"));
+    }
+
+    /**
+     * A script that fails partway is rolled back and its version is not recorded; the versions before it stay
+     * applied, and the script runs again once it is fixed.
+     */
+    @Test
+    public void failingScriptIsRolledBack() throws Exception {
+        Path scripts = folder.newFolder("scripts").toPath();
+        Files.createDirectories(scripts.resolve("db/migration"));
+        Files.writeString(scripts.resolve("db/migration/V1.sql"), "-- create t\ncreate table t (id int primary key);\n");
+        Files.writeString(scripts.resolve("db/migration/V2.sql"), "-- fill t\ninsert into t values (1);\ninsert into missing values (2);\n");
+        try (URLClassLoader loader = loader(scripts)) {
+            SchemaMigrator.migrate(connection, loader);
+            Assert.fail("A failing migration was applied");
+        } catch (SQLException e) {
+            // expected
+        }
+        Assert.assertEquals(1, SchemaMigrator.currentVersion(connection));
+        Assert.assertEquals(0, count("select count(*) from t"));
+        Assert.assertTrue(connection.getAutoCommit());
+
+        Files.writeString(scripts.resolve("db/migration/V2.sql"), "-- fill t\ninsert into t values (1);\n");
+        try (URLClassLoader loader = loader(scripts)) {
+            Assert.assertEquals(2, SchemaMigrator.migrate(connection, loader));
+        }
+        Assert.assertEquals(1, count("select count(*) from t"));
+    }
+
+    private static URLClassLoader loader(Path scripts) throws IOException {
+        return new URLClassLoader(new URL[] {scripts.toUri().toURL()}, null);
+    }
+
+    private int count(String sql) throws SQLException {
+        try (Statement s = connection.createStatement(); ResultSet r = s.executeQuery(sql)) {
+            r.next();
+            return r.getInt(1);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Model.MessagePage;
+import Util.ConnectionUtil;
+import Util.PageCursor;
+import io.javalin.Javalin;
+
+public class SearchMessagesTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/search?q=test for the message stored before startup
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the stored message, found through the index rebuilt at startup
+     */
+    @Test
+    public void searchFindsMessagesStoredBeforeStartup() throws IOException, InterruptedException {
+        MessagePage page = search("messages/search?q=TEST");
+        List<Message> expected = new ArrayList<>();
+        expected.add(new Message(1, 1, "test message 1", 1669947792));
+        Assert.assertEquals(expected, page.getMessages());
+        Assert.assertNull(page.getNext());
+    }
+
+    /**
+     * Sending http requests to GET localhost:8080/messages/search?q=coffee%20beans&limit=1 and following the cursor
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: only the messages containing both terms, the one mentioning them most first
+     */
+    @Test
+    public void searchRanksAndPaginates() throws IOException, InterruptedException {
+        postMessage("coffee beans");
+        postMessage("coffee beans, coffee beans");
+        postMessage("just coffee");
+
+        MessagePage first = search("messages/search?q=coffee%20beans&limit=1");
+        Assert.assertEquals(1, first.getMessages().size());
+        Assert.assertEquals(3, first.getMessages().get(0).getMessage_id());
+        Assert.assertNotNull(first.getNext());
+
+        MessagePage second = search("messages/search?q=coffee%20beans&limit=1&cursor=" + first.getNext());
+        Assert.assertEquals(1, second.getMessages().size());
+        Assert.assertEquals(2, second.getMessages().get(0).getMessage_id());
+        Assert.assertNull(second.getNext());
+    }
+
+    /**
+     * Updating and deleting messages through PATCH and DELETE localhost:8080/messages/{id}, then searching
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: results that follow the new text of updated messages and omit deleted ones
+     */
+    @Test
+    public void searchFollowsUpdatesAndDeletes() throws IOException, InterruptedException {
+        postMessage("original words");
+        postMessage("original thoughts");
+        send("PATCH", "messages/2", "{\"message_text\": \"replacement words\"}");
+        send("DELETE", "messages/3", "");
+
+        Assert.assertTrue(search("messages/search?q=original").getMessages().isEmpty());
+        List<Message> expected = new ArrayList<>();
+        expected.add(new Message(2, 1, "replacement words", 1669947792));
+        Assert.assertEquals(expected, search("messages/search?q=replacement").getMessages());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/search without a usable query
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void searchBlankQuery() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/search?q=%20%21"))
+                .build();
+        Assert.assertEquals(400, webClient.send(request, HttpResponse.BodyHandlers.ofString()).statusCode());
+    }
+
+    /**
+     * Sending http requests to GET localhost:8080/messages/search?q=test with cursors that were tampered with to
+     * carry a negative offset, or one so large the page would overflow
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void searchTamperedCursor() throws IOException, InterruptedException {
+        for (int offset : new int[] {-5, Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE - 10}) {
+            HttpRequest request = HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/messages/search?q=test&limit=20&cursor=" + new PageCursor(offset, null).encode()))
+                    .build();
+            Assert.assertEquals(String.valueOf(offset), 400, webClient.send(request, HttpResponse.BodyHandlers.ofString()).statusCode());
+        }
+    }
+
+    private MessagePage search(String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/" + path))
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+        return objectMapper.readValue(response.body(), MessagePage.class);
+    }
+
+    private void send(String method, String path, String body) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/" + path))
+                .method(method, HttpRequest.BodyPublishers.ofString(body))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(request, HttpResponse.BodyHandlers.ofString()).statusCode());
+    }
+
+    private void postMessage(String text) throws IOException, InterruptedException {
+        send("POST", "messages", "{" +
+                "\"posted_by\":1, " +
+                "\"message_text\": \"" + text + "\", " +
+                "\"time_posted_epoch\": 1669947792}");
+    }
+}
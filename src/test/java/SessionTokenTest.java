@@ -0,0 +1,136 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class SessionTokenTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database and create a new webClient and ObjectMapper for interacting locally on
+     * the web. Each test starts the Javalin app itself, since some of them require tokens first.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+    }
+
+    @After
+    public void tearDown() {
+        if (app != null) app.stop();
+        System.clearProperty("socialmedia.auth.required");
+    }
+
+    private void startApp() throws InterruptedException {
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    /**
+     * POST localhost:8080/login returns a token, with which account 1 can post, patch and delete its own message.
+     *
+     * Expected Response:
+     *  Status Code: 200 for every request
+     */
+    @Test
+    public void ownerCanWriteWithToken() throws IOException, InterruptedException {
+        startApp();
+        String token = login("testuser1", "password");
+        Assert.assertNotNull(token);
+
+        HttpResponse<String> created = send("POST", "messages", token, "{\"posted_by\":1,\"message_text\":\"with a token\",\"time_posted_epoch\":1669947800}");
+        Assert.assertEquals(200, created.statusCode());
+        int message_id = objectMapper.readValue(created.body(), Message.class).getMessage_id();
+
+        HttpResponse<String> patched = send("PATCH", "messages/" + message_id, token, "{\"message_text\":\"patched\"}");
+        Assert.assertEquals(200, patched.statusCode());
+        Assert.assertEquals("patched", objectMapper.readValue(patched.body(), Message.class).getMessage_text());
+
+        Assert.assertEquals(200, send("DELETE", "messages/" + message_id, token, null).statusCode());
+    }
+
+    /**
+     * Account 2 may not post as account 1, nor patch or delete account 1's message.
+     *
+     * Expected Response:
+     *  Status Code: 403, and message 1 is unchanged
+     */
+    @Test
+    public void otherAccountIsForbidden() throws IOException, InterruptedException {
+        startApp();
+        send("POST", "register", null, "{\"username\":\"testuser2\",\"password\":\"password\"}");
+        String token = login("testuser2", "password");
+
+        Assert.assertEquals(403, send("POST", "messages", token, "{\"posted_by\":1,\"message_text\":\"as someone else\",\"time_posted_epoch\":1669947800}").statusCode());
+        Assert.assertEquals(403, send("PATCH", "messages/1", token, "{\"message_text\":\"hijacked\"}").statusCode());
+        Assert.assertEquals(403, send("DELETE", "messages/1", token, null).statusCode());
+
+        Message message = objectMapper.readValue(send("GET", "messages/1", null, null).body(), Message.class);
+        Assert.assertEquals(new Message(1, 1, "test message 1", 1669947792), message);
+    }
+
+    /**
+     * A token that was tampered with is rejected.
+     *
+     * Expected Response:
+     *  Status Code: 401
+     */
+    @Test
+    public void tamperedTokenIsRejected() throws IOException, InterruptedException {
+        startApp();
+        String token = login("testuser1", "password");
+        String forged = "2" + token.substring(token.indexOf('.'));
+        Assert.assertEquals(401, send("PATCH", "messages/1", forged, "{\"message_text\":\"forged\"}").statusCode());
+        Assert.assertEquals(401, send("DELETE", "messages/1", "not-a-token", null).statusCode());
+    }
+
+    /**
+     * With socialmedia.auth.required set, message writes without a token are rejected.
+     *
+     * Expected Response:
+     *  Status Code: 401
+     */
+    @Test
+    public void tokenCanBeRequired() throws IOException, InterruptedException {
+        System.setProperty("socialmedia.auth.required", "true");
+        startApp();
+        Assert.assertEquals(401, send("POST", "messages", null, "{\"posted_by\":1,\"message_text\":\"no token\",\"time_posted_epoch\":1669947800}").statusCode());
+        Assert.assertEquals(401, send("DELETE", "messages/1", null, null).statusCode());
+        Assert.assertEquals(200, send("GET", "messages/1", null, null).statusCode());
+    }
+
+    private String login(String username, String password) throws IOException, InterruptedException {
+        HttpResponse<String> response = send("POST", "login", null, "{\"username\":\"" + username + "\",\"password\":\"" + password + "\"}");
+        Assert.assertEquals(200, response.statusCode());
+        return response.headers().firstValue(SocialMediaController.TOKEN_HEADER).orElse(null);
+    }
+
+    private HttpResponse<String> send(String method, String path, String token, String body) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/" + path))
+                .method(method, body == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(body))
+                .header("Content-Type", "application/json");
+        if (token != null) request.header("Authorization", "Bearer " + token);
+        return webClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,80 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.InMemorySocialMediaDAO;
+import DAO.MessageQuery;
+import Model.Account;
+import Model.Message;
+import Service.AsyncSocialMediaService;
+import Service.SocialMediaService;
+
+public class StreamExecutorTest {
+    AsyncSocialMediaService asyncService;
+
+    /**
+     * Before every test, fill an in-memory store with 2500 messages and put an async service with a single JDBC
+     * thread in front of it.
+     */
+    @Before
+    public void setUp() throws Exception {
+        InMemorySocialMediaDAO dao = new InMemorySocialMediaDAO();
+        dao.createAccount(new Account("testuser1", "password"));
+        List<Message> messages = new ArrayList<>();
+        for (int i = 0; i < 2500; i++) messages.add(new Message(1, "message " + i, 1669947800 + i));
+        dao.createMessages(messages);
+        asyncService = new AsyncSocialMediaService(new SocialMediaService(dao), 1, 10, 1, 10, 2, 10);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        asyncService.shutdown();
+    }
+
+    /**
+     * A streamed listing reaches the consumer whole and in order, read in chunks, and is only ever handed over on the
+     * stream executor.
+     */
+    @Test
+    public void listingIsConsumedOffTheJdbcExecutor() throws Exception {
+        List<Integer> ids = Collections.synchronizedList(new ArrayList<>());
+        List<String> threads = Collections.synchronizedList(new ArrayList<>());
+        asyncService.streamMessages(MessageQuery.all(null), message -> {
+            ids.add(message.getMessage_id());
+            threads.add(Thread.currentThread().getName());
+        }).get(1, TimeUnit.MINUTES);
+
+        Assert.assertEquals(2500, ids.size());
+        for (int i = 0; i < ids.size(); i++) Assert.assertEquals(i + 1, (int) ids.get(i));
+        for (String thread : threads) Assert.assertTrue(thread, thread.startsWith("stream-executor-"));
+    }
+
+    /**
+     * While a consumer is stalled, as it would be writing to a client that stopped reading, the only JDBC thread
+     * still serves other calls.
+     */
+    @Test
+    public void stalledConsumerLeavesJdbcExecutorFree() throws Exception {
+        CountDownLatch stalled = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Void> listing = asyncService.streamMessages(MessageQuery.all(null), message -> {
+            stalled.countDown();
+            release.await();
+        });
+        Assert.assertTrue(stalled.await(10, TimeUnit.SECONDS));
+
+        Assert.assertEquals(new Message(1, 1, "message 0", 1669947800), asyncService.getMessage(1).get(10, TimeUnit.SECONDS));
+        Assert.assertFalse(listing.isDone());
+
+        release.countDown();
+        listing.get(1, TimeUnit.MINUTES);
+    }
+}